@@ -2519,9 +2519,11 @@ public class VARNAPanel extends JPanel {
 							+ ". \nAdapting first sequence length ...");
 				}
 				if (firstSeq.length() < firstStruct.length()) {
-					while (firstSeq.length() < firstStruct.length()) {
-						firstSeq += " ";
+					StringBuilder padded = new StringBuilder(firstSeq);
+					while (padded.length() < firstStruct.length()) {
+						padded.append(' ');
 					}
+					firstSeq = padded.toString();
 				} else {
 					firstSeq = firstSeq.substring(0, firstStruct.length());
 				}
@@ -2536,17 +2538,19 @@ public class VARNAPanel extends JPanel {
 							+ ". \nAdapting second sequence length ...");
 				}
 				if (secondSeq.length() < secondStruct.length()) {
-					while (secondSeq.length() < secondStruct.length()) {
-						secondSeq += " ";
+					StringBuilder padded = new StringBuilder(secondSeq);
+					while (padded.length() < secondStruct.length()) {
+						padded.append(' ');
 					}
+					secondSeq = padded.toString();
 				} else {
 					secondSeq = secondSeq.substring(0, secondStruct.length());
 				}
 			}
 
 			int RNALength = firstSeq.length();
-			String string_superStruct = new String("");
-			String string_superSeq = new String("");
+			StringBuilder string_superStruct = new StringBuilder(RNALength);
+			StringBuilder string_superSeq = new StringBuilder(2 * RNALength);
 			/**
 			 * In this array, we'll have for each indexes of each characters of
 			 * the final super-structure, the RNA number which is own it.
@@ -2564,25 +2568,24 @@ public class VARNAPanel extends JPanel {
 				// If both characters are the same, so it'll be in the super
 				// structure
 				if (firstStruct.charAt(i) == secondStruct.charAt(i)) {
-					string_superStruct = string_superStruct
-							+ firstStruct.charAt(i);
+					string_superStruct.append(firstStruct.charAt(i));
 					array_rnaOwn.add(0);
 				}
 				// Else if one of the characters is an opening parenthese, so
 				// it'll be an opening parenthese in the super structure
 				else if (firstStruct.charAt(i) == '('
 						|| secondStruct.charAt(i) == '(') {
-					string_superStruct = string_superStruct + '(';
+					string_superStruct.append('(');
 					array_rnaOwn.add((firstStruct.charAt(i) == '(') ? 1 : 2);
 				}
 				// Else if one of the characters is a closing parenthese, so
 				// it'll be a closing parenthese in the super structure
 				else if (firstStruct.charAt(i) == ')'
 						|| secondStruct.charAt(i) == ')') {
-					string_superStruct = string_superStruct + ')';
+					string_superStruct.append(')');
 					array_rnaOwn.add((firstStruct.charAt(i) == ')') ? 1 : 2);
 				} else {
-					string_superStruct = string_superStruct + '.';
+					string_superStruct.append('.');
 					array_rnaOwn.add(-1);
 				}
 			}
@@ -2590,18 +2593,19 @@ public class VARNAPanel extends JPanel {
 			// Next, we make the sequence taking the characters at the same
 			// index in the first and second sequence
 			for (int i = 0; i < RNALength; i++) {
-				string_superSeq = string_superSeq + firstSeq.charAt(i)
-						+ secondSeq.charAt(i);
+				string_superSeq.append(firstSeq.charAt(i)).append(
+						secondSeq.charAt(i));
 			}
 
 			// Now, we need to create the super-structure RNA with the owning
 			// bases array
 			// in order to color bases outer depending on the owning statement
 			// of each bases.
-			if (!string_superSeq.equals("") && !string_superStruct.equals("")) {
+			if ((string_superSeq.length() > 0)
+					&& (string_superStruct.length() > 0)) {
 				try {
-					_RNA.setRNA(string_superSeq, string_superStruct,
-							array_rnaOwn);
+					_RNA.setRNA(string_superSeq.toString(),
+							string_superStruct.toString(), array_rnaOwn);
 				} catch (ExceptionUnmatchedClosingParentheses e) {
 					errorDialog(e);
 				} catch (ExceptionFileFormatOrSyntax e) {
@@ -3662,6 +3666,19 @@ public class VARNAPanel extends JPanel {
 		_conf._flatExteriorLoop = on;
 		_RNA.setFlatExteriorLoop(on);
 	}
+
+	public boolean getIncrementalLayout() {
+		return _conf._incrementalLayout;
+	}
+
+	/**
+	 * Enables the incremental update of radiate and NAView drawings, which
+	 * preserves the layout of the loops left unchanged by a structure edit.
+	 */
+	public void setIncrementalLayout(boolean on) {
+		_conf._incrementalLayout = on;
+		_RNA.setIncrementalLayout(on);
+	}
 	
 	public void setLastSelectedPosition(Point2D.Double p)
 	{
@@ -3805,7 +3822,9 @@ public class VARNAPanel extends JPanel {
 			try {
 				r.loadSecStr(path);
 				try {
-					r.drawRNA();
+					if (!r.getDrawn()) {
+						r.drawRNA();
+					}
 				} catch (ExceptionNAViewAlgorithm e) {
 					e.printStackTrace();
 				}
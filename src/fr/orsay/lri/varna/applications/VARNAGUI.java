@@ -65,6 +65,7 @@ import fr.orsay.lri.varna.models.FullBackup;
 import fr.orsay.lri.varna.models.VARNAConfig;
 import fr.orsay.lri.varna.models.rna.Mapping;
 import fr.orsay.lri.varna.models.rna.RNA;
+import fr.orsay.lri.varna.models.rna.RNABatchLoader;
 
 public class VARNAGUI extends JFrame implements DropTargetListener {
 
@@ -372,6 +373,9 @@ public class VARNAGUI extends JFrame implements DropTargetListener {
 	      if (ob instanceof List)
 	      {
 	    	  List list = (List) ob;
+	    	  // Structure files are parsed as a batch, once sessions are imported
+	    	  ArrayList<File> structFiles = new ArrayList<File>();
+	    	  VARNAPanel target = null;
 	    	  for (int j = 0; j < list.size(); j++) {
 	    	  Object o = list.get(j);
 	    	  
@@ -389,19 +393,44 @@ public class VARNAGUI extends JFrame implements DropTargetListener {
 					  }
 					  catch (ExceptionLoadingFailed e3)
 					  {
-						  RNA r = new RNA();
-						  r.loadSecStr(path);
-						  r.drawRNA();
-						  String name =r.getName();
-						  if (name.equals(""))
-						  { 
-							  name = path.substring(path.lastIndexOf(File.separatorChar)+1);
-						  }
-						  _rnaList.add(vp.getConfig().clone(),r,name,true);
+						  structFiles.add(new File(path));
+						  target = vp;
 					  }					  
 		    	  }
 	    	  }
 	    	  }
+	    	  if (!structFiles.isEmpty())
+	    	  {
+	    		  ArrayList<RNABatchLoader.Result> results = new RNABatchLoader().loadAll(structFiles);
+	    		  ArrayList<RNABatchLoader.Result> failures = new ArrayList<RNABatchLoader.Result>();
+	    		  for (RNABatchLoader.Result res : results)
+	    		  {
+	    			  if (!res.isLoaded())
+	    			  {
+	    				  failures.add(res);
+	    				  continue;
+	    			  }
+	    			  RNA r = res.getRNA();
+	    			  if (!r.getDrawn())
+	    			  { r.drawRNA(); }
+	    			  String name =r.getName();
+	    			  if (name.equals(""))
+	    			  { 
+	    				  name = res.getFile().getName();
+	    			  }
+	    			  _rnaList.add(target.getConfig().clone(),r,name,true);
+	    		  }
+	    		  // Failures are reported at once, after the loaded files are listed
+	    		  if (failures.size() == 1)
+	    		  { target.errorDialog(failures.get(0).getError()); }
+	    		  else if (failures.size() > 1)
+	    		  {
+	    			  String msg = failures.size()+" files could not be loaded:";
+	    			  for (RNABatchLoader.Result res : failures)
+	    			  { msg += "\n"+res.getFile().getName(); }
+	    			  target.errorDialog(new Exception(msg));
+	    		  }
+	    	  }
 	      }
 	      // If we made it this far, everything worked.
 	      dtde.dropComplete(true);
@@ -51,8 +51,10 @@ import fr.orsay.lri.varna.exceptions.ExceptionPermissionDenied;
 import fr.orsay.lri.varna.exceptions.ExceptionUnmatchedClosingParentheses;
 import fr.orsay.lri.varna.exceptions.ExceptionWritingForbidden;
 import fr.orsay.lri.varna.interfaces.InterfaceParameterLoader;
+import fr.orsay.lri.varna.models.CompressedFiles;
 import fr.orsay.lri.varna.models.VARNAConfig;
 import fr.orsay.lri.varna.models.VARNAConfigLoader;
+import fr.orsay.lri.varna.models.rna.DBNRecordReader;
 import fr.orsay.lri.varna.models.rna.RNA;
 
 public class VARNAcmd implements InterfaceParameterLoader {
@@ -63,6 +65,7 @@ public class VARNAcmd implements InterfaceParameterLoader {
 	int _baseWidth = 400;
 	double _scale = 1.0;
 	float _quality = 0.9f;
+	boolean _mappedLoading = false;
 
 	private String[] _basicOptions = { VARNAConfigLoader.algoOpt,
 			VARNAConfigLoader.bpStyleOpt, VARNAConfigLoader.bondColorOpt,
@@ -100,6 +103,8 @@ public class VARNAcmd implements InterfaceParameterLoader {
 					_quality = Float.parseFloat(val);
 				} else if (opt.equals("-resolution")) {
 					_scale = Float.parseFloat(val);
+				} else if (opt.equals("-loader")) {
+					_mappedLoading = val.equalsIgnoreCase("mmap");
 				} else {
 					addOption(opt, val);
 				}
@@ -199,6 +204,12 @@ public class VARNAcmd implements InterfaceParameterLoader {
 		System.out
 				.println(indent(1)
 						+ "InFile\tSecondary structure file: Supported formats: {BPSEQ,CT,RNAML,DBN}");
+		System.out
+				.println(indent(1)
+						+ "\tMulti-record DBN files produce one OutFile per record (OutFile_2, OutFile_3...)");
+		System.out
+				.println(indent(1)
+						+ "\tA .gz extension compresses EPS, XFIG and SVG outputs; gzipped InFiles are read directly");
 
 	}
 
@@ -232,6 +243,7 @@ public class VARNAcmd implements InterfaceParameterLoader {
 		}
 		addLine("quality", "Sets quality (non-vector file formats only)");
 		addLine("resolution", "Sets resolution (non-vector file formats only)");
+		addLine("loader", "Sets the input loading method: stream (default) or mmap (memory-mapped, for very large CT/BPSEQ files)");
 		printMatrix(2);
 	}
 
@@ -268,50 +280,35 @@ public class VARNAcmd implements InterfaceParameterLoader {
 	}
 
 	public void run() throws IOException {
-		VARNAConfigLoader VARNAcfg = new VARNAConfigLoader(this);
-		ArrayList<VARNAPanel> vpl;
 		try {
-			RNA r = new RNA();
-			if (!_inFile.equals("")) {
-				r.loadSecStr(_inFile);
-			} else {
-				r.setRNA(this.getParameterValue("sequenceDBN",
-						""), this.getParameterValue(
-						"structureDBN", ""));
-			}
-			VARNAcfg.setRNA(r);
-			vpl = VARNAcfg.createVARNAPanels();
-			if (vpl.size() > 0) {
-				VARNAPanel _vp = vpl.get(0);
-				RNA _rna = _vp.getRNA();
-				Rectangle2D.Double bbox = _vp.getRNA().getBBox();
-				//System.out.println(_vp.getRNA().getBBox());
-				
-				if (_outFile.toLowerCase().endsWith(".jpeg")
-						|| _outFile.toLowerCase().endsWith(".jpg")
-						|| _outFile.toLowerCase().endsWith(".png"))
-				{ 
-					_vp.setTitleFontSize((int)(_scale*_vp.getTitleFont().getSize())); 
-				    _vp.setSize((int)(_baseWidth*_scale), (int)((_scale*_baseWidth*bbox.height)/((double)bbox.width)));
+			if (!_inFile.equals("")
+					&& (RNA.guessFileTypeFromExtension(_inFile) == RNA.FILE_TYPE_DBN)) {
+				// Multi-record DBN files are streamed, one output file per record
+				DBNRecordReader records = RNA.loadSecStrDBNRecords(CompressedFiles.openReader(_inFile));
+				RNA r = records.readRNA();
+				if (r == null) {
+					records.close();
+					throw new ExceptionFileFormatOrSyntax(_inFile);
+				}
+				int numRecord = 1;
+				while (r != null) {
+					renderRNA(r, getOutFile(numRecord));
+					r = records.readRNA();
+					numRecord++;
 				}
-				if (_outFile.toLowerCase().endsWith(".eps")) {
-					_rna.saveRNAEPS(_outFile, _vp.getConfig());
-				} else if (_outFile.toLowerCase().endsWith(".xfig")
-						|| _outFile.toLowerCase().endsWith(".fig")) {
-					_rna.saveRNAXFIG(_outFile, _vp.getConfig());
-				} else if (_outFile.toLowerCase().endsWith(".svg")) {
-					_rna.saveRNASVG(_outFile, _vp.getConfig());
-				} else if (_outFile.toLowerCase().endsWith(".jpeg")
-						|| _outFile.toLowerCase().endsWith(".jpg")) {
-					this.saveToJPEG(_outFile, _vp);
-				} else if (_outFile.toLowerCase().endsWith(".png")) {
-					this.saveToPNG(_outFile, _vp);
-				} else if (_outFile.toLowerCase().endsWith(".varna")) {
-					_vp.saveSession(_outFile);
+				records.close();
+			} else {
+				RNA r = new RNA();
+				if (_inFile.equals("")) {
+					r.setRNA(this.getParameterValue("sequenceDBN",
+							""), this.getParameterValue(
+							"structureDBN", ""));
+				} else if (_mappedLoading) {
+					r.loadSecStrMapped(_inFile);
 				} else {
-					errorExit("Unknown extension for output file \"" + _outFile
-							+ "\"");
+					r.loadSecStr(_inFile);
 				}
+				renderRNA(r, _outFile);
 			}
 		} catch (ExceptionWritingForbidden e) {
 			e.printStackTrace();
@@ -351,6 +348,70 @@ public class VARNAcmd implements InterfaceParameterLoader {
 		System.exit(0);
 	}
 
+	/**
+	 * Returns the name of the output file for the n-th record of the input
+	 * file, the first record being written to the output file itself.
+	 */
+	private String getOutFile(int numRecord) {
+		if (numRecord == 1) {
+			return _outFile;
+		}
+		// Numbers are inserted before the format extension, e.g. out_2.svg.gz
+		String path = CompressedFiles.stripCompressionExtension(_outFile);
+		String suffix = _outFile.substring(path.length());
+		int dot = path.lastIndexOf('.');
+		if (dot <= path.lastIndexOf(File.separatorChar)) {
+			return path + "_" + numRecord + suffix;
+		}
+		return path.substring(0, dot) + "_" + numRecord
+				+ path.substring(dot) + suffix;
+	}
+
+	private void renderRNA(RNA r, String outFile) throws ExceptionWritingForbidden,
+			ExceptionJPEGEncoding, ExceptionParameterError,
+			ExceptionModeleStyleBaseSyntaxError, ExceptionNonEqualLength,
+			ExceptionExportFailed, ExceptionPermissionDenied,
+			ExceptionLoadingFailed, ExceptionFileFormatOrSyntax,
+			ExceptionUnmatchedClosingParentheses, IOException {
+		VARNAConfigLoader VARNAcfg = new VARNAConfigLoader(this);
+		VARNAcfg.setRNA(r);
+		ArrayList<VARNAPanel> vpl = VARNAcfg.createVARNAPanels();
+		if (vpl.size() > 0) {
+			VARNAPanel _vp = vpl.get(0);
+			RNA _rna = _vp.getRNA();
+			Rectangle2D.Double bbox = _vp.getRNA().getBBox();
+			//System.out.println(_vp.getRNA().getBBox());
+			
+			if (outFile.toLowerCase().endsWith(".jpeg")
+					|| outFile.toLowerCase().endsWith(".jpg")
+					|| outFile.toLowerCase().endsWith(".png"))
+			{ 
+				_vp.setTitleFontSize((int)(_scale*_vp.getTitleFont().getSize())); 
+			    _vp.setSize((int)(_baseWidth*_scale), (int)((_scale*_baseWidth*bbox.height)/((double)bbox.width)));
+			}
+			// Vector formats may be gzip-compressed, e.g. out.svg.gz
+			String vectorFile = CompressedFiles.stripCompressionExtension(outFile).toLowerCase();
+			if (vectorFile.endsWith(".eps")) {
+				_rna.saveRNAEPS(outFile, _vp.getConfig());
+			} else if (vectorFile.endsWith(".xfig")
+					|| vectorFile.endsWith(".fig")) {
+				_rna.saveRNAXFIG(outFile, _vp.getConfig());
+			} else if (vectorFile.endsWith(".svg")) {
+				_rna.saveRNASVG(outFile, _vp.getConfig());
+			} else if (outFile.toLowerCase().endsWith(".jpeg")
+					|| outFile.toLowerCase().endsWith(".jpg")) {
+				this.saveToJPEG(outFile, _vp);
+			} else if (outFile.toLowerCase().endsWith(".png")) {
+				this.saveToPNG(outFile, _vp);
+			} else if (outFile.toLowerCase().endsWith(".varna")) {
+				_vp.saveSession(outFile);
+			} else {
+				errorExit("Unknown extension for output file \"" + outFile
+						+ "\"");
+			}
+		}
+	}
+
 	public void saveToJPEG(String filename, VARNAPanel vp)
 			throws ExceptionJPEGEncoding, ExceptionExportFailed {
 		
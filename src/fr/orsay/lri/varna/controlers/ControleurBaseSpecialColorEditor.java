@@ -83,17 +83,13 @@ public class ControleurBaseSpecialColorEditor implements ActionListener {
 
 	private void applyColor(String titreCol, Color couleur, ModeleBase mb) {
 		if (titreCol.equals("Inner Color")) {
-			mb.getStyleBase()
-					.set_base_inner_color(couleur);
+			mb.setBaseInnerColor(couleur);
 		} else if (titreCol.equals("Outline Color")) {
-			mb.getStyleBase()
-					.set_base_outline_color(couleur);
+			mb.setBaseOutlineColor(couleur);
 		} else if (titreCol.equals("Name Color")) {
-			mb.getStyleBase()
-					.set_base_name_color(couleur);
+			mb.setBaseNameColor(couleur);
 		} else if (titreCol.equals("Number Color")) {
-			mb.getStyleBase()
-					.set_base_number_color(couleur);
+			mb.setBaseNumberColor(couleur);
 		}
 
 	}
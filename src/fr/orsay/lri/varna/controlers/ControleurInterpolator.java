@@ -19,7 +19,6 @@ package fr.orsay.lri.varna.controlers;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Vector;
 
@@ -100,9 +99,10 @@ public class ControleurInterpolator extends Thread {
 	 * <code>[[1],[2],[3,4],[5],[]]</code>.
 	 * 
 	 * @param indices
-	 *            The total list of indices
+	 *            The total list of indices, in increasing order
 	 * @param mappedIndices
-	 *            Matched indices, should be a subset of <code>indices</code>
+	 *            Matched indices, in increasing order, should be a subset of
+	 *            <code>indices</code>
 	 * @return A clustered array
 	 * @throws MappingException
 	 *             If one of the parameters is an empty array
@@ -115,8 +115,6 @@ public class ControleurInterpolator extends Thread {
 		}
 		Vector<Vector<Integer>> res = new Vector<Vector<Integer>>();
 
-		Arrays.sort(indices);
-		Arrays.sort(mappedIndices);
 		int i, j = 0, k;
 		Vector<Integer> tmp = new Vector<Integer>();
 		for (i = 0; (i < indices.length) && (j < mappedIndices.length); i++) {
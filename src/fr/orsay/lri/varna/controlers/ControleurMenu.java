@@ -221,7 +221,7 @@ public class ControleurMenu extends InterfaceVARNAListener implements
 				System.out.println("[b]" + listBase);
 				for (int i = 0; i < listBase.size(); i++) {
 					_vp.getRNA().get_listeBases().get(listBase.get(i))
-							.getStyleBase().set_base_inner_color(c);
+							.setBaseInnerColor(c);
 				}
 				_vp.repaint();
 			}
@@ -233,7 +233,7 @@ public class ControleurMenu extends InterfaceVARNAListener implements
 				listBase = listSwitchType(_type);
 				for (int i = 0; i < listBase.size(); i++) {
 					_vp.getRNA().get_listeBases().get(listBase.get(i))
-							.getStyleBase().set_base_outline_color(c);
+							.setBaseOutlineColor(c);
 				}
 				_vp.repaint();
 			}
@@ -245,7 +245,7 @@ public class ControleurMenu extends InterfaceVARNAListener implements
 				listBase = listSwitchType(_type);
 				for (int i = 0; i < listBase.size(); i++) {
 					_vp.getRNA().get_listeBases().get(listBase.get(i))
-							.getStyleBase().set_base_name_color(c);
+							.setBaseNameColor(c);
 				}
 				_vp.repaint();
 			}
@@ -257,7 +257,7 @@ public class ControleurMenu extends InterfaceVARNAListener implements
 				listBase = listSwitchType(_type);
 				for (int i = 0; i < listBase.size(); i++) {
 					_vp.getRNA().get_listeBases().get(listBase.get(i))
-							.getStyleBase().set_base_number_color(c);
+							.setBaseNumberColor(c);
 				}
 				_vp.repaint();
 			}
@@ -15,52 +15,17 @@
  You should have received a copy of the GNU General Public License along with VARNA version 3.1.
  If not, see http://www.gnu.org/licenses.
  */
-package fr.orsay.lri.varna.models.naView;
+package fr.orsay.lri.varna.interfaces;
 
-public class Base {
-	private int mate;
-	private double x, y;
-	private boolean extracted;
-	private Region region = new Region();
+import fr.orsay.lri.varna.models.rna.RNABatchLoader;
 
-	public int getMate() {
-		return mate;
-	}
-
-	public void setMate(int mate) {
-		this.mate = mate;
-	}
-
-	public double getX() {
-		return x;
-	}
-
-	public void setX(double x) {
-		//System.out.println("  Base.setX()");
-		this.x = x;
-	}
-
-	public double getY() {
-		return y;
-	}
-
-	public void setY(double y) {
-		this.y = y;
-	}
-
-	public boolean isExtracted() {
-		return extracted;
-	}
-
-	public void setExtracted(boolean extracted) {
-		this.extracted = extracted;
-	}
-
-	public Region getRegion() {
-		return region;
-	}
-
-	public void setRegion(Region region) {
-		this.region = region;
-	}
+/**
+ * Receives the files parsed by an RNABatchLoader, on the thread which started
+ * the batch.
+ */
+public interface InterfaceBatchLoadListener {
+	/**
+	 * Called once per file, whether it could be loaded or not.
+	 */
+	public void onLoad(RNABatchLoader.Result result);
 }
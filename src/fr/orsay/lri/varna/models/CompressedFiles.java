@@ -0,0 +1,137 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens files for reading or writing, transparently handling gzip
+ * compression. Inputs are decompressed whenever they start with the gzip magic
+ * number, whatever their name. Outputs are compressed whenever their name ends
+ * with the <code>.gz</code> extension.
+ */
+public class CompressedFiles {
+
+	public static final String GZIP_EXTENSION = ".gz";
+
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Tests whether a path bears the extension of compressed files.
+	 */
+	public static boolean isCompressedPath(String path) {
+		return path.toLowerCase().endsWith(GZIP_EXTENSION);
+	}
+
+	/**
+	 * Removes the compression extension from a path, if any, so that the
+	 * format of the compressed content can be guessed from the remaining
+	 * extension.
+	 */
+	public static String stripCompressionExtension(String path) {
+		if (isCompressedPath(path)) {
+			return path.substring(0, path.length() - GZIP_EXTENSION.length());
+		}
+		return path;
+	}
+
+	/**
+	 * Tests whether a stream starts with the gzip magic number. The stream
+	 * must support marks, and is reset after the test.
+	 */
+	public static boolean isGzipped(InputStream in) throws IOException {
+		in.mark(2);
+		int b1 = in.read();
+		int b2 = in.read();
+		in.reset();
+		return (b1 == 0x1f) && (b2 == 0x8b);
+	}
+
+	/**
+	 * Tests whether a file is gzip-compressed, by looking at its first bytes.
+	 */
+	public static boolean isGzipped(String path) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(path), 2);
+		try {
+			return isGzipped(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Wraps a stream so that its content is decompressed if it is gzipped.
+	 *
+	 * @param in
+	 *            - The raw stream
+	 * @return A buffered stream, supporting marks, over the uncompressed
+	 *         content
+	 */
+	public static InputStream decompress(InputStream in) throws IOException {
+		InputStream result = new BufferedInputStream(in, BUFFER_SIZE);
+		if (isGzipped(result)) {
+			result = new BufferedInputStream(new GZIPInputStream(result,
+					BUFFER_SIZE), BUFFER_SIZE);
+		}
+		return result;
+	}
+
+	public static InputStream openInputStream(String path) throws IOException {
+		return decompress(new FileInputStream(path));
+	}
+
+	/**
+	 * Opens a file for reading text in the default charset, as a FileReader
+	 * would.
+	 */
+	public static Reader openReader(String path) throws IOException {
+		return new BufferedReader(new InputStreamReader(openInputStream(path)));
+	}
+
+	public static OutputStream openOutputStream(String path)
+			throws IOException {
+		OutputStream out = new FileOutputStream(path);
+		if (isCompressedPath(path)) {
+			out = new GZIPOutputStream(out, BUFFER_SIZE);
+		}
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a file for writing text in the default charset, as a FileWriter
+	 * would.
+	 */
+	public static Writer openWriter(String path) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(
+				openOutputStream(path)));
+	}
+}
@@ -162,6 +162,7 @@ public class VARNAConfig implements Serializable, Cloneable {
 	public boolean _showWarnings = false;
 	public boolean _comparisonMode = false;
 	public boolean _flatExteriorLoop = false;
+	public boolean _incrementalLayout = false;
 	
 	// Relative distance between the center of a base and its number, expressed as a multiple of base radius  
 	public double _distNumbers = DEFAULT_DIST_NUMBERS;
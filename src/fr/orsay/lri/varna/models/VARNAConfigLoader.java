@@ -729,6 +729,15 @@ public class VARNAConfigLoader {
 	public static final String ALGORITHM_VARNA_VIEW = "varnaview";
 	public static final String ALGORITHM_MOTIF_VIEW = "motifview";
 
+	/**
+	 * Tests whether an RNA comes with a layout, such as one read from a
+	 * binary file, which is kept unless an algorithm is explicitly requested.
+	 */
+	private boolean keepLayout(RNA r, String n) {
+		return r.getDrawn()
+				&& (_optionProducer.getParameterValue(algoOpt + n, null) == null);
+	}
+
 	private void applyValues(String n)
 			throws ExceptionParameterError, ExceptionNonEqualLength,
 			IOException, ExceptionFileFormatOrSyntax, ExceptionLoadingFailed {
@@ -748,6 +757,7 @@ public class VARNAConfigLoader {
 		else
 			algoCode = RNA.DRAW_MODE_RADIATE;
 
+		boolean keptLayout = false;
 		if (_comparisonMode) {
 			_mainSurface = new VARNAPanel(_firstSequence, _firstStructure,
 					_secondSequence, _secondStructure, algoCode, "");
@@ -758,13 +768,19 @@ public class VARNAConfigLoader {
 				else
 				{
 					_mainSurface = new VARNAPanel();
-					try {
-						_defaultRNA.drawRNA(algoCode);
-					} catch (ExceptionDrawingAlgorithm e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
+					keptLayout = keepLayout(_defaultRNA, n);
+					if (keptLayout)
+					{ _mainSurface.showRNA(_defaultRNA); }
+					else
+					{
+						try {
+							_defaultRNA.drawRNA(algoCode);
+						} catch (ExceptionDrawingAlgorithm e) {
+							// TODO Auto-generated catch block
+							e.printStackTrace();
+						}
+						_mainSurface.drawRNA(_defaultRNA);
 					}
-					_mainSurface.drawRNA(_defaultRNA);
 				}
 			} else {
 				URL url = null;
@@ -773,7 +789,7 @@ public class VARNAConfigLoader {
 					URLConnection connexion = url.openConnection();
 					connexion.setUseCaches(false);
 					InputStream r = connexion.getInputStream();
-					InputStreamReader inr = new InputStreamReader(r);
+					InputStreamReader inr = new InputStreamReader(CompressedFiles.decompress(r));
 					
 					RNA rna = new RNA();
 					_mainSurface = new VARNAPanel();
@@ -866,7 +882,8 @@ public class VARNAConfigLoader {
 		if (!_customBPs.equals(""))
 			applyBPsCustomStyles(_mainSurface);
 
-		_mainSurface.drawRNA();
+		if (!keptLayout)
+			_mainSurface.drawRNA();
 
 		if (!_annotations.equals(""))
 			applyAnnotations(_mainSurface);
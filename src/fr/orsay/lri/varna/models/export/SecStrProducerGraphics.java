@@ -6,10 +6,11 @@ import java.awt.Font;
 import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.GeneralPath;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 import fr.orsay.lri.varna.exceptions.ExceptionWritingForbidden;
+import fr.orsay.lri.varna.models.CompressedFiles;
 import fr.orsay.lri.varna.models.rna.RNA;
 
 public class SecStrProducerGraphics implements VueVARNAGraphics{
@@ -107,9 +108,9 @@ public class SecStrProducerGraphics implements VueVARNAGraphics{
 	
 	public void saveToDisk(String path) throws ExceptionWritingForbidden
 	{
-		FileWriter fout;
+		Writer fout;
 		try {
-			fout = new FileWriter(path);
+			fout = CompressedFiles.openWriter(path);
 			fout.write(_ss.export());
 			fout.close();
 		} catch (IOException e) {
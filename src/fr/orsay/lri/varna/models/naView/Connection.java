@@ -18,8 +18,8 @@
 package fr.orsay.lri.varna.models.naView;
 
 public class Connection {
-	private Loop loop = new Loop();
-	private Region region = new Region();
+	private Loop loop;
+	private Region region;
 	// Start and end form the 1st base pair of the region.
 	private int start, end;
 	private double xrad, yrad, angle;
@@ -28,16 +28,6 @@ public class Connection {
 	private boolean extruded;
 	// True if the extruded segment must be drawn long.
 	private boolean broken;
-	
-	private boolean _isNull=false;
-
-	public boolean isNull() {
-		return _isNull;
-	}
-
-	public void setNull(boolean isNull) {
-		_isNull = isNull;
-	}
 
 	
 	public Loop getLoop() {
@@ -17,13 +17,11 @@
  */
 package fr.orsay.lri.varna.models.naView;
 
-import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
 
 public class Loop {
 	private int nconnection;
-	private ArrayList<Connection> connections = new ArrayList<Connection>();
-	private Hashtable<Integer,Connection> _connections = new Hashtable<Integer,Connection>();
+	private Connection[] connections = new Connection[2];
 	private int number;
 	private int depth;
 	private boolean mark;
@@ -33,40 +31,23 @@ public class Loop {
 		return nconnection;
 	}
 
-	public void setNconnection(int nconnection) {
-		this.nconnection = nconnection;
-	}
-
-	public void setConnection(int i, Connection c)
-	{
-		Integer n = new Integer(i);
-		if (c != null)
-    		_connections.put(n, c);
-		else
-		{
-			if (!_connections.containsKey(n))
-			{
-				_connections.put(n, new Connection());
-			}
-			_connections.get(i).setNull(true);
-		}
-	}
-
+	/**
+	 * Returns a connection of the loop, or <code>null</code> past the last
+	 * one.
+	 */
 	public Connection getConnection(int i)
 	{
-		Integer n = new Integer(i);
-		if (!_connections.containsKey(n))
-		{ _connections.put(n, new Connection()); }
-		Connection c = _connections.get(n);
-		if (c.isNull())
-			return null;
+		if (i < nconnection)
+			return connections[i];
 		else
-			return c;
+			return null;
 	}
 	
-	public void addConnection(int i, Connection c)
+	public void addConnection(Connection c)
 	{
-		_connections.put(_connections.size(),c);
+		if (nconnection == connections.length)
+			connections = Arrays.copyOf(connections, 2 * nconnection);
+		connections[nconnection++] = c;
 	}
 	
 
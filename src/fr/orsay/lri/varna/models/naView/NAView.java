@@ -19,16 +19,24 @@ package fr.orsay.lri.varna.models.naView;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import fr.orsay.lri.varna.exceptions.ExceptionNAViewAlgorithm;
 import fr.orsay.lri.varna.interfaces.InterfaceVARNAListener;
 import fr.orsay.lri.varna.interfaces.InterfaceVARNAObservable;
 
 public class NAView extends InterfaceVARNAObservable {
-	private final double ANUM = 9999.0;
+	private final double ANUM = Double.MAX_VALUE;
 	private final int MAXITER = 500;
 
-	private ArrayList<Base> bases;
+	/**
+	 * Partner, coordinates, extraction flag and region of each base. Bases are
+	 * numbered from 1, base 0 being the origin of the circle diagram.
+	 */
+	private int[] baseMate;
+	private double[] baseX, baseY;
+	private boolean[] baseExtracted;
+	private Region[] baseRegion;
 	private int nbase, nregion, loop_count;
 
 	private Loop root = new Loop();
@@ -36,6 +44,12 @@ public class NAView extends InterfaceVARNAObservable {
 
 	private ArrayList<Region> regions;
 
+	/**
+	 * Connections between the loops, two per region, allocated at once
+	 */
+	private Connection[] connections;
+	private int nconnection;
+
 	private Radloop rlphead = new Radloop();
 
 	private double lencut=0.8;
@@ -55,37 +69,41 @@ public class NAView extends InterfaceVARNAObservable {
 	double HELIX_FACTOR = 0.6;
 	double BACKBONE_DISTANCE = 27;
 
-	public int naview_xy_coordinates(ArrayList<Short> pair_table2,
-			ArrayList<Double> x, ArrayList<Double> y)
+	/**
+	 * Computes the coordinates of the bases of a secondary structure.
+	 * 
+	 * @param pairs
+	 *            - The partner of each base, or -1
+	 * @param x
+	 *            - Receives the abscissa of each base
+	 * @param y
+	 *            - Receives the ordinate of each base
+	 * @return The number of bases
+	 */
+	public int naview_xy_coordinates(int[] pairs, double[] x, double[] y)
 			throws ExceptionNAViewAlgorithm {
 		if (debug)
 			System.out.println("naview_xy_coordinates");
-		if (pair_table2.size() == 0)
+		if (pairs.length == 0)
 			return 0;
 		int i;
-		ArrayList<Integer> pair_table = new ArrayList<Integer>(pair_table2
-				.size() + 1);
-		pair_table.add(pair_table2.size());
+		int[] pair_table = new int[pairs.length + 1];
+		pair_table[0] = pairs.length;
 
-		for (int j = 0; j < pair_table2.size(); j++) {
-			pair_table.add(pair_table2.get(j) + 1);
+		for (int j = 0; j < pairs.length; j++) {
+			pair_table[j + 1] = pairs[j] + 1;
 		}
 
 		if (debug) {
 			infoStructure(pair_table);
 		}
 		// length
-		nbase = pair_table.get(0);
-		bases = new ArrayList<Base>(nbase + 1);
-
-		for (int index = 0; index < bases.size(); index++) {
-			bases.add(new Base());
-		}
-
-		regions = new ArrayList<Region>();
-		for (int index = 0; index < nbase + 1; index++) {
-			regions.add(new Region());
-		}
+		nbase = pair_table[0];
+		baseMate = new int[nbase + 1];
+		baseX = new double[nbase + 1];
+		baseY = new double[nbase + 1];
+		baseExtracted = new boolean[nbase + 1];
+		baseRegion = new Region[nbase + 1];
 
 		read_in_bases(pair_table);
 
@@ -100,9 +118,11 @@ public class NAView extends InterfaceVARNAObservable {
 			infoRegions();
 
 		loop_count = 0;
-		loops = new ArrayList<Loop>(nbase + 1);
-		for (int index = 0; index < nbase + 1; index++) {
-			loops.add(new Loop());
+		loops = new ArrayList<Loop>();
+		nconnection = 0;
+		connections = new Connection[2 * nregion];
+		for (i = 0; i < connections.length; i++) {
+			connections[i] = new Connection();
 		}
 
 		construct_loop(0);
@@ -118,20 +138,22 @@ public class NAView extends InterfaceVARNAObservable {
 		if (debug)
 			dump_loops();
 
-		traverse_loop(root, null);
+		traverse_loops();
+
+		find_loop_centers();
 
 		for (i = 0; i < nbase; i++) {
-			x.add(100 + BACKBONE_DISTANCE * bases.get(i + 1).getX());
-			y.add(100 + BACKBONE_DISTANCE * bases.get(i + 1).getY());
+			x[i] = 100 + BACKBONE_DISTANCE * baseX[i + 1];
+			y[i] = 100 + BACKBONE_DISTANCE * baseY[i + 1];
 		}
 
 		return nbase;
 	}
 
-	private void infoStructure(ArrayList<Integer> pair_table) {
+	private void infoStructure(int[] pair_table) {
 		System.out.println("structure:");
-		for (int j = 0; j < pair_table.size(); j++) {
-			System.out.print("#" + j + ":" + pair_table.get(j) + "\t");
+		for (int j = 0; j < pair_table.length; j++) {
+			System.out.print("#" + j + ":" + pair_table[j] + "\t");
 			if (j % 10 == 0)
 				System.out.println();
 		}
@@ -140,9 +162,8 @@ public class NAView extends InterfaceVARNAObservable {
 
 	private void infoBasesMate() {
 		System.out.println("Bases mate:");
-		for (int index = 0; index < bases.size(); index++) {
-			System.out.print("#" + index + ":" + bases.get(index).getMate()
-					+ "\t");
+		for (int index = 0; index <= nbase; index++) {
+			System.out.print("#" + index + ":" + baseMate[index] + "\t");
 			if (index % 10 == 0)
 				System.out.println();
 		}
@@ -164,9 +185,8 @@ public class NAView extends InterfaceVARNAObservable {
 
 	private void infoBasesExtracted() {
 		System.out.println("Bases extracted:");
-		for (int index = 0; index < bases.size(); index++) {
-			System.out.print("i=" + index + ":"
-					+ bases.get(index).isExtracted() + "\t");
+		for (int index = 0; index <= nbase; index++) {
+			System.out.print("i=" + index + ":" + baseExtracted[index] + "\t");
 			if (index % 5 == 0)
 				System.out.println();
 		}
@@ -186,32 +206,30 @@ public class NAView extends InterfaceVARNAObservable {
 		System.out.println("\tnconnection=" + root.getNconnection());
 	}
 
-	private void read_in_bases(ArrayList<Integer> pair_table) {
+	private void read_in_bases(int[] pair_table) {
 		if (debug)
 			System.out.println("read_in_bases");
 
 		int i, npairs;
 
 		// Set up an origin.
-		bases.add(new Base());
-		bases.get(0).setMate(0);
-		bases.get(0).setExtracted(false);
-		bases.get(0).setX(ANUM);
-		bases.get(0).setY(ANUM);
+		baseMate[0] = 0;
+		baseExtracted[0] = false;
+		baseX[0] = ANUM;
+		baseY[0] = ANUM;
 
 		for (npairs = 0, i = 1; i <= nbase; i++) {
-			bases.add(new Base());
-			bases.get(i).setExtracted(false);
-			bases.get(i).setX(ANUM);
-			bases.get(i).setY(ANUM);
-			bases.get(i).setMate(pair_table.get(i));
-			if ((int) pair_table.get(i) > i)
+			baseExtracted[i] = false;
+			baseX[i] = ANUM;
+			baseY[i] = ANUM;
+			baseMate[i] = pair_table[i];
+			if (pair_table[i] > i)
 				npairs++;
 		}
 		// must have at least 1 pair to avoid segfault
 		if (npairs == 0) {
-			bases.get(1).setMate(nbase);
-			bases.get(nbase).setMate(1);
+			baseMate[1] = nbase;
+			baseMate[nbase] = 1;
 		}
 	}
 
@@ -224,38 +242,37 @@ public class NAView extends InterfaceVARNAObservable {
 		if (debug)
 			System.out.println("find_regions");
 		int i, mate, nb1;
+		Region rp;
 		nb1 = nbase + 1;
-		ArrayList<Boolean> mark = new ArrayList<Boolean>(nb1);
-		for (i = 0; i < nb1; i++)
-			mark.add(false);
+		boolean[] mark = new boolean[nb1];
+		regions = new ArrayList<Region>();
 		nregion = 0;
 		for (i = 0; i <= nbase; i++) {
-			if ((mate = bases.get(i).getMate()) != 0 && !mark.get(i)) {
-				regions.get(nregion).setStart1(i);
-				regions.get(nregion).setEnd2(mate);
-				mark.set(i, true);
-				mark.set(mate, true);
-				bases.get(i).setRegion(regions.get(nregion));
-				bases.get(mate).setRegion(regions.get(nregion));
-				for (i++, mate--; i < mate && bases.get(i).getMate() == mate; i++, mate--) {
-					mark.set(mate, true);
-					mark.set(i, true);
-					bases.get(i).setRegion(regions.get(nregion));
-					bases.get(mate).setRegion(regions.get(nregion));
+			if ((mate = baseMate[i]) != 0 && !mark[i]) {
+				rp = new Region();
+				regions.add(rp);
+				rp.setStart1(i);
+				rp.setEnd2(mate);
+				mark[i] = true;
+				mark[mate] = true;
+				baseRegion[i] = rp;
+				baseRegion[mate] = rp;
+				for (i++, mate--; i < mate && baseMate[i] == mate; i++, mate--) {
+					mark[mate] = true;
+					mark[i] = true;
+					baseRegion[i] = rp;
+					baseRegion[mate] = rp;
 				}
-				regions.get(nregion).setEnd1(--i);
-				regions.get(nregion).setStart2(mate + 1);
+				rp.setEnd1(--i);
+				rp.setStart2(mate + 1);
 				if (debug) {
 					if (nregion == 0)
 						System.out.printf("\nRegions are:\n");
 					System.out.printf(
 							"Region %d is %d-%d and %d-%d with gap of %d.\n",
-							nregion + 1, regions.get(nregion).getStart1(),
-							regions.get(nregion).getEnd1(), regions
-									.get(nregion).getStart2(), regions.get(
-									nregion).getEnd2(), regions.get(nregion)
-									.getStart2()
-									- regions.get(nregion).getEnd1() + 1);
+							nregion + 1, rp.getStart1(), rp.getEnd1(), rp
+									.getStart2(), rp.getEnd2(), rp.getStart2()
+									- rp.getEnd1() + 1);
 				}
 				nregion++;
 			}
@@ -263,97 +280,151 @@ public class NAView extends InterfaceVARNAObservable {
 	}
 
 	/**
-	 * Starting at residue ibase, recursively constructs the loop containing
-	 * said base and all deeper bases.
+	 * Starting at residue ibase, constructs the loop containing said base and
+	 * all deeper bases. Loops are numbered in the order of a recursive
+	 * traversal, but are constructed from an explicit stack, so that deeply
+	 * nested structures do not exhaust the call stack.
 	 * 
 	 * @throws ExceptionNAViewAlgorithm
 	 */
 	private Loop construct_loop(int ibase) throws ExceptionNAViewAlgorithm {
 		if (debug)
 			System.out.println("construct_loop");
-		int i, mate;
-		Loop retloop = new Loop(), lp = new Loop();
-		Connection cp = new Connection();
-		Region rp = new Region();
-		Radloop rlp = new Radloop();
-		retloop = loops.get(loop_count++);
-		retloop.setNconnection(0);
-		//System.out.println(""+ibase+" "+nbase);
-		//ArrayList<Connection> a = new ArrayList<Connection>(nbase + 1); 
-		//retloop.setConnections(a);
-//		for (int index = 0; index < nbase + 1; index++)
-//			retloop.getConnections().add(new Connection());
-		//for (int index = 0; index < nbase + 1; index++)
-		//	retloop.addConnection(index,new Connection());
+		int i, mate, top, lpbase;
+		boolean done;
+		Loop retloop, lp;
+		Region rp;
+		// Loops under construction, with their first base, the base from which
+		// their construction resumes, and the deeper loop just constructed
+		Loop[] stackLoop = new Loop[16];
+		Loop[] stackDeeper = new Loop[16];
+		int[] stackBase = new int[16];
+		int[] stackI = new int[16];
+
+		retloop = new_loop();
+		stackLoop[0] = retloop;
+		stackBase[0] = ibase;
+		stackI[0] = ibase;
+		top = 1;
+		while (top > 0) {
+			retloop = stackLoop[top - 1];
+			ibase = stackBase[top - 1];
+			i = stackI[top - 1];
+			done = false;
+			if (stackDeeper[top - 1] != null) {
+				connect_loops(retloop, stackDeeper[top - 1], i);
+				stackDeeper[top - 1] = null;
+				i = baseMate[i];
+				if (++i > nbase)
+					i = 0;
+				done = (i == ibase);
+			}
+			lp = null;
+			lpbase = 0;
+			while (!done) {
+				if ((mate = baseMate[i]) != 0) {
+					rp = baseRegion[i];
+					if (!baseExtracted[rp.getStart1()]) {
+						if (i == rp.getStart1()) {
+							baseExtracted[rp.getStart1()] = true;
+							baseExtracted[rp.getEnd1()] = true;
+							baseExtracted[rp.getStart2()] = true;
+							baseExtracted[rp.getEnd2()] = true;
+							lpbase = rp.getEnd1() < nbase ? rp.getEnd1() + 1 : 0;
+						} else if (i == rp.getStart2()) {
+							baseExtracted[rp.getStart2()] = true;
+							baseExtracted[rp.getEnd2()] = true;
+							baseExtracted[rp.getStart1()] = true;
+							baseExtracted[rp.getEnd1()] = true;
+							lpbase = rp.getEnd2() < nbase ? rp.getEnd2() + 1 : 0;
+						} else {
+							throw new ExceptionNAViewAlgorithm(
+									"naview:Error detected in construct_loop. i = "
+											+ i
+											+ " not found in region table.\n");
+						}
+						lp = new_loop();
+						break;
+					}
+					i = mate;
+				}
+				if (++i > nbase)
+					i = 0;
+				done = (i == ibase);
+			}
+			if (lp != null) {
+				stackI[top - 1] = i;
+				if (top == stackLoop.length) {
+					stackLoop = Arrays.copyOf(stackLoop, 2 * top);
+					stackDeeper = Arrays.copyOf(stackDeeper, 2 * top);
+					stackBase = Arrays.copyOf(stackBase, 2 * top);
+					stackI = Arrays.copyOf(stackI, 2 * top);
+				}
+				stackLoop[top] = lp;
+				stackDeeper[top] = null;
+				stackBase[top] = lpbase;
+				stackI[top] = lpbase;
+				top++;
+			} else {
+				top--;
+				if (top > 0) {
+					stackDeeper[top - 1] = retloop;
+				}
+			}
+		}
+		return stackLoop[0];
+	}
+
+	/**
+	 * Creates a new loop, numbered after the previous ones.
+	 */
+	private Loop new_loop() {
+		Loop retloop = new Loop();
+		loops.add(retloop);
+		loop_count++;
 		retloop.setDepth(0);
 		retloop.setNumber(loop_count);
 		retloop.setRadius(0.0);
-		for (rlp = rlphead; rlp != null; rlp = rlp.getNext())
+		for (Radloop rlp = rlphead; rlp != null; rlp = rlp.getNext())
 			if (rlp.getLoopnumber() == loop_count)
 				retloop.setRadius(rlp.getRadius());
-		i = ibase;
-		do {
-			if ((mate = bases.get(i).getMate()) != 0) {
-				rp = bases.get(i).getRegion();
-				if (!bases.get(rp.getStart1()).isExtracted()) {
-					if (i == rp.getStart1()) {
-						bases.get(rp.getStart1()).setExtracted(true);
-						bases.get(rp.getEnd1()).setExtracted(true);
-						bases.get(rp.getStart2()).setExtracted(true);
-						bases.get(rp.getEnd2()).setExtracted(true);
-						lp = construct_loop(rp.getEnd1() < nbase ? rp.getEnd1() + 1
-								: 0);
-					} else if (i == rp.getStart2()) {
-						bases.get(rp.getStart2()).setExtracted(true);
-						bases.get(rp.getEnd2()).setExtracted(true);
-						bases.get(rp.getStart1()).setExtracted(true);
-						bases.get(rp.getEnd1()).setExtracted(true);
-						lp = construct_loop(rp.getEnd2() < nbase ? rp.getEnd2() + 1
-								: 0);
-					} else {
-						throw new ExceptionNAViewAlgorithm(
-								"naview:Error detected in construct_loop. i = "
-										+ i + " not found in region table.\n");
-					}
-					retloop.setNconnection(retloop.getNconnection() + 1);
-					cp = new Connection();
-					retloop.setConnection(retloop.getNconnection() - 1,	cp);
-					retloop.setConnection(retloop.getNconnection(), null);
-					cp.setLoop(lp);
-					cp.setRegion(rp);
-					if (i == rp.getStart1()) {
-						cp.setStart(rp.getStart1());
-						cp.setEnd(rp.getEnd2());
-					} else {
-						cp.setStart(rp.getStart2());
-						cp.setEnd(rp.getEnd1());
-					}
-					cp.setExtruded(false);
-					cp.setBroken(false);
-					lp.setNconnection(lp.getNconnection() + 1);
-					cp = new Connection();
-					lp.setConnection(lp.getNconnection() - 1, cp);
-					lp.setConnection(lp.getNconnection(), null);
-					cp.setLoop(retloop);
-					cp.setRegion(rp);
-					if (i == rp.getStart1()) {
-						cp.setStart(rp.getStart2());
-						cp.setEnd(rp.getEnd1());
-					} else {
-						cp.setStart(rp.getStart1());
-						cp.setEnd(rp.getEnd2());
-					}
-					cp.setExtruded(false);
-					cp.setBroken(false);
-				}
-				i = mate;
-			}
-			if (++i > nbase)
-				i = 0;
-		} while (i != ibase);
 		return retloop;
 	}
 
+	/**
+	 * Connects the loop retloop to the deeper loop lp, through the region of
+	 * residue i.
+	 */
+	private void connect_loops(Loop retloop, Loop lp, int i) {
+		Region rp = baseRegion[i];
+		Connection cp = connections[nconnection++];
+		retloop.addConnection(cp);
+		cp.setLoop(lp);
+		cp.setRegion(rp);
+		if (i == rp.getStart1()) {
+			cp.setStart(rp.getStart1());
+			cp.setEnd(rp.getEnd2());
+		} else {
+			cp.setStart(rp.getStart2());
+			cp.setEnd(rp.getEnd1());
+		}
+		cp.setExtruded(false);
+		cp.setBroken(false);
+		cp = connections[nconnection++];
+		lp.addConnection(cp);
+		cp.setLoop(retloop);
+		cp.setRegion(rp);
+		if (i == rp.getStart1()) {
+			cp.setStart(rp.getStart2());
+			cp.setEnd(rp.getEnd1());
+		} else {
+			cp.setStart(rp.getStart1());
+			cp.setEnd(rp.getEnd2());
+		}
+		cp.setExtruded(false);
+		cp.setBroken(false);
+	}
+
 	/**
 	 * Displays all the loops.
 	 */
@@ -363,13 +434,13 @@ public class NAView extends InterfaceVARNAObservable {
 		Loop lp;
 		Connection cp;
 
-		System.out.printf("\nRoot loop is #%d\n", loops.indexOf(root) + 1);
+		System.out.printf("\nRoot loop is #%d\n", root.getNumber());
 		for (il = 0; il < loop_count; il++) {
 			lp = loops.get(il);
 			System.out.printf("Loop %d has %d connections:\n", il + 1, lp
 					.getNconnection());
 			for (int i = 0; (cp = lp.getConnection(i)) != null; i++) {
-				ilp = (loops.indexOf(cp.getLoop())) + 1;
+				ilp = cp.getLoop().getNumber();
 				irp = (regions.indexOf(cp.getRegion())) + 1;
 				System.out.printf("  Loop %d Region %d (%d-%d)\n", ilp, irp, cp
 						.getStart(), cp.getEnd());
@@ -404,55 +475,78 @@ public class NAView extends InterfaceVARNAObservable {
 	}
 
 	/**
-	 * Determine the depth of all loops.
+	 * Determine the depth of all loops. Depth is defined as the minimum
+	 * distance to a leaf loop where a leaf loop is one that has only one or no
+	 * connections. As loops form a tree, depths are found by a single
+	 * breadth-first search from all the leaves at once.
 	 */
 	private void determine_depths() {
 		if (debug)
 			System.out.println("determine_depths");
-		Loop lp = new Loop();
-		int i, j;
+		Loop lp, lpnext;
+		Connection cp;
+		int i, head, tail;
+		Loop[] queue = new Loop[loop_count];
 
+		head = 0;
+		tail = 0;
 		for (i = 0; i < loop_count; i++) {
 			lp = loops.get(i);
-			for (j = 0; j < loop_count; j++)
-				loops.get(j).setMark(false);
-			lp.setDepth(depth(lp));
+			lp.setMark(lp.getNconnection() <= 1);
+			if (lp.isMark()) {
+				lp.setDepth(0);
+				queue[tail++] = lp;
+			}
+		}
+		while (head < tail) {
+			lp = queue[head++];
+			for (i = 0; (cp = lp.getConnection(i)) != null; i++) {
+				lpnext = cp.getLoop();
+				if (!lpnext.isMark()) {
+					lpnext.setMark(true);
+					lpnext.setDepth(lp.getDepth() + 1);
+					queue[tail++] = lpnext;
+				}
+			}
+		}
+		for (i = 0; i < loop_count; i++) {
+			loops.get(i).setMark(false);
 		}
 	}
 
 	/**
-	 * Determines the depth of loop, lp. Depth is defined as the minimum
-	 * distance to a leaf loop where a leaf loop is one that has only one or no
-	 * connections.
+	 * Lays out all the loops, starting from the root. Each loop is laid out
+	 * before the regions which connect it to deeper loops, in the order of a
+	 * recursive traversal, but from an explicit stack, so that deeply nested
+	 * structures do not exhaust the call stack.
+	 * 
+	 * @throws ExceptionNAViewAlgorithm
 	 */
-	private int depth(Loop lp) {
-		if (debug)
-			System.out.println("depth");
-		int count, ret, d;
-
-		if (lp.getNconnection() <= 1)
-			return 0;
-		if (lp.isMark())
-			return -1;
-		lp.setMark(true);
-		count = 0;
-		ret = 0;
-		for (int i = 0; lp.getConnection(i) != null; i++) {
-			d = depth(lp.getConnection(i).getLoop());
-			if (d >= 0) {
-				if (++count == 1)
-					ret = d;
-				else if (ret > d)
-					ret = d;
+	private void traverse_loops() throws ExceptionNAViewAlgorithm {
+		ArrayList<Connection> stack = new ArrayList<Connection>();
+		Connection anchor_connection = null;
+		Loop lp = root;
+		int ic, icroot;
+
+		while (true) {
+			icroot = traverse_loop(lp, anchor_connection);
+			for (ic = lp.getNconnection() - 1; ic >= 0; ic--) {
+				if (icroot != ic) {
+					stack.add(lp.getConnection(ic));
+				}
+			}
+			if (stack.isEmpty()) {
+				break;
 			}
+			anchor_connection = stack.remove(stack.size() - 1);
+			generate_region(anchor_connection);
+			lp = anchor_connection.getLoop();
 		}
-		lp.setMark(false);
-		return ret + 1;
 	}
 
 	/**
-	 * This is the workhorse of the display program. The algorithm is recursive
-	 * based on processing individual loops. Each base pairing region is
+	 * This is the workhorse of the display program. The algorithm is based on
+	 * processing individual loops. Each base pairing region is
 	 * displayed using the direction given by the circle diagram, and the
 	 * connections between the regions is drawn by equally spaced points. The
 	 * radius of the loop is set to minimize the square error for lengths
@@ -461,11 +555,12 @@ public class NAView extends InterfaceVARNAObservable {
 	 * being less than 1/2 unit apart, then that segment is extruded.
 	 * 
 	 * The variable, anchor_connection, gives the connection to the loop
-	 * processed in an previous level of recursion.
+	 * processed before, from which this loop is reached. The index of that
+	 * connection within the loop is returned, or -1 for the root loop.
 	 * 
 	 * @throws ExceptionNAViewAlgorithm
 	 */
-	private void traverse_loop(Loop lp, Connection anchor_connection)
+	private int traverse_loop(Loop lp, Connection anchor_connection)
 			throws ExceptionNAViewAlgorithm {
 		if (debug)
 			System.out.println("  traverse_loop");
@@ -480,7 +575,7 @@ public class NAView extends InterfaceVARNAObservable {
 		double midx, midy, nrx, nry, mx, my, vx, vy, dotmv, nmidx, nmidy;
 		int icstart1, icup, icdown, icnext, direction;
 		double dan, dx, dy, rr;
-		double cpx, cpy, cpnextx, cpnexty, cnx, cny, rcn, rc, lnx, lny, rl, ac, acn, sx, sy, dcp;
+		double cpx, cpy, cpnextx, cpnexty, cnx, cny, rcn, rc, lnx, lny, rl, ac, acn, dcp;
 		int imaxloop = 0;
 
 		angleinc = 2 * Math.PI / (nbase + 1);
@@ -517,10 +612,8 @@ public class NAView extends InterfaceVARNAObservable {
 			if (anchor_connection == null)
 				xc = yc = 0.0;
 			else {
-				xo = (bases.get(acp.getStart()).getX() + bases
-						.get(acp.getEnd()).getX()) / 2.0;
-				yo = (bases.get(acp.getStart()).getY() + bases
-						.get(acp.getEnd()).getY()) / 2.0;
+				xo = (baseX[acp.getStart()] + baseX[acp.getEnd()]) / 2.0;
+				yo = (baseY[acp.getStart()] + baseY[acp.getEnd()]) / 2.0;
 				xc = xo - radius * acp.getXrad();
 				yc = yo - radius * acp.getYrad();
 			}
@@ -633,14 +726,10 @@ public class NAView extends InterfaceVARNAObservable {
 										- Math.asin(1.0 / 2.0 / radius);
 								aend = cp.getAngle()
 										+ Math.asin(1.0 / 2.0 / radius);
-								bases.get(cp.getStart()).setX(
-										xc + radius * Math.cos(astart));
-								bases.get(cp.getStart()).setY(
-										yc + radius * Math.sin(astart));
-								bases.get(cp.getEnd()).setX(
-										xc + radius * Math.cos(aend));
-								bases.get(cp.getEnd()).setY(
-										yc + radius * Math.sin(aend));
+								baseX[cp.getStart()] = xc + radius * Math.cos(astart);
+								baseY[cp.getStart()] = yc + radius * Math.sin(astart);
+								baseX[cp.getEnd()] = xc + radius * Math.cos(aend);
+								baseY[cp.getEnd()] = yc + radius * Math.sin(aend);
 							} else if (direction < 0) {
 								j = ic + 1;
 								if (j >= lp.getNconnection())
@@ -667,16 +756,12 @@ public class NAView extends InterfaceVARNAObservable {
 								} else {
 									rl = 1.0;
 								}
-								bases.get(cp.getEnd()).setX(
-										bases.get(cpnext.getStart()).getX()
-												+ rl * lnx);
-								bases.get(cp.getEnd()).setY(
-										bases.get(cpnext.getStart()).getY()
-												+ rl * lny);
-								bases.get(cp.getStart()).setX(
-										bases.get(cp.getEnd()).getX() + cpy);
-								bases.get(cp.getStart()).setY(
-										bases.get(cp.getEnd()).getY() - cpx);
+								baseX[cp.getEnd()] = baseX[cpnext.getStart()]
+										+ rl * lnx;
+								baseY[cp.getEnd()] = baseY[cpnext.getStart()]
+										+ rl * lny;
+								baseX[cp.getStart()] = baseX[cp.getEnd()] + cpy;
+								baseY[cp.getStart()] = baseY[cp.getEnd()] - cpx;
 							} else {
 								j = ic - 1;
 								if (j < 0)
@@ -703,18 +788,14 @@ public class NAView extends InterfaceVARNAObservable {
 								} else {
 									rl = 1.0;
 								}
-								bases.get(cpnext.getStart()).setX(
-										bases.get(cp.getEnd()).getX() + rl
-												* lnx);
-								bases.get(cpnext.getStart()).setY(
-										bases.get(cp.getEnd()).getY() + rl
-												* lny);
-								bases.get(cpnext.getEnd()).setX(
-										bases.get(cpnext.getStart()).getX()
-												- cpnexty);
-								bases.get(cpnext.getEnd()).setY(
-										bases.get(cpnext.getStart()).getY()
-												+ cpnextx);
+								baseX[cpnext.getStart()] = baseX[cp.getEnd()]
+										+ rl * lnx;
+								baseY[cpnext.getStart()] = baseY[cp.getEnd()]
+										+ rl * lny;
+								baseX[cpnext.getEnd()] = baseX[cpnext.getStart()]
+										- cpnexty;
+								baseY[cpnext.getEnd()] = baseY[cpnext.getStart()]
+										+ cpnextx;
 							}
 						}
 					}
@@ -751,12 +832,12 @@ public class NAView extends InterfaceVARNAObservable {
 
 					cp = lp.getConnection(icstart);
 					cpnext = lp.getConnection(icend);
-					dx = bases.get(cpnext.getEnd()).getX()
-							- bases.get(cp.getStart()).getX();
-					dy = bases.get(cpnext.getEnd()).getY()
-							- bases.get(cp.getStart()).getY();
-					midx = bases.get(cp.getStart()).getX() + dx / 2.0;
-					midy = bases.get(cp.getStart()).getY() + dy / 2.0;
+					dx = baseX[cpnext.getEnd()]
+							- baseX[cp.getStart()];
+					dy = baseY[cpnext.getEnd()]
+							- baseY[cp.getStart()];
+					midx = baseX[cp.getStart()] + dx / 2.0;
+					midy = baseY[cp.getStart()] + dy / 2.0;
 					rr = Math.sqrt(dx * dx + dy * dy);
 					mx = dx / rr;
 					my = dy / rr;
@@ -775,13 +856,13 @@ public class NAView extends InterfaceVARNAObservable {
 					// Determine which side of the bisector the center should
 					// be.
 
-					dx = bases.get(cp.getStart()).getX() - xc;
-					dy = bases.get(cp.getStart()).getY() - yc;
+					dx = baseX[cp.getStart()] - xc;
+					dy = baseY[cp.getStart()] - yc;
 					ac = Math.atan2(dy, dx);
 					if (ac < 0.0)
 						ac += 2 * Math.PI;
-					dx = bases.get(cpnext.getEnd()).getX() - xc;
-					dy = bases.get(cpnext.getEnd()).getY() - yc;
+					dx = baseX[cpnext.getEnd()] - xc;
+					dy = baseY[cpnext.getEnd()] - yc;
 					acn = Math.atan2(dy, dx);
 					if (acn < 0.0)
 						acn += 2 * Math.PI;
@@ -800,15 +881,11 @@ public class NAView extends InterfaceVARNAObservable {
 						for (ic = icstart;;) {
 							cp = lp.getConnection(ic);
 							i = cp.getStart();
-							bases.get(i).setX(
-									bases.get(i).getX() + nmidx - midx);
-							bases.get(i).setY(
-									bases.get(i).getY() + nmidy - midy);
+							baseX[i] = baseX[i] + nmidx - midx;
+							baseY[i] = baseY[i] + nmidy - midy;
 							i = cp.getEnd();
-							bases.get(i).setX(
-									bases.get(i).getX() + nmidx - midx);
-							bases.get(i).setY(
-									bases.get(i).getY() + nmidy - midy);
+							baseX[i] = baseX[i] + nmidx - midx;
+							baseY[i] = baseY[i] + nmidy - midy;
 							if (ic == icend)
 								break;
 							if (++ic >= lp.getNconnection())
@@ -825,14 +902,14 @@ public class NAView extends InterfaceVARNAObservable {
 				if (j >= lp.getNconnection())
 					j = 0;
 				cpnext = lp.getConnection(j);
-				dx = bases.get(cp.getEnd()).getX() - xc;
-				dy = bases.get(cp.getEnd()).getY() - yc;
+				dx = baseX[cp.getEnd()] - xc;
+				dy = baseY[cp.getEnd()] - yc;
 				rc = Math.sqrt(dx * dx + dy * dy);
 				ac = Math.atan2(dy, dx);
 				if (ac < 0.0)
 					ac += 2 * Math.PI;
-				dx = bases.get(cpnext.getStart()).getX() - xc;
-				dy = bases.get(cpnext.getStart()).getY() - yc;
+				dx = baseX[cpnext.getStart()] - xc;
+				dy = baseY[cpnext.getStart()] - yc;
 				rcn = Math.sqrt(dx * dx + dy * dy);
 				acn = Math.atan2(dy, dx);
 				if (acn < 0.0)
@@ -865,46 +942,53 @@ public class NAView extends InterfaceVARNAObservable {
 							i -= nbase + 1;
 						a = ac + j * angleinc;
 						rr = rc + (rcn - rc) * (a - ac) / dan;
-						bases.get(i).setX(xc + rr * Math.cos(a));
-						bases.get(i).setY(yc + rr * Math.sin(a));
+						baseX[i] = xc + rr * Math.cos(a);
+						baseY[i] = yc + rr * Math.sin(a);
 					}
 				}
 			}
 			break;
 		}
-		for (ic = 0; ic < lp.getNconnection(); ic++) {
-			if (icroot != ic) {
+		return icroot;
+	}
+
+	/**
+	 * Sets the center of each loop to the centroid of its bases, once all the
+	 * bases are placed.
+	 */
+	private void find_loop_centers() {
+		Loop lp;
+		Connection cp, cpnext;
+		int il, ic, j, n;
+		double sx, sy;
+
+		for (il = 0; il < loop_count; il++) {
+			lp = loops.get(il);
+			n = 0;
+			sx = 0.0;
+			sy = 0.0;
+			for (ic = 0; ic < lp.getNconnection(); ic++) {
+				j = ic + 1;
+				if (j >= lp.getNconnection())
+					j = 0;
 				cp = lp.getConnection(ic);
-				generate_region(cp);
-				traverse_loop(cp.getLoop(), cp);
-			}
-		}
-		n = 0;
-		sx = 0.0;
-		sy = 0.0;
-		for (ic = 0; ic < lp.getNconnection(); ic++) {
-			j = ic + 1;
-			if (j >= lp.getNconnection())
-				j = 0;
-			cp = lp.getConnection(ic);
-			cpnext = lp.getConnection(j);
-			n += 2;
-			sx += bases.get(cp.getStart()).getX()
-					+ bases.get(cp.getEnd()).getX();
-			sy += bases.get(cp.getStart()).getY()
-					+ bases.get(cp.getEnd()).getY();
-			if (!cp.isExtruded()) {
-				for (j = cp.getEnd() + 1; j != cpnext.getStart(); j++) {
-					if (j > nbase)
-						j -= nbase + 1;
-					n++;
-					sx += bases.get(j).getX();
-					sy += bases.get(j).getY();
+				cpnext = lp.getConnection(j);
+				n += 2;
+				sx += baseX[cp.getStart()] + baseX[cp.getEnd()];
+				sy += baseY[cp.getStart()] + baseY[cp.getEnd()];
+				if (!cp.isExtruded()) {
+					for (j = cp.getEnd() + 1; j != cpnext.getStart(); j++) {
+						if (j > nbase)
+							j -= nbase + 1;
+						n++;
+						sx += baseX[j];
+						sy += baseY[j];
+					}
 				}
 			}
+			lp.setX(sx / n);
+			lp.setY(sy / n);
 		}
-		lp.setX(sx / n);
-		lp.setY(sy / n);
 	}
 
 	/**
@@ -1048,26 +1132,18 @@ public class NAView extends InterfaceVARNAObservable {
 			start = rp.getStart2();
 			end = rp.getEnd2();
 		}
-		if (bases.get(cp.getStart()).getX() > ANUM - 100.0
-				|| bases.get(cp.getEnd()).getX() > ANUM - 100.0) {
+		if (baseX[cp.getStart()] == ANUM
+				|| baseX[cp.getEnd()] == ANUM) {
 			throw new ExceptionNAViewAlgorithm(
 					"Bad region passed to generate_region. Coordinates not defined.");
 		}
 		for (i = start + 1; i <= end; i++) {
 			l++;
-			bases.get(i).setX(
-					bases.get(cp.getStart()).getX() + HELIX_FACTOR * l
-							* cp.getXrad());
-			bases.get(i).setY(
-					bases.get(cp.getStart()).getY() + HELIX_FACTOR * l
-							* cp.getYrad());
-			mate = bases.get(i).getMate();
-			bases.get(mate).setX(
-					bases.get(cp.getEnd()).getX() + HELIX_FACTOR * l
-							* cp.getXrad());
-			bases.get(mate).setY(
-					bases.get(cp.getEnd()).getY() + HELIX_FACTOR * l
-							* cp.getYrad());
+			baseX[i] = baseX[cp.getStart()] + HELIX_FACTOR * l * cp.getXrad();
+			baseY[i] = baseY[cp.getStart()] + HELIX_FACTOR * l * cp.getYrad();
+			mate = baseMate[i];
+			baseX[mate] = baseX[cp.getEnd()] + HELIX_FACTOR * l * cp.getXrad();
+			baseY[mate] = baseY[cp.getEnd()] + HELIX_FACTOR * l * cp.getYrad();
 			
 		}
 	}
@@ -1087,8 +1163,8 @@ public class NAView extends InterfaceVARNAObservable {
 		double dx, dy, rr, midx, midy, xn, yn, nrx, nry, mx, my, a;
 		int l, j, i;
 
-		dx = bases.get(end).getX() - bases.get(start).getX();
-		dy = bases.get(end).getY() - bases.get(start).getY();
+		dx = baseX[end] - baseX[start];
+		dy = baseY[end] - baseY[start];
 		rr = Math.sqrt(dx * dx + dy * dy);
 		l = end - start;
 		if (l < 0)
@@ -1100,31 +1176,29 @@ public class NAView extends InterfaceVARNAObservable {
 				i = start + j;
 				if (i > nbase)
 					i -= nbase + 1;
-				bases.get(i).setX(
-						bases.get(start).getX() + dx * (double) j / (double) l);
-				bases.get(i).setY(
-						bases.get(start).getY() + dy * (double) j / (double) l);
+				baseX[i] = baseX[start] + dx * (double) j / (double) l;
+				baseY[i] = baseY[start] + dy * (double) j / (double) l;
 			}
 		} else {
 			find_center_for_arc((l - 1), rr);
 			dx /= rr;
 			dy /= rr;
-			midx = bases.get(start).getX() + dx * rr / 2.0;
-			midy = bases.get(start).getY() + dy * rr / 2.0;
+			midx = baseX[start] + dx * rr / 2.0;
+			midy = baseY[start] + dy * rr / 2.0;
 			xn = dy;
 			yn = -dx;
 			nrx = midx + _h * xn;
 			nry = midy + _h * yn;
-			mx = bases.get(start).getX() - nrx;
-			my = bases.get(start).getY() - nry;
+			mx = baseX[start] - nrx;
+			my = baseY[start] - nry;
 			rr = Math.sqrt(mx * mx + my * my);
 			a = Math.atan2(my, mx);
 			for (j = 1; j < l; j++) {
 				i = start + j;
 				if (i > nbase)
 					i -= nbase + 1;
-				bases.get(i).setX(nrx + rr * Math.cos(a + j * angleinc));
-				bases.get(i).setY(nry + rr * Math.sin(a + j * angleinc));
+				baseX[i] = nrx + rr * Math.cos(a + j * angleinc);
+				baseY[i] = nry + rr * Math.sin(a + j * angleinc);
 			}
 		}
 	}
@@ -1162,8 +1236,8 @@ public class NAView extends InterfaceVARNAObservable {
 		if (n == 2)
 			construct_circle_segment(start, end);
 		else {
-			dx = bases.get(end).getX() - bases.get(start).getX();
-			dy = bases.get(end).getY() - bases.get(start).getY();
+			dx = baseX[end] - baseX[start];
+			dy = baseY[end] - baseY[start];
 			rr = Math.sqrt(dx * dx + dy * dy);
 			dx /= rr;
 			dy /= rr;
@@ -1174,10 +1248,10 @@ public class NAView extends InterfaceVARNAObservable {
 				nend = end - 1;
 				if (nend < 0)
 					nend += nbase + 1;
-				bases.get(nstart).setX(bases.get(start).getX() + 0.5 * dx);
-				bases.get(nstart).setY(bases.get(start).getY() + 0.5 * dy);
-				bases.get(nend).setX(bases.get(end).getX() - 0.5 * dx);
-				bases.get(nend).setY(bases.get(end).getY() - 0.5 * dy);
+				baseX[nstart] = baseX[start] + 0.5 * dx;
+				baseY[nstart] = baseY[start] + 0.5 * dy;
+				baseX[nend] = baseX[end] - 0.5 * dx;
+				baseY[nend] = baseY[end] - 0.5 * dy;
 				start = nstart;
 				end = nend;
 			}
@@ -1187,8 +1261,8 @@ public class NAView extends InterfaceVARNAObservable {
 				nstart = start + 1;
 				if (nstart > nbase)
 					nstart -= nbase + 1;
-				dx = bases.get(nstart).getX() - bases.get(start).getX();
-				dy = bases.get(nstart).getY() - bases.get(start).getY();
+				dx = baseX[nstart] - baseX[start];
+				dy = baseY[nstart] - baseY[start];
 				a1 = Math.atan2(dy, dx);
 				if (a1 < 0.0)
 					a1 += 2 * Math.PI;
@@ -1200,8 +1274,8 @@ public class NAView extends InterfaceVARNAObservable {
 				nend = end - 1;
 				if (nend < 0)
 					nend += nbase + 1;
-				dx = bases.get(nend).getX() - bases.get(end).getX();
-				dy = bases.get(nend).getY() - bases.get(end).getY();
+				dx = baseX[nend] - baseX[end];
+				dy = baseY[nend] - baseY[end];
 				a2 = Math.atan2(dy, dx);
 				if (a2 < 0.0)
 					a2 += 2 * Math.PI;
@@ -1212,14 +1286,12 @@ public class NAView extends InterfaceVARNAObservable {
 					collision = true;
 				if (collision) {
 					ac = minf2(aave, astart + 0.5);
-					bases.get(nstart).setX(
-							bases.get(start).getX() + Math.cos(ac));
-					bases.get(nstart).setY(
-							bases.get(start).getY() + Math.sin(ac));
+					baseX[nstart] = baseX[start] + Math.cos(ac);
+					baseY[nstart] = baseY[start] + Math.sin(ac);
 					start = nstart;
 					ac = maxf2(aave, aend2 - 0.5);
-					bases.get(nend).setX(bases.get(end).getX() + Math.cos(ac));
-					bases.get(nend).setY(bases.get(end).getY() + Math.sin(ac));
+					baseX[nend] = baseX[end] + Math.cos(ac);
+					baseY[nend] = baseY[end] + Math.sin(ac);
 					end = nend;
 					n -= 2;
 				}
@@ -0,0 +1,141 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import fr.orsay.lri.varna.exceptions.ExceptionFileFormatOrSyntax;
+import fr.orsay.lri.varna.exceptions.ExceptionLoadingFailed;
+import fr.orsay.lri.varna.exceptions.ExceptionUnmatchedClosingParentheses;
+
+/**
+ * Streaming reader for multi-record DBN (Vienna/FASTA-like) files. Each record
+ * consists of an optional <code>&gt;title</code> line, a sequence line and a
+ * structure line (trailing annotations such as free energies are ignored).
+ * Records are parsed one at a time into reusable character buffers, so that
+ * arbitrarily large dumps can be processed in constant memory.
+ */
+public class DBNRecordReader implements Iterator<RNA> {
+
+	private LineTokenizer _in;
+
+	private char[] _seq = new char[256];
+	private int _seqLen = 0;
+	private char[] _str = new char[256];
+	private int _strLen = 0;
+
+	private RNA _next = null;
+	private boolean _eof = false;
+
+	public DBNRecordReader(Reader r) {
+		_in = new LineTokenizer(r);
+	}
+
+	/**
+	 * Reads the next record of the stream into a newly created RNA.
+	 *
+	 * @return The next RNA, or <code>null</code> if the end of the stream has
+	 *         been reached
+	 */
+	public RNA readRNA() throws ExceptionLoadingFailed,
+			ExceptionFileFormatOrSyntax, ExceptionUnmatchedClosingParentheses {
+		RNA result = new RNA();
+		if (readInto(result)) {
+			return result;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the next record of the stream into an existing RNA.
+	 *
+	 * @param rna
+	 *            - The RNA whose sequence, structure and name are replaced
+	 * @return <code>true</code> if a complete record was read,
+	 *         <code>false</code> if the end of the stream has been reached
+	 */
+	public boolean readInto(RNA rna) throws ExceptionLoadingFailed,
+			ExceptionFileFormatOrSyntax, ExceptionUnmatchedClosingParentheses {
+		String title = "";
+		_seqLen = 0;
+		_strLen = 0;
+		boolean seqRead = false;
+		try {
+			while (_in.readLine()) {
+				if (_in.getNumTokens() == 0) {
+					continue;
+				}
+				char[] line = _in.getLine();
+				int start = _in.getTokenStart(0);
+				if (line[start] == '>') {
+					title = _in.getTrimmedLine().substring(1).trim();
+				} else if (!seqRead) {
+					int end = _in.getTokenEnd(_in.getNumTokens() - 1);
+					_seq = LineTokenizer.append(_seq, _seqLen, line, start, end);
+					_seqLen += end - start;
+					seqRead = true;
+				} else {
+					// Drops anything following the structure, e.g. an energy
+					int stop = _in.getTokenEnd(0);
+					_str = LineTokenizer.append(_str, _strLen, line, start, stop);
+					_strLen += stop - start;
+					char[] seq = new char[_seqLen];
+					System.arraycopy(_seq, 0, seq, 0, _seqLen);
+					rna.setRNA(seq, RNA.parseDBNStructure(_str, _strLen));
+					rna.setName(title);
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			throw new ExceptionLoadingFailed(e.getMessage(), "");
+		}
+		return false;
+	}
+
+	public boolean hasNext() {
+		if ((_next == null) && !_eof) {
+			try {
+				_next = readRNA();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			_eof = (_next == null);
+		}
+		return (_next != null);
+	}
+
+	public RNA next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		RNA result = _next;
+		_next = null;
+		return result;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() throws IOException {
+		_in.close();
+	}
+}
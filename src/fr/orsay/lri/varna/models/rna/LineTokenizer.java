@@ -0,0 +1,369 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Line-oriented reader used by the secondary structure file parsers. Each
+ * line is read into a reusable <code>char[]</code> buffer and split on
+ * whitespace without creating any intermediate <code>String</code>, so that
+ * integer fields can be parsed in place.
+ * The content can be read either from a <code>Reader</code>, or from a file
+ * channel which is then memory-mapped, each line being decoded as ISO-8859-1
+ * straight from the mapped bytes into the line buffer.
+ */
+public class LineTokenizer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Size of the regions of a file channel which are mapped at once
+	 */
+	private static final long MAPPING_SIZE = 64L * 1024L * 1024L;
+
+	private Reader _in = null;
+
+	private FileChannel _channel = null;
+	private long _channelPos = 0;
+	private ByteBuffer _bytes = null;
+	private char[] _buf = new char[BUFFER_SIZE];
+	private int _pos = 0;
+	private int _lim = 0;
+
+	private char[] _line = new char[256];
+	private int _lineLen = 0;
+
+	private int[] _tokStart = new int[16];
+	private int[] _tokEnd = new int[16];
+	private int _numTokens = 0;
+
+	public LineTokenizer(Reader r) {
+		_in = r;
+	}
+
+	/**
+	 * Creates a tokenizer reading a file channel through memory-mapping, which
+	 * avoids copying the content of large files through a Reader.
+	 *
+	 * @param channel
+	 *            - A readable channel, positioned at the beginning of the
+	 *            content
+	 */
+	public LineTokenizer(FileChannel channel) throws IOException {
+		_channel = channel;
+		_channelPos = channel.position();
+	}
+
+	/**
+	 * Reads the next line of the stream, without its terminator, and splits
+	 * it into whitespace-separated tokens.
+	 *
+	 * @return <code>false</code> if the end of the stream has been reached
+	 */
+	public boolean readLine() throws IOException {
+		_lineLen = 0;
+		_numTokens = 0;
+		if (_channel != null) {
+			return readMappedLine();
+		}
+		boolean any = false;
+		while (true) {
+			if (_pos >= _lim) {
+				if (!fill()) {
+					if (any) {
+						tokenize();
+					}
+					return any;
+				}
+			}
+			any = true;
+			int start = _pos;
+			while ((_pos < _lim) && (_buf[_pos] != '\n') && (_buf[_pos] != '\r')) {
+				_pos++;
+			}
+			_line = append(_line, _lineLen, _buf, start, _pos);
+			_lineLen += _pos - start;
+			if (_pos < _lim) {
+				// Consumes the terminator, handling '\r\n' as a single one
+				char c = _buf[_pos++];
+				if ((c == '\r') && ((_pos < _lim) || fill()) && (_buf[_pos] == '\n')) {
+					_pos++;
+				}
+				tokenize();
+				return true;
+			}
+		}
+	}
+
+	private boolean fill() throws IOException {
+		_pos = 0;
+		_lim = _in.read(_buf, 0, _buf.length);
+		if (_lim <= 0) {
+			_lim = 0;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the next line from the mapped file, widening its bytes directly
+	 * into the line buffer.
+	 */
+	private boolean readMappedLine() throws IOException {
+		boolean any = false;
+		while (true) {
+			if (!hasMappedBytes()) {
+				if (any) {
+					tokenize();
+				}
+				return any;
+			}
+			any = true;
+			ByteBuffer bytes = _bytes;
+			int pos = bytes.position();
+			int lim = bytes.limit();
+			char[] line = _line;
+			int len = _lineLen;
+			byte b = 0;
+			while (pos < lim) {
+				b = bytes.get(pos);
+				if ((b == '\n') || (b == '\r')) {
+					break;
+				}
+				if (len == line.length) {
+					char[] tmp = new char[2 * len];
+					System.arraycopy(line, 0, tmp, 0, len);
+					line = tmp;
+				}
+				line[len++] = (char) (b & 0xFF);
+				pos++;
+			}
+			_line = line;
+			_lineLen = len;
+			if (pos < lim) {
+				// Consumes the terminator, handling '\r\n' as a single one
+				bytes.position(pos + 1);
+				if ((b == '\r') && hasMappedBytes()
+						&& (_bytes.get(_bytes.position()) == '\n')) {
+					_bytes.position(_bytes.position() + 1);
+				}
+				tokenize();
+				return true;
+			}
+			bytes.position(pos);
+		}
+	}
+
+	/**
+	 * Maps the next region of the file once the current one is consumed.
+	 * 
+	 * @return <code>false</code> if the end of the file has been reached
+	 */
+	private boolean hasMappedBytes() throws IOException {
+		if ((_bytes != null) && _bytes.hasRemaining()) {
+			return true;
+		}
+		long size = _channel.size();
+		if (_channelPos >= size) {
+			return false;
+		}
+		long length = Math.min(MAPPING_SIZE, size - _channelPos);
+		_bytes = _channel.map(FileChannel.MapMode.READ_ONLY, _channelPos, length);
+		_channelPos += length;
+		return true;
+	}
+
+	private void tokenize() {
+		int i = 0;
+		while (i < _lineLen) {
+			while ((i < _lineLen) && Character.isWhitespace(_line[i])) {
+				i++;
+			}
+			if (i < _lineLen) {
+				if (_numTokens == _tokStart.length) {
+					_tokStart = grow(_tokStart);
+					_tokEnd = grow(_tokEnd);
+				}
+				_tokStart[_numTokens] = i;
+				while ((i < _lineLen) && !Character.isWhitespace(_line[i])) {
+					i++;
+				}
+				_tokEnd[_numTokens] = i;
+				_numTokens++;
+			}
+		}
+	}
+
+	public char[] getLine() {
+		return _line;
+	}
+
+	public int getLineLength() {
+		return _lineLen;
+	}
+
+	/**
+	 * Returns the current line, stripped from leading and trailing
+	 * whitespaces.
+	 */
+	public String getTrimmedLine() {
+		if (_numTokens == 0) {
+			return "";
+		}
+		return new String(_line, _tokStart[0], _tokEnd[_numTokens - 1]
+				- _tokStart[0]);
+	}
+
+	/**
+	 * Tests whether the current line, stripped from leading whitespaces,
+	 * starts with a given prefix, without creating any <code>String</code>.
+	 */
+	public boolean lineStartsWith(String prefix) {
+		if (_numTokens == 0) {
+			return prefix.length() == 0;
+		}
+		return regionMatches(_tokStart[0], prefix);
+	}
+
+	/**
+	 * Tests whether the current line, stripped from leading and trailing
+	 * whitespaces, contains a given string, without creating any
+	 * <code>String</code>.
+	 */
+	public boolean lineContains(String s) {
+		if (_numTokens == 0) {
+			return s.length() == 0;
+		}
+		for (int i = _tokStart[0]; i + s.length() <= _tokEnd[_numTokens - 1]; i++) {
+			if (regionMatches(i, s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean regionMatches(int from, String s) {
+		int n = s.length();
+		if (from + n > _tokEnd[_numTokens - 1]) {
+			return false;
+		}
+		for (int k = 0; k < n; k++) {
+			if (_line[from + k] != s.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getNumTokens() {
+		return _numTokens;
+	}
+
+	public int getTokenStart(int k) {
+		return _tokStart[k];
+	}
+
+	public int getTokenEnd(int k) {
+		return _tokEnd[k];
+	}
+
+	public String getToken(int k) {
+		return new String(_line, _tokStart[k], _tokEnd[k] - _tokStart[k]);
+	}
+
+	public char getTokenFirstChar(int k) {
+		return _line[_tokStart[k]];
+	}
+
+	public char getTokenLastChar(int k) {
+		return _line[_tokEnd[k] - 1];
+	}
+
+	public boolean tokenContains(int k, char c) {
+		for (int i = _tokStart[k]; i < _tokEnd[k]; i++) {
+			if (_line[i] == c) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses the k-th token of the current line as a decimal integer, with the
+	 * same syntax as <code>Integer.parseInt</code>.
+	 *
+	 * @throws NumberFormatException
+	 *             If the token is not a valid integer
+	 */
+	public int getTokenAsInt(int k) throws NumberFormatException {
+		int i = _tokStart[k];
+		int end = _tokEnd[k];
+		boolean negative = false;
+		if ((_line[i] == '-') || (_line[i] == '+')) {
+			negative = (_line[i] == '-');
+			i++;
+		}
+		if ((i == end) || (end - i > 10)) {
+			throw new NumberFormatException("For input string: \"" + getToken(k) + "\"");
+		}
+		long result = 0;
+		for (; i < end; i++) {
+			int d = _line[i] - '0';
+			if ((d < 0) || (d > 9)) {
+				throw new NumberFormatException("For input string: \"" + getToken(k) + "\"");
+			}
+			result = result * 10 + d;
+		}
+		if (negative) {
+			result = -result;
+		}
+		if ((result < Integer.MIN_VALUE) || (result > Integer.MAX_VALUE)) {
+			throw new NumberFormatException("For input string: \"" + getToken(k) + "\"");
+		}
+		return (int) result;
+	}
+
+	public void close() throws IOException {
+		if (_channel != null) {
+			_channel.close();
+		} else {
+			_in.close();
+		}
+	}
+
+	static char[] append(char[] dest, int destLen, char[] src, int from, int to) {
+		int n = to - from;
+		if (destLen + n > dest.length) {
+			char[] tmp = new char[Math.max(2 * dest.length, destLen + n)];
+			System.arraycopy(dest, 0, tmp, 0, destLen);
+			dest = tmp;
+		}
+		System.arraycopy(src, from, dest, destLen, n);
+		return dest;
+	}
+
+	static int[] grow(int[] a) {
+		int[] tmp = new int[Math.max(16, 2 * a.length)];
+		System.arraycopy(a, 0, tmp, 0, a.length);
+		return tmp;
+	}
+}
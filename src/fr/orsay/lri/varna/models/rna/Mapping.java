@@ -17,12 +17,23 @@
  */
 package fr.orsay.lri.varna.models.rna;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
 import fr.orsay.lri.varna.exceptions.MappingException;
 
+/**
+ * A one-to-one partial mapping between the bases of two RNAs, given by their
+ * indices. The partners of the bases are stored in arrays indexed by base
+ * index, so that mapped elements are enumerated in increasing order.
+ */
 public class Mapping implements Serializable {
 
 	/**
@@ -30,59 +41,85 @@ public class Mapping implements Serializable {
 	 */
 	private static final long serialVersionUID = -3031358968555310380L;
 
+	/**
+	 * Serialized form, unchanged since couples were stored in hash tables.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("_mapping", Hashtable.class),
+			new ObjectStreamField("_invMapping", Hashtable.class) };
+
 	public static final int UNKNOWN = -1;
 
-	Hashtable<Integer, Integer> _mapping = new Hashtable<Integer, Integer>();
-	Hashtable<Integer, Integer> _invMapping = new Hashtable<Integer, Integer>();
+	private int[] _mapping = new int[0];
+	private int[] _invMapping = new int[0];
+	private int _numCouples = 0;
 
 	public Mapping() {
 
 	}
 
 	public void addCouple(int i, int j) throws MappingException {
-		if (_mapping.containsKey(i) || _invMapping.containsKey(j)) {
+		if ((i < 0) || (j < 0)) {
+			throw new MappingException("Mapping error: Negative base index ("
+					+ i + "," + j + ")");
+		}
+		if ((getPartner(i) != UNKNOWN) || (getAncestor(j) != UNKNOWN)) {
 			throw new MappingException(
 					MappingException.MULTIPLE_PARTNERS_DEFINITION_ATTEMPT);
 		}
+		_mapping = ensureCapacity(_mapping, i);
+		_invMapping = ensureCapacity(_invMapping, j);
+		_mapping[i] = j;
+		_invMapping[j] = i;
+		_numCouples++;
+	}
 
-		_mapping.put(new Integer(i), new Integer(j));
-		_invMapping.put(new Integer(j), new Integer(i));
+	private static int[] ensureCapacity(int[] partners, int i) {
+		if (i < partners.length) {
+			return partners;
+		}
+		int[] result = Arrays.copyOf(partners, Math.max(i + 1,
+				2 * partners.length));
+		Arrays.fill(result, partners.length, result.length, UNKNOWN);
+		return result;
 	}
 
 	public int getPartner(int i) {
-		if (!_mapping.containsKey(i))
+		if ((i < 0) || (i >= _mapping.length))
 			return UNKNOWN;
 		else
-			return _mapping.get(i);
+			return _mapping[i];
 	}
 
 	public int getAncestor(int j) {
-		if (!_invMapping.containsKey(j))
+		if ((j < 0) || (j >= _invMapping.length))
 			return UNKNOWN;
 		else
-			return _invMapping.get(j);
+			return _invMapping[j];
 	}
 
+	/**
+	 * Returns the mapped elements of the source, in increasing order.
+	 */
 	public int[] getSourceElems() {
-		int[] elems = new int[_mapping.size()];
-		Enumeration<Integer> en = _mapping.keys();
-		int i = 0;
-		while (en.hasMoreElements()) {
-			int a = en.nextElement();
-			elems[i] = a;
-			i++;
-		}
-		return elems;
+		return getMappedElems(_mapping);
 	}
 
+	/**
+	 * Returns the mapped elements of the target, in increasing order.
+	 */
 	public int[] getTargetElems() {
-		int[] elems = new int[_invMapping.size()];
-		Enumeration<Integer> en = _invMapping.keys();
-		int i = 0;
-		while (en.hasMoreElements()) {
-			int a = en.nextElement();
-			elems[i] = a;
-			i++;
+		return getMappedElems(_invMapping);
+	}
+
+	private int[] getMappedElems(int[] partners) {
+		int[] elems = new int[_numCouples];
+		int k = 0;
+		for (int i = 0; i < partners.length; i++) {
+			if (partners[i] != UNKNOWN) {
+				elems[k] = i;
+				k++;
+			}
 		}
 		return elems;
 	}
@@ -149,13 +186,53 @@ public class Mapping implements Serializable {
 	}
 
 	public String toString() {
-		String tmp = "";
-		Enumeration<Integer> en = _mapping.keys();
-		while (en.hasMoreElements()) {
-			Integer i = en.nextElement();
-			Integer j = _mapping.get(i);
-			tmp += "(" + i + "," + j + ") ";
+		StringBuilder tmp = new StringBuilder();
+		for (int i = 0; i < _mapping.length; i++) {
+			if (_mapping[i] != UNKNOWN) {
+				tmp.append("(" + i + "," + _mapping[i] + ") ");
+			}
+		}
+		return tmp.toString();
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		Hashtable<Integer, Integer> mapping = new Hashtable<Integer, Integer>();
+		Hashtable<Integer, Integer> invMapping = new Hashtable<Integer, Integer>();
+		for (int i = 0; i < _mapping.length; i++) {
+			if (_mapping[i] != UNKNOWN) {
+				mapping.put(i, _mapping[i]);
+				invMapping.put(_mapping[i], i);
+			}
+		}
+		ObjectOutputStream.PutField f = out.putFields();
+		f.put("_mapping", mapping);
+		f.put("_invMapping", invMapping);
+		out.writeFields();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream.GetField f = in.readFields();
+		Object o = f.get("_mapping", null);
+		_mapping = new int[0];
+		_invMapping = new int[0];
+		_numCouples = 0;
+		if (o != null) {
+			if (!(o instanceof Hashtable)) {
+				throw new InvalidObjectException("Unexpected mapping: "
+						+ o.getClass().getName());
+			}
+			@SuppressWarnings("unchecked")
+			Hashtable<Integer, Integer> mapping = (Hashtable<Integer, Integer>) o;
+			Enumeration<Integer> en = mapping.keys();
+			while (en.hasMoreElements()) {
+				Integer i = en.nextElement();
+				try {
+					addCouple(i, mapping.get(i));
+				} catch (MappingException e) {
+					throw new IOException(e.getMessage());
+				}
+			}
 		}
-		return tmp;
 	}
 }
@@ -17,7 +17,12 @@
  */
 package fr.orsay.lri.varna.models.rna;
 
+import java.awt.Color;
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 
@@ -29,19 +34,28 @@ import java.io.Serializable;
  */
 public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 
-	private ModeleStyleBP _styleBP;
-	
-	private boolean _checked;
-	
-	private boolean intervDroite = false;
-	
-	private boolean intervGauche = false;
-	
-	
+	private static final long serialVersionUID = 8900755591699708454L;
+
 	/**
-	 * Numero du brin auquel la base appartient.
-	 */	
-	private int _numStrand = -1;
+	 * Serialized form, unchanged since coordinates were stored as VARNAPoint
+	 * objects and values and motif layout flags were stored in the bases, so
+	 * that previously saved sessions can still be read.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("_styleBP", ModeleStyleBP.class),
+			new ObjectStreamField("_checked", Boolean.TYPE),
+			new ObjectStreamField("intervDroite", Boolean.TYPE),
+			new ObjectStreamField("intervGauche", Boolean.TYPE),
+			new ObjectStreamField("_numStrand", Integer.TYPE),
+			new ObjectStreamField("_styleBase", ModeleStyleBase.class),
+			new ObjectStreamField("_colorie", Boolean.class),
+			new ObjectStreamField("_coords", VARNAPoint.class),
+			new ObjectStreamField("_center", VARNAPoint.class),
+			new ObjectStreamField("_elementStructure", Integer.TYPE),
+			new ObjectStreamField("_value", Double.TYPE),
+			new ObjectStreamField("_realIndex", Integer.TYPE) };
+
+	private ModeleStyleBP _styleBP;
 
 	/**
 	 * The base style.
@@ -55,13 +69,17 @@ public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 
 	/**
 	 * The coordinate representation of this InterfaceBase on the final graphic.
+	 * Stored as primitive fields, as a base would otherwise hold two extra
+	 * objects.
 	 */
-	protected VARNAPoint _coords;
+	private double _x;
+	private double _y;
 
 	/**
 	 * The nearest loop center of this InterfaceBase.
 	 */
-	protected VARNAPoint _center;
+	private double _centerX;
+	private double _centerY;
 
 	/**
 	 * The structure information associated with this InterfaceBase. It value
@@ -74,9 +92,22 @@ public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 	 */
 	protected int _elementStructure;
 
-	protected double _value;
-	
 	protected int _realIndex = -1;
+
+	/**
+	 * Counters of the changes made to the bases of an RNA, shared by the RNA
+	 * and its bases, so that the indices of the RNA can tell when they must
+	 * be rebuilt.
+	 */
+	static final class Versions {
+		int _numbering = 0;
+		int _structure = 0;
+	}
+
+	/**
+	 * Counters of the RNA holding this base, or null if it belongs to none
+	 */
+	transient private Versions _versions = null;
 	
 
 	/**
@@ -87,7 +118,9 @@ public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 	public abstract String getContent();
 
 	/**
-	 * Gets this InterfaceBase style.
+	 * Gets this InterfaceBase style. The style is shared with other bases, and
+	 * cannot be modified: use setStyleBase or the setBase*Color methods to
+	 * restyle this base.
 	 * 
 	 * @return this InterfaceBase style.
 	 */
@@ -95,17 +128,6 @@ public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 		return _styleBase;
 	}
 
-	public double getValue()
-	{
-		return _value;
-	}
-
-	public void setValue(double d)
-	{
-		_value = d;
-	}
-	
-	
 	/**
 	 * Sets this InterfaceBase style.
 	 * 
@@ -113,7 +135,31 @@ public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 	 *            - This InterfaceBase new style.
 	 */
 	public void setStyleBase(ModeleStyleBase base) {
-		_styleBase = new ModeleStyleBase(base);
+		_styleBase = ModeleStyleBase.intern(base);
+	}
+
+	public void setBaseInnerColor(Color c) {
+		ModeleStyleBase msb = _styleBase.clone();
+		msb.set_base_inner_color(c);
+		setStyleBase(msb);
+	}
+
+	public void setBaseOutlineColor(Color c) {
+		ModeleStyleBase msb = _styleBase.clone();
+		msb.set_base_outline_color(c);
+		setStyleBase(msb);
+	}
+
+	public void setBaseNameColor(Color c) {
+		ModeleStyleBase msb = _styleBase.clone();
+		msb.set_base_name_color(c);
+		setStyleBase(msb);
+	}
+
+	public void setBaseNumberColor(Color c) {
+		ModeleStyleBase msb = _styleBase.clone();
+		msb.set_base_number_color(c);
+		setStyleBase(msb);
 	}
 
 	/**
@@ -167,7 +213,17 @@ public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 	public void setElementStructure(int structure, ModeleStyleBP type) {
 		_elementStructure = structure;
 		_styleBP = type;
+		structureChanged();
+	}
 
+	/**
+	 * Tells the RNA holding this base, if any, that the partner of the base
+	 * changed.
+	 */
+	void structureChanged() {
+		if (_versions != null) {
+			_versions._structure++;
+		}
 	}
 
 	/**
@@ -195,58 +251,102 @@ public abstract class ModeleBase implements Serializable, java.lang.Comparable {
 
 	public void setBaseNumber(int bn) {
 		_realIndex = bn;
+		if (_versions != null) {
+			_versions._numbering++;
+		}
+	}
+
+	/**
+	 * Attaches this base to the change counters of the RNA holding it.
+	 */
+	void setVersions(Versions versions) {
+		_versions = versions;
 	}
 	
 	public Point2D.Double getCoords() {
-		return new Point2D.Double(_coords.x,_coords.y);
+		return new Point2D.Double(_x,_y);
 	}
 
 	public void setCoords(Point2D.Double coords) {
-		this._coords.x = coords.x;
-		this._coords.y = coords.y;
+		setCoords(coords.x, coords.y);
 	}
 
-	public Point2D.Double getCenter() {
-		return new Point2D.Double(_center.x,_center.y);
+	public void setCoords(double x, double y) {
+		_x = x;
+		_y = y;
 	}
 
-	public void setCenter(Point2D.Double center) {
-		this._center.x = center.x;
-		this._center.y = center.y;
+	/**
+	 * Gets the abscissa of this base, without creating any Point2D.
+	 */
+	public double getX() {
+		return _x;
 	}
-	
-	public int getNumStrand(){
-		return (this._numStrand);
+
+	/**
+	 * Gets the ordinate of this base, without creating any Point2D.
+	 */
+	public double getY() {
+		return _y;
 	}
-	
-	public void setNumStrand(int a){
-		this._numStrand=a;
+
+	public Point2D.Double getCenter() {
+		return new Point2D.Double(_centerX,_centerY);
 	}
-	
-	public boolean getChecker (){
-		return (this._checked);
+
+	public double getCenterX() {
+		return _centerX;
 	}
-	
-	public void setChecker(boolean bool){
-		this._checked=bool;
+
+	public double getCenterY() {
+		return _centerY;
 	}
-	
-	public boolean getIntervGauche(){
-		return (this.intervGauche);
+
+	public void setCenter(Point2D.Double center) {
+		setCenter(center.x, center.y);
 	}
-	
-	public void setIntervGauche(boolean bool){
-		this.intervGauche=bool;
+
+	public void setCenter(double x, double y) {
+		_centerX = x;
+		_centerY = y;
 	}
 	
-	public boolean getIntervDroite(){
-		return (this.intervDroite);
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField f = out.putFields();
+		f.put("_styleBP", _styleBP);
+		f.put("_checked", false);
+		f.put("intervDroite", false);
+		f.put("intervGauche", false);
+		f.put("_numStrand", -1);
+		f.put("_styleBase", _styleBase);
+		f.put("_colorie", _colorie);
+		f.put("_coords", new VARNAPoint(_x, _y));
+		f.put("_center", new VARNAPoint(_centerX, _centerY));
+		f.put("_elementStructure", _elementStructure);
+		f.put("_value", RNA.getSerializedBaseValue(this));
+		f.put("_realIndex", _realIndex);
+		out.writeFields();
 	}
-	
-	public void setIntervDroite(boolean bool){
-		this.intervDroite=bool;
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream.GetField f = in.readFields();
+		_styleBP = (ModeleStyleBP) f.get("_styleBP", null);
+		_styleBase = (ModeleStyleBase) f.get("_styleBase", null);
+		_colorie = (Boolean) f.get("_colorie", null);
+		VARNAPoint p = (VARNAPoint) f.get("_coords", null);
+		if (p != null) {
+			setCoords(p.x, p.y);
+		}
+		p = (VARNAPoint) f.get("_center", null);
+		if (p != null) {
+			setCenter(p.x, p.y);
+		}
+		_elementStructure = f.get("_elementStructure", -1);
+		RNA.putDeserializedBaseValue(this, f.get("_value", 0.0));
+		_realIndex = f.get("_realIndex", -1);
 	}
-	
+
 	public int compareTo(Object other) { 
 	    int nombre1 = ((ModeleBase) other).getIndex(); 
 	    int nombre2 = this.getIndex(); 
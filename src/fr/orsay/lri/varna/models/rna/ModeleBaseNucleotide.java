@@ -51,7 +51,7 @@ public class ModeleBaseNucleotide extends ModeleBase {
 	 *            The first character of the nitrogenous base
 	 */
 	public ModeleBaseNucleotide(char c, int index) {
-		this(c, new ModeleStyleBase(), index);
+		this(c, ModeleStyleBase.getDefault(), index);
 	}
 
 	/**
@@ -61,7 +61,7 @@ public class ModeleBaseNucleotide extends ModeleBase {
 	 *            The first character of the nitrogenous base
 	 */
 	public ModeleBaseNucleotide(char c, int index, int baseNumber) {
-		this(c, new ModeleStyleBase(), index);
+		this(c, ModeleStyleBase.getDefault(), index);
 		_realIndex = baseNumber;
 	}
 	
@@ -98,7 +98,7 @@ public class ModeleBaseNucleotide extends ModeleBase {
 	 */
 	public ModeleBaseNucleotide(Point2D.Double coord, int index) {
 		this(new Point2D.Double(coord.getX(), coord.getY()),
-				new Point2D.Double(), true, ' ', new ModeleStyleBase(), -1,
+				new Point2D.Double(), true, ' ', ModeleStyleBase.getDefault(), -1,
 				index);
 	}
 
@@ -121,19 +121,18 @@ public class ModeleBaseNucleotide extends ModeleBase {
 			int index) {
 		_colorie = colorie;
 		_c = label;
-		_styleBase = mb;
-		_coords = new VARNAPoint(coords);
-		_center = new VARNAPoint(center);
+		_styleBase = ModeleStyleBase.intern(mb);
+		setCoords(coords);
+		setCenter(center);
 		_elementStructure = elementStruct;
 		_index = index;
 		_realIndex = index + 1;
-		_value = 0.0;
 	}
 
 	public ModeleStyleBase getStyleBase() {
 		if (_colorie)
 			return _styleBase;
-		return new ModeleStyleBase();
+		return ModeleStyleBase.getDefault();
 	}
 
 	public Character get_c() {
@@ -167,7 +166,7 @@ public class ModeleBaseNucleotide extends ModeleBase {
 	
 	public String toString()
 	{
-		return ""+this._realIndex+" ("+_index+") (x,y):"+this._coords +" C:"+_center;
+		return ""+this._realIndex+" ("+_index+") (x,y):("+getX()+","+getY()+") C:("+getCenter().x+","+getCenter().y+")";
 	}
 
 }
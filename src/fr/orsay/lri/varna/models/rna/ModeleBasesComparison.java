@@ -123,7 +123,7 @@ public class ModeleBasesComparison extends ModeleBase {
 	public ModeleBasesComparison(char base1, char base2, Point2D coords,
 			int index) {
 		this(new Point2D.Double(coords.getX(), coords.getY()), base1, base2,
-				true, new ModeleStyleBase(), -1, index);
+				true, ModeleStyleBase.getDefault(), -1, index);
 	}
 
 	/**
@@ -136,8 +136,8 @@ public class ModeleBasesComparison extends ModeleBase {
 	 */
 	public ModeleBasesComparison(char base1, char base2, int elementStructure,
 			int index) {
-		this(new Point2D.Double(), base1, base2, true, new ModeleStyleBase(),
-				elementStructure, index);
+		this(new Point2D.Double(), base1, base2, true, ModeleStyleBase
+				.getDefault(), elementStructure, index);
 	}
 
 	/**
@@ -163,8 +163,8 @@ public class ModeleBasesComparison extends ModeleBase {
 		_colorie = colorie;
 		_base1 = base1;
 		_base2 = base2;
-		_styleBase = mb;
-		_coords = new VARNAPoint(coords.getX(), coords.getY());
+		_styleBase = ModeleStyleBase.intern(mb);
+		setCoords(coords.getX(), coords.getY());
 		_elementStructure = elementStructure;
 	}
 
@@ -184,7 +184,7 @@ public class ModeleBasesComparison extends ModeleBase {
 	public ModeleStyleBase getStyleBase() {
 		if (_colorie)
 			return _styleBase;
-		return new ModeleStyleBase();
+		return ModeleStyleBase.getDefault();
 	}
 
 	/**
@@ -281,6 +281,7 @@ public class ModeleBasesComparison extends ModeleBase {
 	 */
 	public void setElementStructure(int structure) {
 		_elementStructure = structure;
+		structureChanged();
 	}
 
 	/**
@@ -304,13 +305,13 @@ public class ModeleBasesComparison extends ModeleBase {
 	 */
 	public void set_appartenance(int _appartenance) {
 		if (_appartenance == 0) {
-			this.getStyleBase().set_base_inner_color(BOTH_RNA_COLOR);
+			setBaseInnerColor(BOTH_RNA_COLOR);
 		} else if (_appartenance == 1) {
-			this.getStyleBase().set_base_inner_color(FIRST_RNA_COLOR);
+			setBaseInnerColor(FIRST_RNA_COLOR);
 		} else if (_appartenance == 2) {
-			this.getStyleBase().set_base_inner_color(SECOND_RNA_COLOR);
+			setBaseInnerColor(SECOND_RNA_COLOR);
 		} else {
-			this.getStyleBase().set_base_inner_color(DEFAULT_RNA_COLOR);
+			setBaseInnerColor(DEFAULT_RNA_COLOR);
 		}
 		this._appartenance = _appartenance;
 	}
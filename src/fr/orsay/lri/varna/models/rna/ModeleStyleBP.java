@@ -18,6 +18,8 @@
 package fr.orsay.lri.varna.models.rna;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Random;
@@ -91,8 +93,13 @@ public class ModeleStyleBP implements Serializable {
 	}
 
 	
+	/**
+	 * Creates a style whose partners are placeholder bases, as used for
+	 * unpaired bases. The placeholders are only created when first requested,
+	 * since most of them never are.
+	 */
 	public ModeleStyleBP() {
-		this(new ModeleBaseNucleotide(-1), new ModeleBaseNucleotide(-1));
+		this(null, null);
 	}
 
 	public ModeleStyleBP(ModeleBase part5, ModeleBase part3) {
@@ -127,8 +134,8 @@ public class ModeleStyleBP implements Serializable {
 	}
 
 	public boolean isCanonicalGC() {
-		String si = _partner5.getContent();
-		String sj = _partner3.getContent();
+		String si = getPartner5().getContent();
+		String sj = getPartner3().getContent();
 		if ((si.length() >= 1) && (sj.length() >= 1)) {
 			char ci = si.toUpperCase().charAt(0);
 			char cj = sj.toUpperCase().charAt(0);
@@ -140,8 +147,8 @@ public class ModeleStyleBP implements Serializable {
 	}
 
 	public boolean isCanonicalAU() {
-		String si = _partner5.getContent();
-		String sj = _partner3.getContent();
+		String si = getPartner5().getContent();
+		String sj = getPartner3().getContent();
 		if ((si.length() >= 1) && (sj.length() >= 1)) {
 			char ci = si.toUpperCase().charAt(0);
 			char cj = sj.toUpperCase().charAt(0);
@@ -153,8 +160,8 @@ public class ModeleStyleBP implements Serializable {
 	}
 
 	public boolean isWobbleUG() {
-		String si = _partner5.getContent();
-		String sj = _partner3.getContent();
+		String si = getPartner5().getContent();
+		String sj = getPartner3().getContent();
 		if ((si.length() >= 1) && (sj.length() >= 1)) {
 			char ci = si.toUpperCase().charAt(0);
 			char cj = sj.toUpperCase().charAt(0);
@@ -192,16 +199,22 @@ public class ModeleStyleBP implements Serializable {
 	
 	public ModeleBase getPartner(ModeleBase mb) {
 		if (mb == _partner3)
-			return _partner5;
+			return getPartner5();
 		else
-			return _partner3;
+			return getPartner3();
 	}
 
 	public ModeleBase getPartner5() {
+		if (_partner5 == null) {
+			_partner5 = new ModeleBaseNucleotide(-1);
+		}
 		return _partner5;
 	}
 
 	public ModeleBase getPartner3() {
+		if (_partner3 == null) {
+			_partner3 = new ModeleBaseNucleotide(-1);
+		}
 		return _partner3;
 	}
 
@@ -213,6 +226,55 @@ public class ModeleStyleBP implements Serializable {
 		_partner3 = mb;
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// Placeholders are saved, as former versions expect them
+		getPartner5();
+		getPartner3();
+		out.defaultWriteObject();
+	}
+
+	/**
+	 * Returns the partner on the 5' side, or null if it is a placeholder not
+	 * created yet. Unlike getPartner5, never creates the placeholder.
+	 */
+	ModeleBase getPartner5OrNull() {
+		return _partner5;
+	}
+
+	/**
+	 * Returns the partner on the 3' side, or null if it is a placeholder not
+	 * created yet. Unlike getPartner3, never creates the placeholder.
+	 */
+	ModeleBase getPartner3OrNull() {
+		return _partner3;
+	}
+
+	/**
+	 * Returns a copy of this base-pair style, whose partners are left to
+	 * placeholders.
+	 */
+	ModeleStyleBP copyStyle() {
+		ModeleStyleBP result = new ModeleStyleBP(null, null, _edge5, _edge3,
+				_stericity);
+		result._isCustomColored = _isCustomColored;
+		result._color = _color;
+		result._thickness = _thickness;
+		result._bent = _bent;
+		return result;
+	}
+
+	/**
+	 * Tests whether two base-pair styles are drawn alike, regardless of their
+	 * partners.
+	 */
+	boolean hasSameStyle(ModeleStyleBP bp) {
+		return (_isCustomColored == bp._isCustomColored)
+				&& ((_color == null) ? (bp._color == null) : _color
+						.equals(bp._color)) && (_edge5 == bp._edge5)
+				&& (_edge3 == bp._edge3) && (_stericity == bp._stericity)
+				&& (_thickness == bp._thickness) && (_bent == bp._bent);
+	}
+
 	public void setCustomColor(Color c) {
 		_isCustomColored = true;
 		_color = c;
@@ -343,11 +405,11 @@ public class ModeleStyleBP implements Serializable {
 
 	public String toString() {
 		String result = "";
-		result += "(" + _partner5.getIndex() + "," + _partner3.getIndex() + ")";
-		result += " [" + _partner5.getElementStructure() + ","
-				+ _partner3.getElementStructure() + "]\n";
-		result += "  5':" + _partner5 + "\n";
-		result += "  3':" + _partner3;
+		result += "(" + getPartner5().getIndex() + "," + getPartner3().getIndex() + ")";
+		result += " [" + getPartner5().getElementStructure() + ","
+				+ getPartner3().getElementStructure() + "]\n";
+		result += "  5':" + getPartner5() + "\n";
+		result += "  3':" + getPartner3();
 		return result;
 	}
 	
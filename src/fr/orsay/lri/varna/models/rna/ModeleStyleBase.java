@@ -20,7 +20,9 @@ package fr.orsay.lri.varna.models.rna;
 import java.awt.Color;
 import java.awt.Font;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.WeakHashMap;
 
 
 import fr.orsay.lri.varna.exceptions.ExceptionModeleStyleBaseSyntaxError;
@@ -30,6 +32,11 @@ import fr.orsay.lri.varna.models.VARNAConfig;
 /**
  * The display Style of a rna base with the base name font, the ouline,
  * innerline, number and name color
+ * <p>
+ * Bases share their styles: styles are interned, so that all the bases drawn
+ * with the same colors refer to a single shared instance. A shared style
+ * cannot be modified, and restyling a base consists in assigning it a
+ * modified copy of its style, as obtained by {@link #clone()}.
  * 
  * @author darty
  * 
@@ -41,11 +48,109 @@ public class ModeleStyleBase implements Cloneable, Serializable {
 	 */
 	private static final long serialVersionUID = -4331494086323517208L;
 
+	/**
+	 * Interned styles. Entries are dropped once no base refers to them.
+	 */
+	private static final WeakHashMap<ModeleStyleBase, WeakReference<ModeleStyleBase>> _sharedStyles = new WeakHashMap<ModeleStyleBase, WeakReference<ModeleStyleBase>>();
+
+	private static final ModeleStyleBase DEFAULT_STYLE = share(new ModeleStyleBase());
+
 	private Color _base_outline_color, _base_inner_color, _base_number_color,
 			_base_name_color;
 
 	private boolean _selected;
 
+	private transient boolean _shared = false;
+
+	/**
+	 * Returns the shared instance of a style, that is the interned style
+	 * having the same colors.
+	 * 
+	 * @param msb
+	 *            - A style, which is left unchanged and may still be modified
+	 *            if it was not shared
+	 * @return The shared style equal to <code>msb</code>
+	 */
+	public static ModeleStyleBase intern(ModeleStyleBase msb) {
+		if (msb._shared) {
+			return msb;
+		}
+		return share(msb.clone());
+	}
+
+	private static synchronized ModeleStyleBase share(ModeleStyleBase msb) {
+		WeakReference<ModeleStyleBase> ref = _sharedStyles.get(msb);
+		if (ref != null) {
+			ModeleStyleBase result = ref.get();
+			if (result != null) {
+				return result;
+			}
+		}
+		msb._shared = true;
+		_sharedStyles.put(msb, new WeakReference<ModeleStyleBase>(msb));
+		return msb;
+	}
+
+	/**
+	 * Returns the shared style with default colors.
+	 */
+	public static ModeleStyleBase getDefault() {
+		return DEFAULT_STYLE;
+	}
+
+	/**
+	 * Tests whether this style is shared, in which case it cannot be modified.
+	 */
+	public boolean isShared() {
+		return _shared;
+	}
+
+	private void checkNotShared() {
+		if (_shared) {
+			throw new UnsupportedOperationException(
+					"Shared base styles cannot be modified, restyle the base with a copy instead");
+		}
+	}
+
+	private Object readResolve() {
+		return share(this);
+	}
+
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ModeleStyleBase)) {
+			return false;
+		}
+		ModeleStyleBase msb = (ModeleStyleBase) o;
+		return sameColor(_base_outline_color, msb._base_outline_color)
+				&& sameColor(_base_inner_color, msb._base_inner_color)
+				&& sameColor(_base_number_color, msb._base_number_color)
+				&& sameColor(_base_name_color, msb._base_name_color)
+				&& (_selected == msb._selected);
+	}
+
+	private static boolean sameColor(Color c1, Color c2) {
+		return (c1 == null) ? (c2 == null) : c1.equals(c2);
+	}
+
+	public int hashCode() {
+		int result = _selected ? 1 : 0;
+		result = 31 * result + colorHash(_base_outline_color);
+		result = 31 * result + colorHash(_base_inner_color);
+		result = 31 * result + colorHash(_base_number_color);
+		result = 31 * result + colorHash(_base_name_color);
+		return result;
+	}
+
+	private static int colorHash(Color c) {
+		return (c == null) ? 0 : c.hashCode();
+	}
+
+	/**
+	 * Returns a modifiable copy of this style.
+	 */
 	public ModeleStyleBase clone()
 	{
 		ModeleStyleBase result = new ModeleStyleBase();
@@ -116,6 +221,7 @@ public class ModeleStyleBase implements Cloneable, Serializable {
 	}
 
 	public void set_base_outline_color(Color _base_outline_color) {
+		checkNotShared();
 		this._base_outline_color = _base_outline_color;
 	}
 
@@ -124,6 +230,7 @@ public class ModeleStyleBase implements Cloneable, Serializable {
 	}
 
 	public void set_base_inner_color(Color _base_inner_color) {
+		checkNotShared();
 		this._base_inner_color = _base_inner_color;
 	}
 
@@ -132,6 +239,7 @@ public class ModeleStyleBase implements Cloneable, Serializable {
 	}
 
 	public void set_base_number_color(Color _base_numbers_color) {
+		checkNotShared();
 		this._base_number_color = _base_numbers_color;
 	}
 
@@ -140,6 +248,7 @@ public class ModeleStyleBase implements Cloneable, Serializable {
 	}
 
 	public void set_base_name_color(Color _base_name_color) {
+		checkNotShared();
 		this._base_name_color = _base_name_color;
 	}
 
@@ -162,6 +271,7 @@ public class ModeleStyleBase implements Cloneable, Serializable {
 
 	public void assignParameters(String parametersValue)
 			throws ExceptionModeleStyleBaseSyntaxError, ExceptionParameterError {
+		checkNotShared();
 		if (parametersValue.equals(""))
 			return;
 
@@ -19,6 +19,7 @@ package fr.orsay.lri.varna.models.rna;
 import java.awt.geom.Point2D;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.lang.Math;
@@ -35,6 +36,15 @@ public class Motif implements Serializable{
 	private double _decalage;
 	private RNA _rna;
 	
+	/**
+	 * Layout state of the bases, indexed by base index. These tables are only
+	 * allocated once the layout starts using them.
+	 */
+	private int[] _numStrands;
+	private boolean[] _checked;
+	private boolean[] _intervDroite;
+	private boolean[] _intervGauche;
+	
 	
 	public Motif(RNA rna, ArrayList<ModeleBase> listeBases){		
 		this._listeBasesM = listeBases;		
@@ -42,6 +52,56 @@ public class Motif implements Serializable{
 		
 	}
 	
+	private void allocateBaseTables() {
+		if (_numStrands == null) {
+			int n = _listeBasesM.size();
+			_numStrands = new int[n];
+			Arrays.fill(_numStrands, -1);
+			_checked = new boolean[n];
+			_intervDroite = new boolean[n];
+			_intervGauche = new boolean[n];
+		}
+	}
+	
+	/**
+	 * Numero du brin auquel la base appartient.
+	 */
+	private int getNumStrand(ModeleBase mb) {
+		return (_numStrands == null) ? -1 : _numStrands[mb.getIndex()];
+	}
+	
+	private void setNumStrand(ModeleBase mb, int a) {
+		allocateBaseTables();
+		_numStrands[mb.getIndex()] = a;
+	}
+	
+	private boolean isChecked(ModeleBase mb) {
+		return (_checked != null) && _checked[mb.getIndex()];
+	}
+	
+	private void setChecked(ModeleBase mb, boolean bool) {
+		allocateBaseTables();
+		_checked[mb.getIndex()] = bool;
+	}
+	
+	private boolean getIntervDroite(ModeleBase mb) {
+		return (_intervDroite != null) && _intervDroite[mb.getIndex()];
+	}
+	
+	private void setIntervDroite(ModeleBase mb, boolean bool) {
+		allocateBaseTables();
+		_intervDroite[mb.getIndex()] = bool;
+	}
+	
+	private boolean getIntervGauche(ModeleBase mb) {
+		return (_intervGauche != null) && _intervGauche[mb.getIndex()];
+	}
+	
+	private void setIntervGauche(ModeleBase mb, boolean bool) {
+		allocateBaseTables();
+		_intervGauche[mb.getIndex()] = bool;
+	}
+	
 	
 	
 	/**
@@ -65,7 +125,7 @@ public class Motif implements Serializable{
 				ModeleStrand strand = new ModeleStrand();
 				for(int j=indice_min; j<=indice_max;j++){
 					strand.addBase(getListBasesMotif().get(j));
-					getListBasesMotif().get(j).setNumStrand(k);
+					setNumStrand(getListBasesMotif().get(j), k);
 					
 					if(getListStrand().sizeStruct()%2==0 || getListStrand().isEmpty()){
 						orientation=true;
@@ -86,7 +146,7 @@ public class Motif implements Serializable{
 		boolean orientation = false;
 		for(int j=indice_min;j<getListBasesMotif().size();j++){
 			strand.addBase(getListBasesMotif().get(j));
-			getListBasesMotif().get(j).setNumStrand(k);
+			setNumStrand(getListBasesMotif().get(j), k);
 			if(getListStrand().sizeStruct()%2==0 || getListStrand().isEmpty()){
 				orientation=true;
 			}
@@ -101,7 +161,7 @@ public class Motif implements Serializable{
 	public void decalerBase(ModeleStrand strand, double decalage){
 		for (int j = 0; j < strand.sizeStrand(); j++ ){
 			int indice = strand.getMB(j).getIndex();
-			if(!strand.getMB(j).getChecker()){
+			if(!isChecked(strand.getMB(j))){
 				getListBasesMotif().get(indice).setCoords(
 						new Point2D.Double(getListBasesMotif().get(indice).getCoords().x,
 								getListBasesMotif().get(indice).getCoords().y+decalage));
@@ -111,14 +171,14 @@ public class Motif implements Serializable{
 	
 	public void initChecker(ModeleStrand strand){
 		for (int j = 0; j < strand.sizeStrand(); j++ ){
-			strand.getMB(j).setChecker(false);
+			setChecked(strand.getMB(j), false);
 		}			
 	}
 	
 	public void initCheckerAll(){
 		for (int i = 0; i < getListStrand().sizeStruct(); i++ ){
 			for (int j = 0; j < getListStrand().getStrand(i).sizeStrand(); j++ ){
-				getListStrand().getStrand(i).getMB(j).setChecker(false);
+				setChecked(getListStrand().getStrand(i).getMB(j), false);
 			}		
 		}
 	}
@@ -135,8 +195,8 @@ public class Motif implements Serializable{
 	public void initInterv(){
 		for (int i = 0; i < getListStrand().sizeStruct(); i++ ){
 			for (int j = 0; j < getListStrand().getStrand(i).sizeStrand(); j++ ){
-				getListStrand().getStrand(i).getMB(j).setIntervDroite(false);
-				getListStrand().getStrand(i).getMB(j).setIntervGauche(false);
+				setIntervDroite(getListStrand().getStrand(i).getMB(j), false);
+				setIntervGauche(getListStrand().getStrand(i).getMB(j), false);
 			}
 		}
 	}
@@ -193,13 +253,13 @@ public class Motif implements Serializable{
 				ModeleBase mb3=getListBasesMotif().get(indice).getStyleBP().getPartner3();
 				ModeleBase mb5=getListBasesMotif().get(indice).getStyleBP().getPartner5();
 				//On positionne la première base du brin
-				if(!getListBasesMotif().get(indice).getChecker() && j==0){
+				if(!isChecked(getListBasesMotif().get(indice)) && j==0){
 					getListBasesMotif().get(indice).setCoords(
 							new Point2D.Double(d,0));
 				}
 				
 				//On positionne les autres bases du brin, les unes par rapport aux autres
-				if(!getListBasesMotif().get(indice).getChecker() && j!=0){
+				if(!isChecked(getListBasesMotif().get(indice)) && j!=0){
 					dist3=Math.abs(part3Temp-part3);
 					dist5=Math.abs(part5Temp-part5);
 					
@@ -214,8 +274,8 @@ public class Motif implements Serializable{
 				
 				//Dans un meme brin, si la paire de base a ete traitee 
 				//On reajuste la structure pour eviter d'avoir des angles non droits
-				if(getListBasesMotif().get(indice).getChecker() && 
-						!getListBasesMotif().get(indice-1).getChecker()){
+				if(isChecked(getListBasesMotif().get(indice)) && 
+						!isChecked(getListBasesMotif().get(indice-1))){
 					int indiceP = getListStrand().getStrand(i).getMB(j-1).getIndex();	
 					int indicePP=getListStrand().getStrand(i).getMB(j-2).getIndex();
 					
@@ -228,7 +288,7 @@ public class Motif implements Serializable{
 				//On place le partenaire 3' en face de son partenaire 5'
 				if((getListStrand().getStrand(i).existInStrand(part3)&&getListStrand().getStrand(i).existInStrand(part5))&&
 						part3!=part5 && getListBasesMotif().get(indice).getStyleBP().isCanonical()
-					&& !mb3.getChecker()){
+					&& !isChecked(mb3)){
 					getListBasesMotif().get(part3).setCoords(new Point2D.Double
 							(getListBasesMotif().get(part5).getCoords().x +
 									_spaceBetweenBases * 50,getListBasesMotif().get(part5).getCoords().y));
@@ -242,14 +302,14 @@ public class Motif implements Serializable{
 							getListBasesMotif().get(k).setCoords(
 									new Point2D.Double(getListBasesMotif().get(k-1).getCoords().x
 											,getListBasesMotif().get(k-1).getCoords().y- _spaceBetweenBases * 50));
-							getListBasesMotif().get(k).setChecker(true);
+							setChecked(getListBasesMotif().get(k), true);
 						}
 					}
 					part3Temp=part3;
 					part5Temp=part5;
 					setAjustement(getAjustement()+1);
-					mb3.setChecker(true);
-					mb5.setChecker(true);								
+					setChecked(mb3, true);
+					setChecked(mb5, true);								
 				}
 			}
 			
@@ -280,7 +340,7 @@ public class Motif implements Serializable{
 			//On verifie si la base est impliquee dans une paire inter-brin
 			//On reajuste les coordonnees si c'est le cas
 			if((!getListStrand().getStrand(i).existInStrand(partner)||!getListStrand().getStrand(i).existInStrand(indice))&&
-					partner!=-1 && !mb.get(0).getChecker()){
+					partner!=-1 && !isChecked(mb.get(0))){
 				//On change les coordonnées du nucleotide present sur le brin actuel
 					setDecalage(getListBasesMotif().get(partner).getCoords().y - getListBasesMotif().get(indice).getCoords().y);
 					
@@ -289,8 +349,8 @@ public class Motif implements Serializable{
 						
 				
 				 this.setAjustement(getAjustement()+1);
-				 this.getListStrand().getStrand(i).getMB(j).setChecker(true);
-				 this.getListBasesMotif().get(partner).setChecker(true);								
+				 setChecked(this.getListStrand().getStrand(i).getMB(j), true);
+				 setChecked(this.getListBasesMotif().get(partner), true);								
 			}
 			
 			//decaler les autres bases du brin s'il y a eu reajustement
@@ -315,7 +375,7 @@ public class Motif implements Serializable{
 			int strandModified = -1; //brin sur lequel les changements de coord ont t effectu
 			if (mbLast.size()>0 && mbfirst.size()>0){
 				partnerLast = mbLast.get(0).getIndex();
-				numStrandPartner = mbLast.get(0).getNumStrand();
+				numStrandPartner = getNumStrand(mbLast.get(0));
 				partnerFirst = mbfirst.get(0).getIndex();
 			}
 
@@ -361,13 +421,13 @@ public class Motif implements Serializable{
 					partner = amb.get(0).getIndex();
 				}
 				
-				if (partner!=-1 && !this.getListBasesMotif().get(indice).getChecker()){
+				if (partner!=-1 && !isChecked(this.getListBasesMotif().get(indice))){
 					double dist = Math.abs(this.getListBasesMotif().get(indice).getCoords().y 
 							- this.getListBasesMotif().get(partner).getCoords().y );
 					double ccordxIndice = this.getListBasesMotif().get(indice).getCoords().x;
 					double coordxPartner = this.getListBasesMotif().get(partner).getCoords().x;
 					if(dist <= decalage && ccordxIndice != coordxPartner ){
-						if(strandModified == amb.get(0).getNumStrand()){
+						if(strandModified == getNumStrand(amb.get(0))){
 							this.getListBasesMotif().get(partner).setCoords(new Point2D.Double(
 									this.getListBasesMotif().get(partner).getCoords().x,
 									this.getListBasesMotif().get(indice).getCoords().y));
@@ -383,10 +443,10 @@ public class Motif implements Serializable{
 				}
 				
 				if(partner!=-1){
-					this.getListBasesMotif().get(partner).setChecker(true);
+					setChecked(this.getListBasesMotif().get(partner), true);
 				}
 				
-				this.getListBasesMotif().get(indice).setChecker(true);
+				setChecked(this.getListBasesMotif().get(indice), true);
 			}
 		}
 	}
@@ -413,7 +473,7 @@ public class Motif implements Serializable{
 				
 				if (mb.size()>0){
 					partner = mb.get(0).getIndex();
-					partnerStrand=getListBasesMotif().get(partner).getNumStrand();
+					partnerStrand=getNumStrand(getListBasesMotif().get(partner));
 					if(partner!=-1 && partnerStrand!=i){			
 						
 						if(centralStrand!=partnerStrand){
@@ -457,10 +517,10 @@ public class Motif implements Serializable{
 			}
 			// Si la base est liée à un autre brin
 			if (partner!=-1) {
-				if (!htableFirst.containsKey(this.getListBasesMotif().get(partner).getNumStrand())) { 
-					htableFirst.put(this.getListBasesMotif().get(partner).getNumStrand(), j);
+				if (!htableFirst.containsKey(getNumStrand(this.getListBasesMotif().get(partner)))) { 
+					htableFirst.put(getNumStrand(this.getListBasesMotif().get(partner)), j);
 				}		
-				htableLast.put(this.getListBasesMotif().get(partner).getNumStrand(), j);
+				htableLast.put(getNumStrand(this.getListBasesMotif().get(partner)), j);
 				
 			}
 		}
@@ -485,69 +545,69 @@ public class Motif implements Serializable{
 				partenaire = mb.get(0);
 			}
 			double space = _spaceBetweenBases*60;
-			if(indexPartenaire!=-1 && !this.getListStrand().getStrand(partenaire.getNumStrand()).hasBeenPlaced()){
+			if(indexPartenaire!=-1 && !this.getListStrand().getStrand(getNumStrand(partenaire)).hasBeenPlaced()){
 				
 				//Si la base n'est pas comprise dans un intervalle à droit et à gauche
-				if(!baseStrand.getIntervDroite() && !baseStrand.getIntervGauche()){
+				if(!getIntervDroite(baseStrand) && !getIntervGauche(baseStrand)){
 				
 					if(!droite){
 						droite=true;
-						getListStrand().getStrand(partenaire.getNumStrand()).setStrandRight(true);
+						getListStrand().getStrand(getNumStrand(partenaire)).setStrandRight(true);
 						//comptDroite++;
 					}
 				
 					else{
 						droite=false;
 						space=-space;
-						getListStrand().getStrand(partenaire.getNumStrand()).setStrandLeft(true);
+						getListStrand().getStrand(getNumStrand(partenaire)).setStrandLeft(true);
 						//comptGauche++;
 					}
 				}
 				
 				//Si la base est comprise dans un intervalle à droite, on place le brin à gauche
-				else if(baseStrand.getIntervDroite() && !baseStrand.getIntervGauche()){
+				else if(getIntervDroite(baseStrand) && !getIntervGauche(baseStrand)){
 					space=-space;
-					getListStrand().getStrand(partenaire.getNumStrand()).setStrandLeft(true);
+					getListStrand().getStrand(getNumStrand(partenaire)).setStrandLeft(true);
 					
 				}
 				
 				//Si la base est comprise dans un intervalle à gauche, on place le brin à droite
-				else if(!baseStrand.getIntervDroite() && baseStrand.getIntervGauche()){
-					getListStrand().getStrand(partenaire.getNumStrand()).setStrandRight(true);
+				else if(!getIntervDroite(baseStrand) && getIntervGauche(baseStrand)){
+					getListStrand().getStrand(getNumStrand(partenaire)).setStrandRight(true);
 					
 				}
 				
 				//Cas ou la base est comprise à la fois dans un intervalle à gauche et à droite
 				//On place arbitrairement le brin (a gauche)
-				else if (baseStrand.getIntervDroite() && baseStrand.getIntervGauche()){
+				else if (getIntervDroite(baseStrand) && getIntervGauche(baseStrand)){
 					space=-space;
-					getListStrand().getStrand(partenaire.getNumStrand()).setLevelPosition(2);
-					getListStrand().getStrand(partenaire.getNumStrand()).setStrandLeft(true);
+					getListStrand().getStrand(getNumStrand(partenaire)).setLevelPosition(2);
+					getListStrand().getStrand(getNumStrand(partenaire)).setStrandLeft(true);
 				}
 				
-				space = getListStrand().getStrand(partenaire.getNumStrand()).getLevelPosition()*space;
+				space = getListStrand().getStrand(getNumStrand(partenaire)).getLevelPosition()*space;
 				
 				
 				
-				for(int i=htableFirst.get(partenaire.getNumStrand()); i < htableLast.get(partenaire.getNumStrand()); i++){
+				for(int i=htableFirst.get(getNumStrand(partenaire)); i < htableLast.get(getNumStrand(partenaire)); i++){
 					if(space<0){
-						this.getListStrand().getStrand(centralStrand).getMB(i).setIntervGauche(true);
+						setIntervGauche(this.getListStrand().getStrand(centralStrand).getMB(i), true);
 					}
 					else{
-						this.getListStrand().getStrand(centralStrand).getMB(i).setIntervDroite(true);
+						setIntervDroite(this.getListStrand().getStrand(centralStrand).getMB(i), true);
 					}
 				}
-				this.positionneSpecificStrand(partenaire.getNumStrand(), space);
-				this.ajusteSpecificStrand(partenaire.getNumStrand());
+				this.positionneSpecificStrand(getNumStrand(partenaire), space);
+				this.ajusteSpecificStrand(getNumStrand(partenaire));
 				
-				if(previousStrand!=-1 && previousStrand!=partenaire.getNumStrand()){
+				if(previousStrand!=-1 && previousStrand!=getNumStrand(partenaire)){
 					System.out.println("TEST1");
 					
 					if(getListStrand().getStrand(previousStrand).getStrandLeft()&& 
-							getListStrand().getStrand(partenaire.getNumStrand()).getStrandLeft()||
+							getListStrand().getStrand(getNumStrand(partenaire)).getStrandLeft()||
 							getListStrand().getStrand(previousStrand).getStrandRight()&& 
-							getListStrand().getStrand(partenaire.getNumStrand()).getStrandRight()
-							&& getListStrand().getStrand(partenaire.getNumStrand()).getLevelPosition() == 
+							getListStrand().getStrand(getNumStrand(partenaire)).getStrandRight()
+							&& getListStrand().getStrand(getNumStrand(partenaire)).getLevelPosition() == 
 								getListStrand().getStrand(previousStrand).getLevelPosition()){
 						//Si le brin prcdent et le brin actuel sont du mme cot et au mme niveau (sur le mme axe vertical)
 						System.out.println("TEST2");
@@ -562,15 +622,15 @@ public class Motif implements Serializable{
 						
 						//coord Y de la premiere base du brin actuel en intraction avec le brin central
 						double coordYFirstBase= getListStrand().getStrand(centralStrand).
-							getMB(htableFirst.get(partenaire.getNumStrand())).getCoords().y;
+							getMB(htableFirst.get(getNumStrand(partenaire))).getCoords().y;
 						
 						double dist = Math.abs(coordYLastBase-coordYFirstBase);
-						int sizeStrand = getListStrand().getStrand(partenaire.getNumStrand()).sizeStrand();
+						int sizeStrand = getListStrand().getStrand(getNumStrand(partenaire)).sizeStrand();
 						
 						//distance entre la 1ere base du brin partenaire en interaction avec le brin central et 
 						//et la dernire base du brin partenaire
 						double distC = Math.abs(this.getListBasesMotif().get(indexPartenaire).getCoords().y 
-								-getListStrand().getStrand(partenaire.getNumStrand()).getMB(sizeStrand-1).getCoords().y);
+								-getListStrand().getStrand(getNumStrand(partenaire)).getMB(sizeStrand-1).getCoords().y);
 						
 						//distance entre la derniere base du brin prcdent en interaction avec le brin central et 
 						//et la 1ere base du brin prcdent
@@ -586,13 +646,13 @@ public class Motif implements Serializable{
 							this.getListBasesMotif().get(indice).setCoords(new Point2D.Double
 									(this.getListBasesMotif().get(indice).getCoords().x ,
 											this.getListBasesMotif().get(indice).getCoords().y+diff));
-							this.ajusteSpecificStrand(partenaire.getNumStrand());
+							this.ajusteSpecificStrand(getNumStrand(partenaire));
 						}
 						
 					}
 				}
-				previousStrand = partenaire.getNumStrand();
-				this.getListStrand().getStrand(partenaire.getNumStrand()).setHasBeenPlaced(true);
+				previousStrand = getNumStrand(partenaire);
+				this.getListStrand().getStrand(getNumStrand(partenaire)).setHasBeenPlaced(true);
 			}
 		}
 	}
@@ -686,9 +746,9 @@ public class Motif implements Serializable{
 					partner = mb.get(0).getIndex();
 				}
 				// Si la base est liée à une autre base
-				if (partner!=-1 /*&& !getListBasesMotif().get(partner).getChecker()*/ ) {
+				if (partner!=-1 /*&& !isChecked(getListBasesMotif().get(partner))*/ ) {
 					result.add(getListBasesMotif().get(indice));
-					//getListBasesMotif().get(indice).setChecker(true);
+					//setChecked(getListBasesMotif().get(indice), true);
 				}
 			}
 		}
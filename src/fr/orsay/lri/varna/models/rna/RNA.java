@@ -28,31 +28,33 @@ import java.awt.geom.Rectangle2D;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StreamTokenizer;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
 import java.util.Vector;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.InputSource;
+import javax.xml.stream.XMLStreamException;
 
 import fr.orsay.lri.varna.exceptions.ExceptionExportFailed;
 import fr.orsay.lri.varna.exceptions.ExceptionFileFormatOrSyntax;
@@ -64,6 +66,7 @@ import fr.orsay.lri.varna.exceptions.ExceptionUnmatchedClosingParentheses;
 import fr.orsay.lri.varna.exceptions.ExceptionWritingForbidden;
 import fr.orsay.lri.varna.interfaces.InterfaceVARNAListener;
 import fr.orsay.lri.varna.interfaces.InterfaceVARNAObservable;
+import fr.orsay.lri.varna.models.CompressedFiles;
 import fr.orsay.lri.varna.models.CubicBezierCurve;
 import fr.orsay.lri.varna.models.VARNAConfig;
 import fr.orsay.lri.varna.models.annotations.ChemProbAnnotation;
@@ -109,6 +112,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public static final int FILE_TYPE_DBN = 3;
 	public static final int FILE_TYPE_RNAML = 4;
 	public static final int FILE_TYPE_UNKNOWN = 5;
+	public static final int FILE_TYPE_BINARY = 6;
 	
 	
 	
@@ -185,7 +189,84 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	/**
 	 * Additional bonds and info can be specified here.
 	 */
-	private ArrayList<ModeleStyleBP> _structureAux = new ArrayList<ModeleStyleBP>();
+	private ArrayList<ModeleStyleBP> _structureAux = new AuxBPList();
+
+	/**
+	 * Index of the additional base pairs, by base and by pair of bases, built
+	 * on demand and kept up to date as pairs are added. _auxBPsIndexedVersion
+	 * is the modification count of _structureAux covered by the index.
+	 */
+	transient private Hashtable<Integer, ArrayList<ModeleStyleBP>> _auxBPsByBase = null;
+	transient private Hashtable<Long, ModeleStyleBP> _auxBPsByPair = null;
+	transient private int _auxBPsIndexedVersion = 0;
+
+	/**
+	 * List of the additional base pairs, counting its modifications so that
+	 * the index can tell when the list returned by getStructureAux was
+	 * changed behind its back. Serialized as a plain ArrayList.
+	 */
+	private static class AuxBPList extends ArrayList<ModeleStyleBP> {
+		private static final long serialVersionUID = 1L;
+
+		public AuxBPList() {
+			super();
+		}
+
+		public AuxBPList(Collection<ModeleStyleBP> bps) {
+			super(bps);
+		}
+
+		public ModeleStyleBP set(int index, ModeleStyleBP bp) {
+			modCount++;
+			return super.set(index, bp);
+		}
+
+		int getVersion() {
+			return modCount;
+		}
+
+		private Object writeReplace() {
+			return new ArrayList<ModeleStyleBP>(this);
+		}
+	}
+
+	/**
+	 * Index of the loops and helices of the secondary structure, rebuilt on
+	 * demand whenever the bases or their partners change. Null if the
+	 * structure is not planar.
+	 */
+	transient private boolean _structureIndexed = false;
+	transient private int _structureVersion = 0;
+	transient private RNAStructureIndex _structureIndex = null;
+
+	/**
+	 * Index of the bases from their numbers, rebuilt on demand whenever the
+	 * bases or their numbers change. When bases are numbered consecutively,
+	 * the base numbered n lies at index n-_baseNumberOffset and no table is
+	 * needed. Otherwise, the index of the base numbered n is found in
+	 * _indexFromBaseNumber[n-_baseNumberOffset], or in the sparse table when
+	 * numbers are too scattered for a dense one.
+	 */
+	transient private boolean _baseNumbersIndexed = false;
+	transient private ModeleBase.Versions _versions = null;
+	transient private int _baseNumbersVersion;
+	transient private int _baseNumberOffset;
+	transient private int[] _indexFromBaseNumber = null;
+	transient private Hashtable<Integer, Integer> _sparseIndexFromBaseNumber = null;
+
+	/**
+	 * Values of the bases, mapped to colors when drawing the color map.
+	 * Allocated when a first non-zero value is set, as most RNAs carry none.
+	 * The values are serialized within the bases, where they used to be
+	 * stored, so that sessions remain compatible.
+	 */
+	transient private double[] _baseValues = null;
+
+	/**
+	 * Values of the bases of the RNA being serialized or deserialized by the
+	 * current thread, by base.
+	 */
+	private static final ThreadLocal<IdentityHashMap<ModeleBase, Double>> _serializedBaseValues = new ThreadLocal<IdentityHashMap<ModeleBase, Double>>();
 
 	transient private ArrayList<InterfaceVARNAListener> _listeVARNAListener = new ArrayList<InterfaceVARNAListener>();
 
@@ -195,6 +276,47 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	private ArrayList<HighlightRegionAnnotation> _listeRegionHighlights = new ArrayList<HighlightRegionAnnotation>();
 
 	boolean _flatExteriorLoop = false;
+
+	/**
+	 * Number of threads laying out large structures in the radiate mode.
+	 * Sessions saved before it was kept read 0, which counts as 1.
+	 */
+	private int _layoutThreads = 1;
+
+	/**
+	 * Whether a change of structure updates the radiate or NAView drawing
+	 * incrementally, rather than laying the whole RNA out again. Sessions
+	 * saved before it was kept read as false.
+	 */
+	private boolean _incrementalLayout = false;
+
+	/**
+	 * Seed and budget of the random moves resolving overlaps between helices
+	 * in the VARNA view. Sessions saved before they were kept read
+	 * _varnaViewSaved as false, and get the defaults back.
+	 */
+	private long _varnaViewSeed = VARNASecDraw.DEFAULT_SEED;
+	private int _varnaViewMaxSteps = VARNASecDraw.DEFAULT_MAX_STEPS;
+	private long _varnaViewMaxTime = 0;
+	private boolean _varnaViewSaved = true;
+
+	/**
+	 * Structure, mode and parameters of the last radiate or NAView layout, or
+	 * null if the coordinates of the bases come from another drawing
+	 */
+	transient private int[] _layoutStr = null;
+	transient private int _layoutMode;
+	transient private boolean _layoutFlat;
+	transient private double _layoutSpace;
+
+	/**
+	 * Coordinates and centers of the bases, kept when the bases were
+	 * replaced since the last layout
+	 */
+	transient private double[] _previousX = null;
+	transient private double[] _previousY = null;
+	transient private double[] _previousCenterX = null;
+	transient private double[] _previousCenterY = null;
 	
 	private String _name = "";
 
@@ -226,8 +348,18 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		_drawMode = r._drawMode;
 		_comparisonMode = r._comparisonMode;
 		_listeBases.addAll(r._listeBases);
+		// Both RNAs hold the same bases, whose changes invalidate both
+		_versions = r.getVersions();
+		if (r._baseValues != null) {
+			_baseValues = r._baseValues.clone();
+		}
 		_listeVARNAListener = (ArrayList<InterfaceVARNAListener>) r._listeVARNAListener;
 		_drawn = r._drawn;
+		_layoutThreads = r._layoutThreads;
+		_incrementalLayout = r._incrementalLayout;
+		_varnaViewSeed = r._varnaViewSeed;
+		_varnaViewMaxSteps = r._varnaViewMaxSteps;
+		_varnaViewMaxTime = r._varnaViewMaxTime;
 		init();
 	}
 
@@ -242,25 +374,13 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public void saveRNADBN(String path, String title)
 			throws ExceptionWritingForbidden {
 		try {
-			FileWriter out = new FileWriter(path);
+			Writer out = CompressedFiles.openWriter(path);
 			if (!title.equals("")) {
 				out.write("> " + title + "\n");
 			}
-			out.write(getListeBasesToString());
+			writeListeBases(out);
 			out.write('\n');
-			String str = "";
-			for (int i = 0; i < _listeBases.size(); i++) {
-				if (_listeBases.get(i).getElementStructure() == -1) {
-					str += '.';
-				} else {
-					if (_listeBases.get(i).getElementStructure() > i) {
-						str += '(';
-					} else {
-						str += ')';
-					}
-				}
-			}
-			out.write(str);
+			writeStructDBN(out);
 			out.write('\n');
 			out.close();
 		} catch (IOException e) {
@@ -274,7 +394,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		char res = _listeBases.get(i).getContent().charAt(0);
 		if (conf._drawColorMap)
 		{
-			result = conf._cm.getColorForValue(_listeBases.get(i).getValue());			
+			result = conf._cm.getColorForValue(getBaseValue(i));
 		}
 		else if ((conf._colorSpecialBases && !_normalBases.contains(Character.toLowerCase(res)))) {
 			result = conf._specialBasesColor;
@@ -753,9 +873,9 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		}
 
 
-		FileWriter fout;
+		Writer fout;
 		try {
-			fout = new FileWriter(path);
+			fout = CompressedFiles.openWriter(path);
 			fout.write(out.export());
 			fout.close();
 		} catch (IOException e) {
@@ -980,6 +1100,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 
 	public void drawRNACircle() {
 		_drawn = true;
+		_layoutStr = null;
 		_drawMode = DRAW_MODE_CIRCULAR;
 		int radius = (int) ((3 * (_listeBases.size() + 1) * BASE_RADIUS) / (2 * Math.PI));
 		double angle;
@@ -996,14 +1117,19 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 
 	public void drawRNAVARNAView() {
 		_drawn = true;
+		_layoutStr = null;
 		_drawMode = DRAW_MODE_VARNA_VIEW;
 		VARNASecDraw vs = new VARNASecDraw();
+		vs.setSeed(_varnaViewSeed);
+		vs.setMaxSteps(_varnaViewMaxSteps);
+		vs.setMaxTime(_varnaViewMaxTime);
 		vs.drawRNA(1, this);
 	}
 	
 	
 	public void drawRNALine() {
 		_drawn = true;
+		_layoutStr = null;
 		_drawMode = DRAW_MODE_LINEAR;
 		for (int i = 0; i < get_listeBases().size(); i++) {
 			get_listeBases().get(i).setCoords(
@@ -1491,6 +1617,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	 */
 	public void drawRNATemplate(RNATemplate template) throws RNATemplateDrawingAlgorithmException {
 		_drawn = true;
+		_layoutStr = null;
 		_drawMode = DRAW_MODE_TEMPLATE;
 		
 		// debug
@@ -1671,50 +1798,14 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 
 
 
-	private double objFun(int n1, int n2, double r) {
-		return (((double) n1) * 2.0
-				* Math.asin(((double) BASE_PAIR_DISTANCE) / (2.0 * r))
-				+ ((double) n2) * 2.0
-				* Math.asin(((double) MULTILOOP_DISTANCE) / (2.0 * r)) - (2.0 * Math.PI));
-	}
-
-	private double determineRadius(int n1, int n2, double startRadius) {
-		double xmin = BASE_PAIR_DISTANCE / 2.0;
-		double xmax = 3.0 * BASE_PAIR_DISTANCE + 1;
-		double x = (xmin + xmax) / 2.0;
-		double y = 10000.0;
-		double ymin = -1000.0;
-		double ymax = 1000.0;
-		int numIt = 0;
-		double precision = 0.00001;
-		while ((Math.abs(y) > precision) && (numIt < 10000)) {
-			x = (xmin + xmax) / 2.0;
-			y = objFun(n1, n2, x);
-			ymin = objFun(n1, n2, xmax);
-			ymax = objFun(n1, n2, xmin);
-			if (ymin > 0.0) {
-				xmax = xmax + (xmax - xmin);
-			} else if ((y <= 0.0) && (ymax > 0.0)) {
-				xmax = x;
-			} else if ((y >= 0.0) && (ymin < 0.0)) {
-				xmin = x;
-			} else if (ymax < 0.0) {
-				xmin = Math.max(xmin - (x - xmin), Math.max(
-						BASE_PAIR_DISTANCE / 2.0, MULTILOOP_DISTANCE / 2.0));
-				xmax = x;
-			}
-			numIt++;
-		}
-		// if (Math.abs(y)>precision)
-		// System.out.println("x: ["+xmin+","+x+","+xmax+"] inc:"+increment+" y: ["+ymin+","+y+","+ymax+"]");
-		return x;
-	}
-
 	public void drawRNA() throws ExceptionNAViewAlgorithm {
 		drawRNA(RNA.DEFAULT_DRAW_MODE);
 	}
 	public void drawRNA(int mode) throws ExceptionNAViewAlgorithm {
 		_drawMode = mode;
+		if (drawRNAIncremental(mode)) {
+			return;
+		}
 		switch (get_drawMode()) {
 		case RNA.DRAW_MODE_RADIATE:
 			drawRNARadiate();
@@ -1739,6 +1830,161 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		}
 
 	}
+
+	/**
+	 * Updates the radiate or NAView drawing after a change of structure, by
+	 * laying out again the loops which changed only. The other loops keep
+	 * their previous shape, including manual adjustments.
+	 * 
+	 * @return <code>false</code> if the RNA must be laid out from scratch,
+	 *         because incremental layout is disabled, or the coordinates of
+	 *         the bases do not come from a layout of the same kind
+	 */
+	private boolean drawRNAIncremental(int mode) throws ExceptionNAViewAlgorithm {
+		int size = _listeBases.size();
+		if (!_incrementalLayout || (_layoutStr == null)
+				|| (_layoutMode != mode) || (_layoutStr.length != size)
+				|| (_layoutSpace != _spaceBetweenBases)) {
+			return false;
+		}
+		if ((mode == DRAW_MODE_RADIATE) && (_layoutFlat != _flatExteriorLoop)) {
+			return false;
+		}
+		// Drawing an unchanged structure again resets the layout
+		int[] str = getNonCrossingStruct();
+		RNAStructureDiff diff = RNAStructureDiff.compute(_layoutStr, str);
+		if (diff.isIdentical() || (getStructureIndex() == null)) {
+			return false;
+		}
+		double[] oldX = _previousX;
+		double[] oldY = _previousY;
+		double[] oldCenterX = _previousCenterX;
+		double[] oldCenterY = _previousCenterY;
+		if ((oldX == null) || (oldX.length != size)) {
+			oldX = new double[size];
+			oldY = new double[size];
+			oldCenterX = new double[size];
+			oldCenterY = new double[size];
+			for (int i = 0; i < size; i++) {
+				ModeleBase mb = _listeBases.get(i);
+				oldX[i] = mb.getX();
+				oldY[i] = mb.getY();
+				oldCenterX[i] = mb.getCenterX();
+				oldCenterY[i] = mb.getCenterY();
+			}
+		}
+		RNAIncrementalLayout layout = new RNAIncrementalLayout(this, mode,
+				diff, str, oldX, oldY, oldCenterX, oldCenterY);
+		layout.layout();
+		for (int i = 0; i < size; i++) {
+			ModeleBase mb = _listeBases.get(i);
+			mb.setCoords(layout.getX(i), layout.getY(i));
+			mb.setCenter(layout.getCenterX(i), layout.getCenterY(i));
+		}
+		if (mode == DRAW_MODE_NAVIEW) {
+			updateNAViewCenters();
+		}
+		_drawn = true;
+		rememberLayout(mode, _flatExteriorLoop);
+		return true;
+	}
+
+	/**
+	 * Lays out the whole RNA from scratch, and copies the coordinates and
+	 * centers of its bases.
+	 */
+	void layoutAll(int mode, double[] x, double[] y, double[] centerX,
+			double[] centerY) throws ExceptionNAViewAlgorithm {
+		if (mode == DRAW_MODE_NAVIEW) {
+			drawRNANAView();
+		} else {
+			drawRNARadiate();
+		}
+		for (int k = 0; k < _listeBases.size(); k++) {
+			ModeleBase mb = _listeBases.get(k);
+			x[k] = mb.getX();
+			y[k] = mb.getY();
+			centerX[k] = mb.getCenterX();
+			centerY[k] = mb.getCenterY();
+		}
+	}
+
+	/**
+	 * Lays out the subtree closed by the base-pair (i,j) of a structure, in a
+	 * frame of its own, leaving the bases of the RNA untouched. NAView
+	 * centers are left unset, and must be updated once the bases are placed.
+	 */
+	void layoutRegion(int mode, int[] str, int i, int j, double[] x,
+			double[] y, double[] centerX, double[] centerY)
+			throws ExceptionNAViewAlgorithm {
+		if (mode == DRAW_MODE_NAVIEW) {
+			int[] pairs = new int[j - i + 1];
+			for (int k = i; k <= j; k++) {
+				pairs[k - i] = (str[k] == -1) ? -1 : str[k] - i;
+			}
+			double[] X = new double[pairs.length];
+			double[] Y = new double[pairs.length];
+			NAView naView = new NAView();
+			naView.naview_xy_coordinates(pairs, X, Y);
+			for (int k = i; k <= j; k++) {
+				x[k] = X[k - i] * 2.5 * _spaceBetweenBases;
+				y[k] = Y[k - i] * 2.5 * _spaceBetweenBases;
+				centerX[k] = x[k];
+				centerY[k] = y[k];
+			}
+		} else {
+			RadiateLayout layout = new RadiateLayout(str, i, j, LOOP_DISTANCE,
+					BASE_PAIR_DISTANCE, MULTILOOP_DISTANCE);
+			layout.setNumThreads(_layoutThreads);
+			layout.layout(i, j, 0, 0, 0);
+			for (int k = i; k <= j; k++) {
+				x[k] = layout.getX(k) * _spaceBetweenBases;
+				y[k] = layout.getY(k) * _spaceBetweenBases;
+				centerX[k] = layout.getCenterX(k) * _spaceBetweenBases;
+				centerY[k] = layout.getCenterY(k) * _spaceBetweenBases;
+			}
+		}
+	}
+
+	/**
+	 * Records the structure and parameters of a radiate or NAView layout,
+	 * which the next drawing may then update incrementally.
+	 */
+	private void rememberLayout(int mode, boolean flatExteriorLoop) {
+		_previousX = null;
+		_previousY = null;
+		_previousCenterX = null;
+		_previousCenterY = null;
+		_layoutStr = null;
+		if (_incrementalLayout && (getStructureIndex() != null)) {
+			_layoutStr = getNonCrossingStruct();
+			_layoutMode = mode;
+			_layoutFlat = flatExteriorLoop;
+			_layoutSpace = _spaceBetweenBases;
+		}
+	}
+
+	/**
+	 * Keeps the coordinates of the bases about to be replaced, so that the
+	 * next drawing may update them incrementally.
+	 */
+	private void keepPreviousLayout() {
+		if ((_layoutStr == null) || (_previousX != null)) {
+			return;
+		}
+		int size = _listeBases.size();
+		_previousX = new double[size];
+		_previousY = new double[size];
+		_previousCenterX = new double[size];
+		_previousCenterY = new double[size];
+		for (int i = 0; i < size; i++) {
+			ModeleBase mb = _listeBases.get(i);
+			_previousX[i] = mb.getX();
+			_previousY[i] = mb.getY();
+			_previousCenterX[i] = mb.getCenterX();
+			_previousCenterY[i] = mb.getCenterY();
+		}
+	}
 	
 
 	public int getDrawMode() {
@@ -1747,120 +1993,29 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 
 	
 	
+	/**
+	 * Lays out the bases from i to j with the radiate algorithm, updating
+	 * their coordinates in place. Bases sharing a center in the layout share
+	 * the same center object.
+	 */
 	private void drawLoop(int i, int j, double x, double y, double dirAngle,
 			Point2D.Double[] coords, Point2D.Double[] centers) {
 		if (i > j) {
 			return;
 		}
-
-		// BasePaired
-		if (_listeBases.get(i).getElementStructure() == j) {
-			double normalAngle = Math.PI / 2.0;
-			centers[i] = new Point2D.Double(x, y);
-			centers[j] = new Point2D.Double(x, y);
-			coords[i].x = (x + BASE_PAIR_DISTANCE
-					* Math.cos(dirAngle - normalAngle) / 2.0);
-			coords[i].y = (y + BASE_PAIR_DISTANCE
-					* Math.sin(dirAngle - normalAngle) / 2.0);
-			coords[j].x = (x + BASE_PAIR_DISTANCE
-					* Math.cos(dirAngle + normalAngle) / 2.0);
-			coords[j].y = (y + BASE_PAIR_DISTANCE
-					* Math.sin(dirAngle + normalAngle) / 2.0);
-			drawLoop(i + 1, j - 1, x + LOOP_DISTANCE * Math.cos(dirAngle), y
-					+ LOOP_DISTANCE * Math.sin(dirAngle), dirAngle, coords,
-					centers);
-		} else {
-			int k = i;
-			Vector<Integer> basesMultiLoop = new Vector<Integer>();
-			Vector<Integer> helices = new Vector<Integer>();
-			int l;
-			while (k <= j) {
-				l = _listeBases.get(k).getElementStructure();
-				if (l > k) {
-					basesMultiLoop.add(new Integer(k));
-					basesMultiLoop.add(new Integer(l));
-					helices.add(new Integer(k));
-					k = l + 1;
-				} else {
-					basesMultiLoop.add(new Integer(k));
-					k++;
-				}
-			}
-			int mlSize = basesMultiLoop.size() + 2;
-			int numHelices = helices.size() + 1;
-			double totalLength = MULTILOOP_DISTANCE * (mlSize - numHelices)
-					+ BASE_PAIR_DISTANCE * numHelices;
-			double multiLoopRadius;
-			double angleIncrementML;
-			double angleIncrementBP;
-			if (mlSize > 3) {
-				multiLoopRadius = determineRadius(numHelices, mlSize
-						- numHelices, (totalLength) / (2.0 * Math.PI));
-				angleIncrementML = -2.0
-						* Math.asin(((float) MULTILOOP_DISTANCE)
-								/ (2.0 * multiLoopRadius));
-				angleIncrementBP = -2.0
-						* Math.asin(((float) BASE_PAIR_DISTANCE)
-								/ (2.0 * multiLoopRadius));
-			} else {
-				multiLoopRadius = 35.0;
-				angleIncrementBP = -2.0
-						* Math.asin(((float) BASE_PAIR_DISTANCE)
-								/ (2.0 * multiLoopRadius));
-				angleIncrementML = (-2.0 * Math.PI - angleIncrementBP) / 2.0;
-			}
-			// System.out.println("MLr:"+multiLoopRadius+" iBP:"+angleIncrementBP+" iML:"+angleIncrementML);
-
-			double centerDist = Math.sqrt(Math.max(Math.pow(multiLoopRadius, 2)
-					- Math.pow(BASE_PAIR_DISTANCE / 2.0, 2), 0.0))
-					- LOOP_DISTANCE;
-			Point2D.Double mlCenter = new Point2D.Double(
-					(x + (centerDist * Math.cos(dirAngle))),
-					(y + (centerDist * Math.sin(dirAngle))));
-
-			// Base directing angle for (multi|hairpin) loop, from the center's
-			// perspective
-			double baseAngle = dirAngle
-			// U-turn
-					+ Math.PI
-					// Account for already drawn supporting base-pair
-					+ 0.5 * angleIncrementBP
-					// Base cannot be paired twice, so next base is at
-					// "unpaired base distance"
-					+ 1.0 * angleIncrementML;
-			double[] angles = new double[_listeBases.size()];
-			int n1 = 1;
-			int n2 = 1;
-			for (k = basesMultiLoop.size() - 1; k >= 0; k--) {
-				l = basesMultiLoop.get(k).intValue();
-				centers[l] = mlCenter;
-				angles[l] = baseAngle;
-				coords[l].x = mlCenter.x + multiLoopRadius
-						* Math.cos(baseAngle);
-				coords[l].y = mlCenter.y + multiLoopRadius
-						* Math.sin(baseAngle);
-				if ((_listeBases.get(l).getElementStructure() < l)
-						&& (_listeBases.get(l).getElementStructure() != -1)) {
-					baseAngle += angleIncrementBP;
-					n1++;
-				} else {
-					baseAngle += angleIncrementML;
-					n2++;
-				}
-			}
-			// System.out.println("n1:"+n1+" n2:"+n2);
-			double newAngle;
-			int m, n;
-			for (k = 0; k < helices.size(); k++) {
-				m = helices.get(k).intValue();
-				n = _listeBases.get(m).getElementStructure();
-				newAngle = (angles[m] + angles[n]) / 2.0;
-				drawLoop(m + 1, n - 1, (LOOP_DISTANCE * Math.cos(newAngle))
-						+ (coords[m].x + coords[n].x) / 2.0,
-						(LOOP_DISTANCE * Math.sin(newAngle))
-								+ (coords[m].y + coords[n].y) / 2.0, newAngle,
-						coords, centers);
+		RadiateLayout layout = new RadiateLayout(getNonCrossingStruct(), i, j,
+				LOOP_DISTANCE, BASE_PAIR_DISTANCE, MULTILOOP_DISTANCE);
+		layout.layout(i, j, x, y, dirAngle);
+		Point2D.Double[] sharedCenters = new Point2D.Double[2 * (j - i + 1)];
+		for (int k = i; k <= j; k++) {
+			coords[k].x = layout.getX(k);
+			coords[k].y = layout.getY(k);
+			int id = layout.getCenterId(k) - 2 * i;
+			if (sharedCenters[id] == null) {
+				sharedCenters[id] = new Point2D.Double(layout.getCenterX(k),
+						layout.getCenterY(k));
 			}
+			centers[k] = sharedCenters[id];
 		}
 	}
 
@@ -1872,12 +2027,15 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public void drawRNARadiate(double dirAngle, boolean flatExteriorLoop) {
 		_drawn = true;
 		_drawMode = DRAW_MODE_RADIATE;
-		Point2D.Double[] coords = new Point2D.Double[_listeBases.size()];
-		Point2D.Double[] centers = new Point2D.Double[_listeBases.size()];
-		for (int i = 0; i < _listeBases.size(); i++) {
-			coords[i] = new Point2D.Double(0, 0);
-			centers[i] = new Point2D.Double(0, 0);
-		}
+		int size = _listeBases.size();
+		int[] str = getNonCrossingStruct();
+		RadiateLayout layout = new RadiateLayout(str, 0, size - 1,
+				LOOP_DISTANCE, BASE_PAIR_DISTANCE, MULTILOOP_DISTANCE);
+		layout.setNumThreads(_layoutThreads);
+		double[] coordsX = new double[size];
+		double[] coordsY = new double[size];
+		double[] centersX = new double[size];
+		double[] centersY = new double[size];
 		if (flatExteriorLoop)
 		{
 		  dirAngle += 1.0 - Math.PI/2.0;
@@ -1886,23 +2044,29 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		  double y = 0.0;
 		  double vx = -Math.sin(dirAngle);
 		  double vy = Math.cos(dirAngle);
-		  while(i<_listeBases.size())
+		  while(i<size)
 		  {
-			  coords[i].x = x; 
-			  coords[i].y = y;
-			  centers[i].x = x+BASE_PAIR_DISTANCE*vy;
-			  centers[i].y = y-BASE_PAIR_DISTANCE*vx;
-			  int j = _listeBases.get(i).getElementStructure();
+			  coordsX[i] = x;
+			  coordsY[i] = y;
+			  centersX[i] = x+BASE_PAIR_DISTANCE*vy;
+			  centersY[i] = y-BASE_PAIR_DISTANCE*vx;
+			  int j = str[i];
 			  if (j>i)
 			  {
-				  drawLoop(i, j, x+(BASE_PAIR_DISTANCE*vx/2.0), y+(BASE_PAIR_DISTANCE*vy/2.0), dirAngle, coords, centers);
-				  centers[i].x = coords[i].x+BASE_PAIR_DISTANCE*vy;
-				  centers[i].y = y-BASE_PAIR_DISTANCE*vx;
+				  layout.layout(i, j, x+(BASE_PAIR_DISTANCE*vx/2.0), y+(BASE_PAIR_DISTANCE*vy/2.0), dirAngle);
+				  for (int k = i; k <= j; k++) {
+					  coordsX[k] = layout.getX(k);
+					  coordsY[k] = layout.getY(k);
+					  centersX[k] = layout.getCenterX(k);
+					  centersY[k] = layout.getCenterY(k);
+				  }
+				  centersX[i] = coordsX[i]+BASE_PAIR_DISTANCE*vy;
+				  centersY[i] = y-BASE_PAIR_DISTANCE*vx;
 				  i = j;
 				  x += BASE_PAIR_DISTANCE*vx;
 				  y += BASE_PAIR_DISTANCE*vy;
-				  centers[i].x = coords[i].x+BASE_PAIR_DISTANCE*vy;
-				  centers[i].y = y-BASE_PAIR_DISTANCE*vx;
+				  centersX[i] = coordsX[i]+BASE_PAIR_DISTANCE*vy;
+				  centersY[i] = y-BASE_PAIR_DISTANCE*vx;
 			  }
 			  x += MULTILOOP_DISTANCE*vx;
 			  y += MULTILOOP_DISTANCE*vy;
@@ -1911,16 +2075,21 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		}
 		else
 		{
-		  drawLoop(0, _listeBases.size() - 1, 0, 0, dirAngle, coords, centers);
+		  layout.layout(0, size - 1, 0, 0, dirAngle);
+		  for (int i = 0; i < size; i++) {
+			  coordsX[i] = layout.getX(i);
+			  coordsY[i] = layout.getY(i);
+			  centersX[i] = layout.getCenterX(i);
+			  centersY[i] = layout.getCenterY(i);
+		  }
 		}
-		for (int i = 0; i < _listeBases.size(); i++) {
-			_listeBases.get(i).setCoords(
-					new Point2D.Double(coords[i].x * _spaceBetweenBases,
-							coords[i].y * _spaceBetweenBases));
-			_listeBases.get(i).setCenter(
-					new Point2D.Double(centers[i].x * _spaceBetweenBases,
-							centers[i].y * _spaceBetweenBases));
+		for (int i = 0; i < size; i++) {
+			_listeBases.get(i).setCoords(coordsX[i] * _spaceBetweenBases,
+					coordsY[i] * _spaceBetweenBases);
+			_listeBases.get(i).setCenter(centersX[i] * _spaceBetweenBases,
+					centersY[i] * _spaceBetweenBases);
 		}
+		rememberLayout(DRAW_MODE_RADIATE, flatExteriorLoop);
 
 		// TODO
 		// change les centres des bases de la premiere helice vers la boucle la
@@ -1931,26 +2100,36 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		_drawMode = DRAW_MODE_NAVIEW;
 		_drawn = true;
 
-		ArrayList<Double> X = new ArrayList<Double>(_listeBases.size());
-		ArrayList<Double> Y = new ArrayList<Double>(_listeBases.size());
-		ArrayList<Short> pair_table = new ArrayList<Short>(_listeBases.size());
+		int size = _listeBases.size();
+		double[] X = new double[size];
+		double[] Y = new double[size];
+		int[] pair_table = new int[size];
 
-		for (int i = 0; i < _listeBases.size(); i++) {
-			pair_table.add(Short.valueOf(String.valueOf(_listeBases.get(i)
-					.getElementStructure())));
+		for (int i = 0; i < size; i++) {
+			pair_table[i] = _listeBases.get(i).getElementStructure();
 		}
 		NAView naView = new NAView();
 		naView.naview_xy_coordinates(pair_table, X, Y);
 
 		// Updating individual base positions
-		for (int i = 0; i < _listeBases.size(); i++) {
+		for (int i = 0; i < size; i++) {
 			_listeBases.get(i).setCoords(
-					new Point2D.Double(X.get(i) * 2.5 * _spaceBetweenBases, Y
-							.get(i)
+					new Point2D.Double(X[i] * 2.5 * _spaceBetweenBases, Y[i]
 							* 2.5 * _spaceBetweenBases));
 		}
+		updateNAViewCenters();
+		rememberLayout(DRAW_MODE_NAVIEW, _flatExteriorLoop);
+	}
 
-		// Updating centers
+	/**
+	 * Centers paired bases on their partner, and unpaired ones on their loop.
+	 */
+	private void updateNAViewCenters() {
+		RNAStructureIndex si = getStructureIndex();
+		Point2D.Double[] loopCenters = null;
+		if (si != null) {
+			loopCenters = new Point2D.Double[si.getNumLoops()];
+		}
 		for (int i = 0; i < _listeBases.size(); i++) {
 			int indicePartner = _listeBases.get(i).getElementStructure();
 			if (indicePartner != -1) {
@@ -1961,6 +2140,13 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 						new Point2D.Double((base.x + partner.x) / 2.0,
 								(base.y + partner.y) / 2.0));
 			} 
+			else if (loopCenters != null) {
+				int l = si.getLoop(i);
+				if (loopCenters[l] == null) {
+					loopCenters[l] = getLoopCenter(si, l);
+				}
+				_listeBases.get(i).setCenter(loopCenters[l]);
+			}
 			else {
 				Vector<Integer> loop = getLoopBases(i);
 				double tmpx = 0.0;
@@ -1979,8 +2165,21 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		}
 	}
 
+	private Point2D.Double getLoopCenter(RNAStructureIndex si, int l) {
+		double tmpx = 0.0;
+		double tmpy = 0.0;
+		int size = si.getLoopSize(l);
+		for (int k = 0; k < size; k++) {
+			ModeleBase loopmember = _listeBases.get(si.getLoopMember(l, k));
+			tmpx += loopmember.getX();
+			tmpy += loopmember.getY();
+		}
+		return new Point2D.Double(tmpx / size, tmpy / size);
+	}
+
 	public void drawMOTIFView() {
 		_drawn = true;
+		_layoutStr = null;
 		_drawMode = DRAW_MODE_MOTIFVIEW;	
 		int spaceBetweenStrand =0;
 		Motif motif = new Motif(this,get_listeBases());
@@ -2048,7 +2247,10 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public void setRNA(char[] seq, int[] str, int baseIndex)
 			throws ExceptionFileFormatOrSyntax {
 		clearAnnotations();
+		keepPreviousLayout();
 		_listeBases = new ArrayList<ModeleBase>();
+		_baseValues = null;
+		invalidateIndices();
 		if (seq.length != str.length) {
 			warningEmition("Sequence length " + seq.length
 					+ " differs from that of secondary structure " + str.length
@@ -2067,6 +2269,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		for (int i = 0; i < str.length; i++) {
 			_listeBases.add(new ModeleBaseNucleotide(seq[i], i, baseIndex+i));
 		}
+		adoptBases();
 		applyStruct(str);
 	}
 
@@ -2093,7 +2296,10 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public void setRNA(String seq, String struct, ArrayList<Integer> basesOwn)
 			throws ExceptionUnmatchedClosingParentheses, ExceptionFileFormatOrSyntax {
 		clearAnnotations();
+		keepPreviousLayout();
 		_listeBases = new ArrayList<ModeleBase>();
+		_baseValues = null;
+		invalidateIndices();
 		// On "parse" la structure (repérage des points, tiret et couples
 		// parentheses ouvrante/fermante)
 		int[] array_struct = parseStruct(struct);
@@ -2142,6 +2348,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 			// On passe au morceau de la séquence suivante.
 			j += 2;
 		}
+		adoptBases();
 	}
 
 	public void setRNA(String seq, int[] str)
@@ -2152,18 +2359,95 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public void setRNA(String seq, String dbnStr)
 			throws ExceptionUnmatchedClosingParentheses,
 			ExceptionFileFormatOrSyntax {
-		clearAnnotations();
-		String parDBN = dbnStr.replace('(', '(').replace(')', ')').replace('[', ':').replace(']', ':').replace('{', ':').replace('}', ':');
-		String braDBN = dbnStr.replace('(', ':').replace(')', ':').replace('[', '(').replace(']', ')').replace('{', ':').replace('}', ':');
-		String accDBN = dbnStr.replace('(', ':').replace(')', ':').replace('[', ':').replace(']', ':').replace('{', '(').replace('}', ')');
-	    int[] parStr = parseStruct(parDBN);
-		int[] braStr = parseStruct(braDBN);
-		int[] accStr = parseStruct(accDBN);
-		int[] finStr = new int[parStr.length];
-		for(int i=0;i<parStr.length;i++)
-		{ finStr[i] = -1; } 
-		
-		for(int i=0;i<parStr.length;i++)
+		setRNA(seq.toCharArray(), parseDBNStructure(dbnStr.toCharArray(), dbnStr.length()));
+	}
+
+	/**
+	 * Parses the first <code>length</code> characters of a DBN structure,
+	 * possibly featuring pseudoknots denoted by square brackets and braces,
+	 * in a single pass. Parentheses take precedence over square brackets,
+	 * which take precedence over braces.
+	 *
+	 * @param dbn
+	 *            - The buffer holding the structure
+	 * @param length
+	 *            - The length of the structure
+	 * @return The partner of each position, or -1 if unpaired
+	 */
+	public static int[] parseDBNStructure(char[] dbn, int length)
+			throws ExceptionUnmatchedClosingParentheses, ExceptionFileFormatOrSyntax {
+		int[] parStr = new int[length];
+		int[] braStr = new int[length];
+		int[] accStr = new int[length];
+		int[] parStack = new int[length];
+		int[] braStack = new int[length];
+		int[] accStack = new int[length];
+		int parTop = 0;
+		int braTop = 0;
+		int accTop = 0;
+		int unexpectedChar = -1;
+		for (int i = 0; i < length; i++) {
+			parStr[i] = -1;
+			braStr[i] = -1;
+			accStr[i] = -1;
+			switch (dbn[i]) {
+			case '(':
+				parStack[parTop++] = i;
+				break;
+			case '[':
+				braStack[braTop++] = i;
+				break;
+			case '{':
+				accStack[accTop++] = i;
+				break;
+			case ')':
+				if (parTop == 0) {
+					throw new ExceptionUnmatchedClosingParentheses(i + 1);
+				}
+				parStr[i] = parStack[--parTop];
+				parStr[parStr[i]] = i;
+				break;
+			case ']':
+				if (braTop == 0) {
+					throw new ExceptionUnmatchedClosingParentheses(i + 1);
+				}
+				braStr[i] = braStack[--braTop];
+				braStr[braStr[i]] = i;
+				break;
+			case '}':
+				if (accTop == 0) {
+					throw new ExceptionUnmatchedClosingParentheses(i + 1);
+				}
+				accStr[i] = accStack[--accTop];
+				accStr[accStr[i]] = i;
+				break;
+			case '.':
+			case '-':
+			case ':':
+				break;
+			default:
+				if (unexpectedChar == -1)
+					unexpectedChar = i;
+			}
+		}
+		if (unexpectedChar != -1) {
+			throw new ExceptionFileFormatOrSyntax("Unexpected Character at index:" + unexpectedChar);
+		}
+		if (parTop != 0) {
+			throw new ExceptionUnmatchedClosingParentheses(parStack[parTop - 1] + 1);
+		}
+		if (braTop != 0) {
+			throw new ExceptionUnmatchedClosingParentheses(braStack[braTop - 1] + 1);
+		}
+		if (accTop != 0) {
+			throw new ExceptionUnmatchedClosingParentheses(accStack[accTop - 1] + 1);
+		}
+
+		int[] finStr = new int[length];
+		for(int i=0;i<length;i++)
+		{ finStr[i] = -1; }
+
+		for(int i=0;i<length;i++)
 		{
 			if (parStr[i]>i)
 			{
@@ -2187,7 +2471,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 				}
 			}
 		}
-		setRNA(seq.toCharArray(), finStr);
+		return finStr;
 	}
 
 	public int[] parseStruct(String str)
@@ -2228,12 +2512,32 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		return result;
 	}
 
+	/**
+	 * Returns the index of the loops and helices of the secondary structure,
+	 * or <code>null</code> if the structure is not planar.
+	 */
+	private RNAStructureIndex getStructureIndex() {
+		if (!_structureIndexed
+				|| (_structureVersion != getVersions()._structure)) {
+			_structureVersion = getVersions()._structure;
+			_structureIndex = RNAStructureIndex.build(getNonCrossingStruct());
+			_structureIndexed = true;
+		}
+		return _structureIndex;
+	}
+
 	public Point getHelixInterval(int index) {
 		if ((index < 0) || (index >= _listeBases.size())) {
 			return new Point(index, index);
 		}
 		int j = _listeBases.get(index).getElementStructure();
 		if (j != -1) {
+			RNAStructureIndex si = getStructureIndex();
+			if (si != null) {
+				int minH = si.getHelixStart(index);
+				return new Point(minH, _listeBases.get(minH)
+						.getElementStructure());
+			}
 			int minH = index;
 			int maxH = index;
 			if (j > index) {
@@ -2282,6 +2586,23 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		Point h = getHelixInterval(index);
 		int minH = h.x - 1;
 		int maxH = h.y + 1;
+		RNAStructureIndex si = getStructureIndex();
+		if (si != null) {
+			// Bounds of the loop from which the helix branches
+			if (minH < 0) {
+				minH = 0;
+			} else if (_listeBases.get(minH).getElementStructure() <= minH) {
+				minH = Math.max(0, si.getLoopOpening(si.getLoop(minH)));
+			}
+			if (maxH > _listeBases.size() - 1) {
+				maxH = _listeBases.size() - 1;
+			} else if (_listeBases.get(maxH).getElementStructure() == -1
+					|| _listeBases.get(maxH).getElementStructure() > maxH) {
+				int l = si.getLoop(maxH);
+				maxH = (l == 0) ? _listeBases.size() - 1 : si.getLoopClosing(l);
+			}
+			return new Point(minH, maxH);
+		}
 		boolean over = false;
 		while (!over) {
 			if (minH < 0) {
@@ -2321,6 +2642,16 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		if ((startIndex < 0) || (startIndex >= _listeBases.size())) {
 			return result;
 		}
+		RNAStructureIndex si = getStructureIndex();
+		if (si != null) {
+			int l = si.getLoop(startIndex);
+			int size = si.getLoopSize(l);
+			int pos = si.getPositionInLoop(startIndex);
+			for (int k = 0; k < size; k++) {
+				result.add(si.getLoopMember(l, (pos + k) % size));
+			}
+			return result;
+		}
 		int index = startIndex;
 		result.add(startIndex);
 		if (_listeBases.get(index).getElementStructure() <= index) {
@@ -2351,32 +2682,47 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	 * @return This panel's secondary structure
 	 */
 	public String getStructDBN() {
-		String result = "";
+		StringWriter result = new StringWriter(_listeBases.size());
+		try {
+			writeStructDBN(result);
+		} catch (IOException e) {
+			// Never happens on a StringWriter
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes the planar structure in dot-bracket notation, without any line
+	 * terminator.
+	 *
+	 * @param w
+	 *            - The destination, preferably buffered
+	 */
+	public void writeStructDBN(Writer w) throws IOException {
 		for (int i = 0; i < _listeBases.size(); i++) {
 			int j = _listeBases.get(i).getElementStructure();
 			if (j == -1) {
-				result += ".";
+				w.write('.');
 			} else if (i > j) {
-				result += ")";
+				w.write(')');
 			} else {
-				result += "(";
+				w.write('(');
 			}
 		}
-		return result;
 	}
 
 	public String getStructDBN(int[] str) {
-		String result = "";
+		char[] result = new char[str.length];
 		for (int i = 0; i < str.length; i++) {
 			if (str[i] == -1) {
-				result += ".";
+				result[i] = '.';
 			} else if (str[i] > i) {
-				result += "(";
+				result[i] = '(';
 			} else {
-				result += ")";
+				result[i] = ')';
 			}
 		}
-		return result;
+		return new String(result);
 	}
 
 	/**
@@ -2400,26 +2746,42 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	}
 
 	public String getStructBPSEQ() {
-		String result = "";
+		StringWriter result = new StringWriter();
+		try {
+			writeStructBPSEQ(result);
+		} catch (IOException e) {
+			// Never happens on a StringWriter
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes the structure in BPSEQ format, one line per base.
+	 *
+	 * @param w
+	 *            - The destination, preferably buffered
+	 */
+	public void writeStructBPSEQ(Writer w) throws IOException {
 		if (_comparisonMode) {
 			for (int i = 0; i < _listeBases.size(); i++) {
-				result += (i + 1)
-						+ " "
-						+ ((ModeleBasesComparison) _listeBases.get(i))
-								.getBases() + " "
-						+ (_listeBases.get(i).getElementStructure() + 1)
-						+ "\n";
+				w.write(Integer.toString(i + 1));
+				w.write(' ');
+				w.write(((ModeleBasesComparison) _listeBases.get(i)).getBases());
+				w.write(' ');
+				w.write(Integer.toString(_listeBases.get(i).getElementStructure() + 1));
+				w.write('\n');
 			}
 		} else {
 			int[] str = getNonOverlappingStruct();
 			for (int i = 0; i < _listeBases.size(); i++) {
-				result += (i + 1) + " "
-						+ ((ModeleBaseNucleotide) _listeBases.get(i)).get_c()
-						+ " " + (str[i] + 1)
-						+ "\n";
+				w.write(Integer.toString(i + 1));
+				w.write(' ');
+				w.write(((ModeleBaseNucleotide) _listeBases.get(i)).get_c().charValue());
+				w.write(' ');
+				w.write(Integer.toString(str[i] + 1));
+				w.write('\n');
 			}
 		}
-		return result;
 	}
 	
 	public int[] getNonCrossingStruct()
@@ -2453,35 +2815,59 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	
 	
 	public String getStructCT() {
-		String result = "";
-		if (_comparisonMode) {
-			for (int i = 0; i < _listeBases.size(); i++) {
-				result += (i + 1)
-						+ " "
-						+ ((ModeleBasesComparison) _listeBases.get(i))
-								.getBases() + " " + i + " " + (i + 2) + " "
-						+ (_listeBases.get(i).getElementStructure() + 1) + " "
-						+ (i + 1) + "\n";
+		StringWriter result = new StringWriter();
+		try {
+			writeStructCT(result);
+		} catch (IOException e) {
+			// Never happens on a StringWriter
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes the structure in CT format, one line per base, without the
+	 * header line.
+	 *
+	 * @param w
+	 *            - The destination, preferably buffered
+	 */
+	public void writeStructCT(Writer w) throws IOException {
+		int[] str = null;
+		if (!_comparisonMode) {
+			str = getNonOverlappingStruct();
+		}
+		for (int i = 0; i < _listeBases.size(); i++) {
+			ModeleBase mb = _listeBases.get(i);
+			w.write(Integer.toString(i + 1));
+			w.write(' ');
+			if (_comparisonMode) {
+				w.write(((ModeleBasesComparison) mb).getBases());
+			} else {
+				w.write(((ModeleBaseNucleotide) mb).get_c().charValue());
 			}
-		} else {
-			int[] str = getNonOverlappingStruct();
-			for (int i = 0; i < _listeBases.size(); i++) {
-				result += (i + 1) + " "
-						+ ((ModeleBaseNucleotide) _listeBases.get(i)).get_c()
-						+ " " + i + " " + (i + 2) + " "
-						+ (str[i] + 1) + " "
-						+ (i + 1) + "\n";
+			w.write(' ');
+			w.write(Integer.toString(i));
+			w.write(' ');
+			w.write(Integer.toString(i + 2));
+			w.write(' ');
+			if (_comparisonMode) {
+				w.write(Integer.toString(mb.getElementStructure() + 1));
+			} else {
+				w.write(Integer.toString(str[i] + 1));
 			}
+			w.write(' ');
+			w.write(Integer.toString(i + 1));
+			w.write('\n');
 		}
-		return result;
 	}
 
 	public void saveAsBPSEQ(String path, String title)
 			throws ExceptionExportFailed, ExceptionPermissionDenied {
 		try {
-			FileWriter f = new FileWriter(path);
+			Writer f = CompressedFiles.openWriter(path);
 			f.write("# " + title + "\n");
-			f.write(this.getStructBPSEQ() + "\n");
+			writeStructBPSEQ(f);
+			f.write("\n");
 			f.close();
 		} catch (IOException e) {
 			throw new ExceptionExportFailed(e.getMessage(), path);
@@ -2491,9 +2877,10 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public void saveAsCT(String path, String title)
 			throws ExceptionExportFailed, ExceptionPermissionDenied {
 		try {
-			FileWriter f = new FileWriter(path);
+			Writer f = CompressedFiles.openWriter(path);
 			f.write("" + _listeBases.size() + " " + title + "\n");
-			f.write(this.getStructCT() + "\n");
+			writeStructCT(f);
+			f.write("\n");
 			f.close();
 		} catch (IOException e) {
 			throw new ExceptionExportFailed(e.getMessage(), path);
@@ -2503,38 +2890,85 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	public void saveAsDBN(String path, String title)
 			throws ExceptionExportFailed, ExceptionPermissionDenied {
 		try {
-			FileWriter f = new FileWriter(path);
+			Writer f = CompressedFiles.openWriter(path);
 			f.write("> " + title + "\n");
-			f.write(getListeBasesToString() + "\n");
-			f.write(getStructDBN() + "\n");
+			writeListeBases(f);
+			f.write("\n");
+			writeStructDBN(f);
+			f.write("\n");
 			f.close();
 		} catch (IOException e) {
 			throw new ExceptionExportFailed(e.getMessage(), path);
 		}
 	}
 
+	/**
+	 * Saves the RNA in the compact binary format described in
+	 * RNABinaryFormat, which loads much faster than the textual formats.
+	 *
+	 * @param path
+	 *            - The path of the file
+	 * @param title
+	 *            - The title stored along with the structure
+	 */
+	public void saveAsBinary(String path, String title)
+			throws ExceptionExportFailed, ExceptionPermissionDenied {
+		if (_comparisonMode) {
+			throw new ExceptionExportFailed(
+					"Comparison mode is not supported by the binary format",
+					path);
+		}
+		try {
+			OutputStream f = CompressedFiles.openOutputStream(path);
+			try {
+				RNABinaryFormat.write(this, title, f);
+			} finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			throw new ExceptionExportFailed(e.getMessage(), path);
+		}
+	}
+
 	public String getListeBasesToString() {
-		String s = new String();
+		StringWriter s = new StringWriter(_listeBases.size());
+		try {
+			writeListeBases(s);
+		} catch (IOException e) {
+			// Never happens on a StringWriter
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Writes the sequence of the RNA, without any line terminator.
+	 *
+	 * @param w
+	 *            - The destination, preferably buffered
+	 */
+	public void writeListeBases(Writer w) throws IOException {
 		if (_comparisonMode) {
 			for (int i = 0; i < _listeBases.size(); i++) {
-				s += ((ModeleBasesComparison) _listeBases.get(i)).getBases();
+				w.write(((ModeleBasesComparison) _listeBases.get(i)).getBases());
 			}
 		} else {
 			for (int i = 0; i < _listeBases.size(); i++) {
-				s += ((ModeleBaseNucleotide) _listeBases.get(i)).get_c();
+				w.write(((ModeleBaseNucleotide) _listeBases.get(i)).get_c().charValue());
 			}
 		}
-		return s;
 	}
 
 	private boolean loadSecStrBPSEQ(Reader r) throws ExceptionPermissionDenied,
 			ExceptionLoadingFailed, ExceptionFileFormatOrSyntax {
+		return loadSecStrBPSEQ(new LineTokenizer(r));
+	}
+
+	private boolean loadSecStrBPSEQ(LineTokenizer fr) throws ExceptionPermissionDenied,
+			ExceptionLoadingFailed, ExceptionFileFormatOrSyntax {
 		boolean loadOk = false;
 		try {
-			BufferedReader fr = new BufferedReader(r);
-			String line = fr.readLine();
-			String seqTmp = "";
-			Vector<Integer> strTmp = new Vector<Integer>();
+			StringBuilder seqTmp = new StringBuilder();
+			int[] strTmp = new int[256];
 
 			int bpFrom;
 			char base;
@@ -2545,19 +2979,22 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 			String filenameStr = "Filename:";
 			String organismStr = "Organism:";
 			String ANStr = "Accession Number:";
-			while (line != null) {
-				line = line.trim();
-				String[] tokens = line.split("\\s+");
-				if (tokens.length == 3 && !tokens[0].contains("#")&& !line.startsWith("Organism:")
-						 && !line.startsWith("Filename:")&& !line.startsWith("Accession Number:")) 
+			while (fr.readLine()) {
+				int numTokens = fr.getNumTokens();
+				if (numTokens == 0) {
+					continue;
+				}
+				if (numTokens == 3 && !fr.tokenContains(0, '#')) 
 				{
-						base = tokens[1].charAt(tokens[1].length() - 1);
+					if (!fr.lineStartsWith(organismStr) && !fr.lineStartsWith(filenameStr)
+							&& !fr.lineStartsWith(ANStr)) {
+						base = fr.getTokenLastChar(1);
+
+						bpFrom = fr.getTokenAsInt(0);
+						bpTo = fr.getTokenAsInt(2);
 
-						bpFrom = (Integer.parseInt(tokens[0]));
-						bpTo = (Integer.parseInt(tokens[2]));
-						
 						if (minIndex<0)
-    						minIndex = bpFrom;
+							minIndex = bpFrom;
 						bpFrom -= minIndex; 
 						if (bpTo!=0)
 						  bpTo -= minIndex;
@@ -2574,27 +3011,34 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 										+ "!\nFilling in missing portions with unpaired unknown 'X' nucleotides ...");
 							}
 							while (bpFrom != seqTmp.length()) {
-								seqTmp += 'X';
-								strTmp.add(-1);
+								strTmp = ensureCapacity(strTmp, seqTmp.length() + 1);
+								strTmp[seqTmp.length()] = -1;
+								seqTmp.append('X');
 							}
 						}
-						seqTmp += base;
-						strTmp.add(bpTo);
+						strTmp = ensureCapacity(strTmp, seqTmp.length() + 1);
+						strTmp[seqTmp.length()] = bpTo;
+						seqTmp.append(base);
+						continue;
+					}
 				}
-				else if (tokens[0].startsWith("#"))
+				if (fr.getTokenFirstChar(0) == '#')
 				{
+					String line = fr.getTrimmedLine();
 					int occur = line.indexOf("#");
 					String tmp = line.substring(occur+1);
 					title += tmp.trim()+" ";
 				}
-				else if (tokens[0].startsWith(filenameStr))
+				else if (fr.lineStartsWith(filenameStr))
 				{
+					String line = fr.getTrimmedLine();
 					int occur = line.indexOf(filenameStr);
 					String tmp = line.substring(occur+filenameStr.length());
 					title += tmp.trim();
 				}
-				else if (tokens[0].startsWith(organismStr))
+				else if (fr.lineStartsWith(organismStr))
 				{
+					String line = fr.getTrimmedLine();
 					int occur = line.indexOf(organismStr);
 					String tmp = line.substring(occur+organismStr.length());
 					if (title.length()!=0)
@@ -2603,8 +3047,9 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 					}
 					title = tmp.trim() + title;
 				}
-				else if (line.contains(ANStr))
+				else if (fr.lineContains(ANStr))
 				{
+					String line = fr.getTrimmedLine();
 					int occur = line.indexOf(ANStr);
 					String tmp = line.substring(occur+ANStr.length());
 					if (title.length()!=0)
@@ -2613,14 +3058,12 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 					}
 					title +="("+tmp.trim()+")";
 				}
-				line = fr.readLine();
 			}
-			if (strTmp.size() != 0) {
-				char[] seq = seqTmp.toCharArray();
-				int[] str = new int[strTmp.size()];
-				for (int i = 0; i < strTmp.size(); i++) {
-					str[i] = strTmp.elementAt(i).intValue();
-				}
+			if (seqTmp.length() != 0) {
+				char[] seq = new char[seqTmp.length()];
+				seqTmp.getChars(0, seq.length, seq, 0);
+				int[] str = new int[seq.length];
+				System.arraycopy(strTmp, 0, str, 0, str.length);
 				
 				setRNA(seq, str, minIndex);
 				setName(title);
@@ -2638,25 +3081,27 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 
 	private boolean loadSecStrCT(Reader r) throws ExceptionPermissionDenied,
 			ExceptionLoadingFailed, ExceptionFileFormatOrSyntax {
+		return loadSecStrCT(new LineTokenizer(r));
+	}
+
+	private boolean loadSecStrCT(LineTokenizer fr) throws ExceptionPermissionDenied,
+			ExceptionLoadingFailed, ExceptionFileFormatOrSyntax {
 		boolean loadOk = false;
 		try {
-			BufferedReader fr = new BufferedReader(r);
-			String line = fr.readLine();
-			String seqTmp = "";
-			Vector<Integer> strTmp = new Vector<Integer>();
+			StringBuilder seqTmp = new StringBuilder();
+			int[] strTmp = new int[256];
 			int bpFrom;
 			char base;
 			int bpTo;
 			boolean noWarningYet = true;
 			int minIndex = -1;
 			String title = "";
-			while (line != null) {
-				line = line.trim();
-				String[] tokens = line.split("\\s+");
-				if (tokens.length >= 6) {
+			while (fr.readLine()) {
+				int numTokens = fr.getNumTokens();
+				if (numTokens >= 6) {
 					try{
-					bpFrom = (Integer.parseInt(tokens[0]));
-					bpTo = (Integer.parseInt(tokens[4]));
+					bpFrom = fr.getTokenAsInt(0);
+					bpTo = fr.getTokenAsInt(4);
 					if (minIndex==-1)
 						minIndex = bpFrom;
 					bpFrom -= minIndex;
@@ -2664,10 +3109,10 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 						bpTo -= minIndex;
 					else
 						bpTo = -1;
-					base = tokens[1].charAt(tokens[1].length() - 1);
-					Integer.parseInt(tokens[2]);
-					Integer.parseInt(tokens[3]);
-					Integer.parseInt(tokens[5]);
+					base = fr.getTokenLastChar(1);
+					fr.getTokenAsInt(2);
+					fr.getTokenAsInt(3);
+					fr.getTokenAsInt(5);
 					if (bpFrom != seqTmp.length()) {
 						if (noWarningYet) {
 							noWarningYet = false;
@@ -2678,37 +3123,37 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 									+ "!\nFilling in missing portions with unpaired unknown 'X' nucleotides ...");
 						}
 						while (bpFrom != seqTmp.length()) {
-							seqTmp += 'X';
-							strTmp.add(-1);
+							strTmp = ensureCapacity(strTmp, seqTmp.length() + 1);
+							strTmp[seqTmp.length()] = -1;
+							seqTmp.append('X');
 						}
 					}
-					seqTmp += base;
-					strTmp.add(bpTo);
+					strTmp = ensureCapacity(strTmp, seqTmp.length() + 1);
+					strTmp[seqTmp.length()] = bpTo;
+					seqTmp.append(base);
+					continue;
 					}
 					catch (NumberFormatException e) {
 						}
 				}
-				if ((line.contains("ENERGY = "))||line.contains("dG = ")) 
+				if (numTokens >= 4) 
 				{
-					String[] ntokens = line.split("\\s+");
-					if (ntokens.length>=4)
+					if (fr.lineContains("ENERGY = ") || fr.lineContains("dG = ")) 
 					{
-						String energy = ntokens[3];
-						for(int i=4;i<ntokens.length;i++)
+						String energy = fr.getToken(3);
+						for(int i=4;i<numTokens;i++)
 						{
-							title += ntokens[i]+" ";
+							title += fr.getToken(i)+" ";
 						}
 						title += "(E="+energy+" KCal/Mol)";
 					}
 				}
-				line = fr.readLine();
 			}
-			if (strTmp.size() != 0) {
-				char[] seq = seqTmp.toCharArray();
-				int[] str = new int[strTmp.size()];
-				for (int i = 0; i < strTmp.size(); i++) {
-					str[i] = strTmp.elementAt(i).intValue();
-				}
+			if (seqTmp.length() != 0) {
+				char[] seq = new char[seqTmp.length()];
+				seqTmp.getChars(0, seq.length, seq, 0);
+				int[] str = new int[seq.length];
+				System.arraycopy(strTmp, 0, str, 0, str.length);
 				setRNA(seq, str, minIndex);
 				setName(title);
 				loadOk = true;
@@ -2721,25 +3166,25 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		return loadOk;
 	}
 
+	/**
+	 * Returns an array holding at least <code>size</code> elements, growing
+	 * the given one geometrically if needed.
+	 */
+	private static int[] ensureCapacity(int[] a, int size) {
+		if (size <= a.length) {
+			return a;
+		}
+		int[] result = new int[Math.max(size, 2 * a.length)];
+		System.arraycopy(a, 0, result, 0, a.length);
+		return result;
+	}
+
 	private boolean loadSecStrRNAML(Reader r) throws ExceptionPermissionDenied,
 			ExceptionLoadingFailed, ExceptionFileFormatOrSyntax {
 		boolean loadOk = false;
 		try {
-			System.setProperty("javax.xml.parsers.SAXParserFactory", "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl");
-			SAXParserFactory saxFact = javax.xml.parsers.SAXParserFactory.newInstance();
-			saxFact.setValidating(false);
-			saxFact.setXIncludeAware(false);
-			saxFact.setNamespaceAware(false);
-			SAXParser sp = saxFact.newSAXParser();
 			RNAMLParser RNAMLData = new RNAMLParser();
-			sp.parse(new InputSource(r), RNAMLData);
-			
-			/*XMLReader xr = XMLReaderFactory.createXMLReader();
-			RNAMLParser RNAMLData = new RNAMLParser();
-			xr.setContentHandler(RNAMLData);
-			xr.setErrorHandler(RNAMLData);
-			xr.setEntityResolver(RNAMLData);
-			xr.parse(new InputSource(r));*/
+			RNAMLData.parse(r);
 
 			setRNA(RNAMLData.getSequence(), RNAMLData.getBasicPlanarStructure());
 			Vector<RNAMLParser.BPTemp> bps = RNAMLData.getPlanarBPs();
@@ -2754,10 +3199,10 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 				part.setStyleBP(newStyle);
 			}
 
-			Vector<Integer> basenumbers = RNAMLData.getBaseNumbers();
+			int[] basenumbers = RNAMLData.getBaseNumbersArray();
 			for (int i = 0; i < _listeBases.size(); i++) {
 				ModeleBase n =  _listeBases.get(i);
-				n.setBaseNumber(basenumbers.get(i));
+				n.setBaseNumber(basenumbers[i]);
 			}
 
 			Vector<RNAMLParser.BPTemp> bpsAux = RNAMLData.getAuxBPs();
@@ -2775,10 +3220,24 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 			}
 			loadOk = true;
 
-		} catch (IOException ioe) {
-			throw new ExceptionLoadingFailed(
-					"Couldn't load file due to I/O or security policy issues.",
-					"");
+		} catch (XMLStreamException xe) {
+			if (xe.getNestedException() instanceof IOException) {
+				throw new ExceptionLoadingFailed(
+						"Couldn't load file due to I/O or security policy issues.",
+						"");
+			}
+			String error = xe.getMessage();
+			if (xe.getLocation() != null) {
+				// Drops the location header of the JDK parser messages
+				int msg = error.indexOf("Message: ");
+				if (msg >= 0) {
+					error = error.substring(msg + "Message: ".length());
+				}
+				error = "Line " + xe.getLocation().getLineNumber()
+						+ ", column " + xe.getLocation().getColumnNumber()
+						+ ": " + error;
+			}
+			throw new ExceptionFileFormatOrSyntax(error, "");
 		} catch (Exception ge) {
           ge.printStackTrace();
 		}
@@ -2788,37 +3247,20 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	private boolean loadSecStrDBN(Reader r) throws ExceptionLoadingFailed,
 			ExceptionPermissionDenied, ExceptionUnmatchedClosingParentheses,
 			ExceptionFileFormatOrSyntax {
-		boolean loadOk = false;
-		try {
-			BufferedReader fr = new BufferedReader(r);
-			String line = fr.readLine();
-			String title = "";
-			String seqTmp = "";
-			String strTmp = "";
-			while ((line != null) && (strTmp.equals(""))) {
-				line = line.trim();
-				if (!line.startsWith(">")) {
-					if (seqTmp.equals("")) {
-						seqTmp = line;
-					} else {
-						strTmp = line;
-					}
-				}
-				else
-				{
-					title = line.substring(1).trim();
-				}
-				line = fr.readLine();
-			}
-			if (strTmp.length() != 0) {
-				setRNA(seqTmp, strTmp);
-				this.setName(title);
-				loadOk = true;
-			}
-		} catch (IOException e) {
-			throw new ExceptionLoadingFailed(e.getMessage(), "");
-		}
-		return loadOk;
+		// Only the first record is loaded, see DBNRecordReader for multi-record files
+		return new DBNRecordReader(r).readInto(this);
+	}
+
+	/**
+	 * Returns an iterator over the records of a (possibly multi-record) DBN
+	 * stream. Records are parsed lazily, one at a time.
+	 *
+	 * @param r
+	 *            - The reader for the DBN content
+	 * @return An iterator over the RNAs described by the stream
+	 */
+	public static DBNRecordReader loadSecStrDBNRecords(Reader r) {
+		return new DBNRecordReader(r);
 	}
 
 	public void loadSecStr(Reader r) throws ExceptionFileFormatOrSyntax {
@@ -2858,68 +3300,117 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 				try {
 					boolean ok = loadSecStrRNAML(r);
 					if (ok) return;
+				} catch (ExceptionFileFormatOrSyntax e) {
+					throw e;
 				} catch (Exception e) { }
 			}
 			break;
 			case (FILE_TYPE_UNKNOWN):
 			{
 				BufferedReader buf = new BufferedReader(r);
-
+				int guessedType = FILE_TYPE_UNKNOWN;
 				try {
-					buf.mark(1000000);
-					try {
-						boolean ok = loadSecStrCT(buf);
-						if (ok)
-							return;
-					} catch (Exception e) {
-					}
-					buf.reset();
-					try {
-						boolean ok = loadSecStrBPSEQ(buf);
-						if (ok)
-							return;
-					} catch (Exception e) {
-					}
-					buf.reset();
-					try {
-						boolean ok = loadSecStrDBN(buf);
-						if (ok)
-							return;
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-					buf.reset();
-					try {
-						boolean ok = loadSecStrRNAML(buf);
-						if (ok)
-							return;
-					} catch (ExceptionLoadingFailed e2)
-					{
-						e2.printStackTrace();
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-					try {
-						boolean ok = loadSecStrRNAML(buf);
-						if (ok)
-							return;
-					} catch (ExceptionLoadingFailed e2)
-					{
-						e2.printStackTrace();
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-					buf.reset();
-				} catch (IOException e2) {
-					e2.printStackTrace();
+					guessedType = guessFileTypeFromContent(buf);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				if (guessedType != FILE_TYPE_UNKNOWN) {
+					loadSecStr(buf, guessedType);
+					return;
 				}
 			}
 		}		
 		throw new ExceptionFileFormatOrSyntax("");
 	}
 
+	/**
+	 * Number of leading characters inspected by guessFileTypeFromContent
+	 */
+	private static final int FORMAT_SNIFF_SIZE = 8192;
+
+	/**
+	 * Guesses the format of a secondary structure from its first few
+	 * kilobytes. The reader is reset to its initial position before
+	 * returning, so that the chosen parser can stream the whole content.
+	 *
+	 * @param buf
+	 *            - A reader supporting marks, positioned at the beginning of
+	 *            the content
+	 * @return One of the FILE_TYPE_* constants, FILE_TYPE_UNKNOWN if the
+	 *         content matches none of the supported formats
+	 */
+	public static int guessFileTypeFromContent(BufferedReader buf)
+			throws IOException {
+		char[] sample = new char[FORMAT_SNIFF_SIZE];
+		buf.mark(FORMAT_SNIFF_SIZE);
+		int len = 0;
+		int n = 0;
+		while ((len < sample.length)
+				&& ((n = buf.read(sample, len, sample.length - len)) > 0)) {
+			len += n;
+		}
+		buf.reset();
+		boolean truncated = (len == sample.length);
+
+		LineTokenizer lines = new LineTokenizer(new CharArrayReader(sample, 0, len));
+		int numLines = 0;
+		int ctLines = 0;
+		int bpseqLines = 0;
+		boolean first = true;
+		while (lines.readLine()) {
+			int numTokens = lines.getNumTokens();
+			if (numTokens == 0) {
+				continue;
+			}
+			char c = lines.getTokenFirstChar(0);
+			if (first) {
+				first = false;
+				if (c == '<') {
+					return FILE_TYPE_RNAML;
+				}
+				if (c == '>') {
+					return FILE_TYPE_DBN;
+				}
+			}
+			numLines++;
+			if (c == '#') {
+				continue;
+			}
+			if ((numTokens >= 6) && isIntToken(lines, 0) && isIntToken(lines, 2)
+					&& isIntToken(lines, 3) && isIntToken(lines, 4)
+					&& isIntToken(lines, 5)) {
+				ctLines++;
+			} else if ((numTokens == 3) && isIntToken(lines, 0)
+					&& isIntToken(lines, 2)) {
+				bpseqLines++;
+			}
+		}
+		if ((ctLines > 0) && (ctLines >= bpseqLines)) {
+			return FILE_TYPE_CT;
+		}
+		if (bpseqLines > 0) {
+			return FILE_TYPE_BPSEQ;
+		}
+		// A truncated sample without any numbered line is most likely a long
+		// sequence, on a single line
+		if ((numLines >= 2) || truncated) {
+			return FILE_TYPE_DBN;
+		}
+		return FILE_TYPE_UNKNOWN;
+	}
+
+	private static boolean isIntToken(LineTokenizer lines, int k) {
+		try {
+			lines.getTokenAsInt(k);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
 	public static int guessFileTypeFromExtension(String path)
 	{
+		path = CompressedFiles.stripCompressionExtension(path);
 		if (path.toLowerCase().endsWith("ml"))
 		{ return RNA.FILE_TYPE_RNAML; }
 		else if (path.toLowerCase().endsWith("dbn")||path.toLowerCase().endsWith("faa"))
@@ -2928,6 +3419,8 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		{ return RNA.FILE_TYPE_CT; }
 		else if (path.toLowerCase().endsWith("bpseq"))
 		{ return RNA.FILE_TYPE_BPSEQ; }
+		else if (path.toLowerCase().endsWith("vrnb"))
+		{ return RNA.FILE_TYPE_BINARY; }
 		
 		return RNA.FILE_TYPE_UNKNOWN; 			
 
@@ -2937,21 +3430,110 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 			ExceptionPermissionDenied, ExceptionLoadingFailed,
 			ExceptionFileFormatOrSyntax, ExceptionUnmatchedClosingParentheses,
 			FileNotFoundException {
-		FileReader fr = null;
+		int type = guessFileTypeFromExtension(path);
+		if ((type == FILE_TYPE_BINARY) || ((type == FILE_TYPE_UNKNOWN) && isBinaryFile(path))) {
+			loadSecStrBinary(path);
+			return;
+		}
+		FileInputStream in = new FileInputStream(path);
+		try {
+			loadSecStr(new InputStreamReader(CompressedFiles.decompress(in)), type);
+		} catch (IOException e) {
+			throw new ExceptionLoadingFailed(e.getMessage(), path);
+		} catch (ExceptionFileFormatOrSyntax e) {
+			e.setPath(path);
+			throw e;
+		} finally {
+			try {in.close();} catch(IOException e2){}
+		}
+	}
+
+	private static boolean isBinaryFile(String path) throws FileNotFoundException {
+		FileInputStream in = new FileInputStream(path);
+		try {
+			return RNABinaryFormat.hasMagicNumber(CompressedFiles.decompress(in));
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {in.close();} catch(IOException e2){}
+		}
+	}
+
+	/**
+	 * Loads a structure saved by saveAsBinary.
+	 *
+	 * @param path
+	 *            - The path of the file
+	 */
+	public void loadSecStrBinary(String path) throws ExceptionLoadingFailed,
+			ExceptionFileFormatOrSyntax, FileNotFoundException {
+		FileInputStream in = new FileInputStream(path);
 		try {
-			fr = new FileReader(path); 
-			int type = guessFileTypeFromExtension(path);
-			loadSecStr(fr,type);
+			RNABinaryFormat.read(this, CompressedFiles.decompress(in));
+		} catch (IOException e) {
+			throw new ExceptionLoadingFailed(e.getMessage(), path);
 		} catch (ExceptionFileFormatOrSyntax e) {
-			if (fr != null)
-				try {fr.close();} catch(IOException e2){}
 			e.setPath(path);
 			throw e;
+		} finally {
+			try {in.close();} catch(IOException e2){}
+		}
+	}
+
+	/**
+	 * Loads a CT or BPSEQ file through memory-mapping, which avoids any per-line
+	 * allocation and is best suited to very large files. Files in other formats,
+	 * or compressed files, are loaded as in loadSecStr(String).
+	 *
+	 * @param path
+	 *            - The path of the file
+	 */
+	public void loadSecStrMapped(String path) throws ExceptionExportFailed,
+			ExceptionPermissionDenied, ExceptionLoadingFailed,
+			ExceptionFileFormatOrSyntax, ExceptionUnmatchedClosingParentheses,
+			FileNotFoundException {
+		int type = guessFileTypeFromExtension(path);
+		boolean compressed = false;
+		try {
+			compressed = CompressedFiles.isGzipped(path);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new ExceptionLoadingFailed(e.getMessage(), path);
+		}
+		if (((type != FILE_TYPE_CT) && (type != FILE_TYPE_BPSEQ)) || compressed) {
+			loadSecStr(path);
+			return;
+		}
+		FileInputStream in = new FileInputStream(path);
+		LineTokenizer lines = null;
+		boolean ok = false;
+		try {
+			lines = new LineTokenizer(in.getChannel());
+			if (type == FILE_TYPE_CT) {
+				ok = loadSecStrCT(lines);
+			} else {
+				ok = loadSecStrBPSEQ(lines);
+			}
+		} catch (IOException e) {
+			throw new ExceptionLoadingFailed(e.getMessage(), path);
+		} catch (ExceptionFileFormatOrSyntax e) {
+			e.setPath(path);
+			throw e;
+		} finally {
+			try {in.close();} catch(IOException e2){}
+		}
+		if (!ok) {
+			throw new ExceptionFileFormatOrSyntax(path);
 		}
 	}
 
 	public void set_listeBases(ArrayList<ModeleBase> _liste) {
+		keepPreviousLayout();
 		this._listeBases = _liste;
+		_baseValues = null;
+		invalidateIndices();
+		adoptBases();
 	}
 
 	public void addVARNAListener(InterfaceVARNAListener rl) {
@@ -2966,8 +3548,9 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 
 	public void applyStyleOnBases(ArrayList<Integer> basesList,
 			ModeleStyleBase style) {
+		ModeleStyleBase shared = ModeleStyleBase.intern(style);
 		for (int i = 1; i < basesList.size(); i++) {
-			_listeBases.get(basesList.get(i)).setStyleBase(style);
+			_listeBases.get(basesList.get(i)).setStyleBase(shared);
 		}
 	}
 
@@ -2995,6 +3578,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 
 		int[] planarSubset = RNAMLParser.planarize(str);
 		_structureAux.clear();
+		_auxBPsByBase = null;
 
 		for (int i = 0; i < planarSubset.length; i++) {
 			_listeBases.get(i).setElementStructure(planarSubset[i]);
@@ -3094,6 +3678,13 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 			return cptHelice;
 		int i = indice;
 		int j = get_listeBases().get(i).getElementStructure();
+		RNAStructureIndex si = getStructureIndex();
+		if (si != null) {
+			if ((j != -1) && (j < i)) {
+				return si.getNumHelices(si.getClosedLoop(i));
+			}
+			return si.getNumHelices(si.getLoop(i));
+		}
 		// Only way to distinguish "supporting base-pair" from others
 		boolean justJumped = false;
 		if ((j != -1) && (j < i)) {
@@ -3300,17 +3891,109 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		return _drawn;
 	}
 
+	void setDrawn(boolean drawn) {
+		_drawn = drawn;
+	}
+
 	public ArrayList<ModeleStyleBP> getStructureAux() {
 		return _structureAux;
 	}
 
+	/**
+	 * Returns the index of the first base having a given number, or -1 if no
+	 * base has this number. Runs in constant time, once the bases are indexed
+	 * by number.
+	 */
 	public int getIndexFromBaseNumber(int num) {
-		for (int i = 0; i < this._listeBases.size(); i++) {
-			if (_listeBases.get(i).getBaseNumber() == num) {
-				return i;
+		if (!_baseNumbersIndexed
+				|| (_baseNumbersVersion != getVersions()._numbering)) {
+			indexBaseNumbers();
+		}
+		int i = num - _baseNumberOffset;
+		if (_indexFromBaseNumber != null) {
+			if ((i < 0) || (i >= _indexFromBaseNumber.length)) {
+				return -1;
 			}
+			return _indexFromBaseNumber[i];
 		}
-		return -1;
+		if (_sparseIndexFromBaseNumber != null) {
+			Integer result = _sparseIndexFromBaseNumber.get(num);
+			return (result == null) ? -1 : result;
+		}
+		if ((i < 0) || (i >= _listeBases.size())) {
+			return -1;
+		}
+		return i;
+	}
+
+	/**
+	 * Attaches the bases to the change counters of this RNA, which then
+	 * tracks the changes made to them directly.
+	 */
+	private void adoptBases() {
+		if (_versions == null) {
+			_versions = new ModeleBase.Versions();
+		}
+		for (int i = 0; i < _listeBases.size(); i++) {
+			_listeBases.get(i).setVersions(_versions);
+		}
+	}
+
+	private ModeleBase.Versions getVersions() {
+		if (_versions == null) {
+			// Bases read from a serialized RNA are attached on first use
+			adoptBases();
+		}
+		return _versions;
+	}
+
+	private void invalidateIndices() {
+		invalidateBaseNumbers();
+		_structureIndexed = false;
+		_structureIndex = null;
+	}
+
+	private void invalidateBaseNumbers() {
+		_baseNumbersIndexed = false;
+		_indexFromBaseNumber = null;
+		_sparseIndexFromBaseNumber = null;
+	}
+
+	private void indexBaseNumbers() {
+		invalidateBaseNumbers();
+		_baseNumbersVersion = getVersions()._numbering;
+		int n = _listeBases.size();
+		_baseNumberOffset = 0;
+		if (n > 0) {
+			int first = _listeBases.get(0).getBaseNumber();
+			int min = first;
+			int max = first;
+			boolean consecutive = true;
+			for (int i = 1; i < n; i++) {
+				int num = _listeBases.get(i).getBaseNumber();
+				consecutive &= (num == first + i);
+				min = Math.min(min, num);
+				max = Math.max(max, num);
+			}
+			_baseNumberOffset = min;
+			if (!consecutive) {
+				if ((long) max - min < 4L * n) {
+					_indexFromBaseNumber = new int[max - min + 1];
+					Arrays.fill(_indexFromBaseNumber, -1);
+					for (int i = n - 1; i >= 0; i--) {
+						_indexFromBaseNumber[_listeBases.get(i).getBaseNumber()
+								- min] = i;
+					}
+				} else {
+					_sparseIndexFromBaseNumber = new Hashtable<Integer, Integer>();
+					for (int i = n - 1; i >= 0; i--) {
+						_sparseIndexFromBaseNumber.put(_listeBases.get(i)
+								.getBaseNumber(), i);
+					}
+				}
+			}
+		}
+		_baseNumbersIndexed = true;
 	}
 
 	/**
@@ -3417,7 +4100,57 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		ModeleBase part3 = _listeBases.get(j);
 		msbp.setPartner5(part5);
 		msbp.setPartner3(part3);
+		boolean indexed = (_auxBPsByBase != null)
+				&& (_auxBPsIndexedVersion == getAuxBPsVersion());
 		_structureAux.add(msbp);
+		if (indexed) {
+			indexAuxBP(msbp);
+			_auxBPsIndexedVersion = getAuxBPsVersion();
+		}
+	}
+
+	private int getAuxBPsVersion() {
+		return ((AuxBPList) _structureAux).getVersion();
+	}
+
+	/**
+	 * Makes sure that the index of the additional base pairs covers all of
+	 * them, rebuilding it if pairs were added, removed or replaced behind its
+	 * back.
+	 */
+	private void indexAuxBPs() {
+		if ((_auxBPsByBase == null)
+				|| (_auxBPsIndexedVersion != getAuxBPsVersion())) {
+			_auxBPsByBase = new Hashtable<Integer, ArrayList<ModeleStyleBP>>();
+			_auxBPsByPair = new Hashtable<Long, ModeleStyleBP>();
+			for (int k = 0; k < _structureAux.size(); k++) {
+				indexAuxBP(_structureAux.get(k));
+			}
+			_auxBPsIndexedVersion = getAuxBPsVersion();
+		}
+	}
+
+	private void indexAuxBP(ModeleStyleBP bp) {
+		int i = bp.getPartner5().getIndex();
+		int j = bp.getPartner3().getIndex();
+		addAuxBPToBase(i, bp);
+		if (j != i) {
+			addAuxBPToBase(j, bp);
+		}
+		_auxBPsByPair.put(pairKey(i, j), bp);
+	}
+
+	private void addAuxBPToBase(int i, ModeleStyleBP bp) {
+		ArrayList<ModeleStyleBP> bps = _auxBPsByBase.get(i);
+		if (bps == null) {
+			bps = new ArrayList<ModeleStyleBP>(2);
+			_auxBPsByBase.put(i, bps);
+		}
+		bps.add(bp);
+	}
+
+	private static Long pairKey(int i, int j) {
+		return (((long) i) << 32) | (j & 0xFFFFFFFFL);
 	}
 
 	public ModeleStyleBP getBPStyle(int i, int j) {
@@ -3430,53 +4163,49 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		if (_listeBases.get(i).getElementStructure() == j) {
 			result = _listeBases.get(i).getStyleBP();
 		}
-		for (int k = 0; k < _structureAux.size(); k++) {
-			ModeleStyleBP bp = _structureAux.get(k);
-			if ((bp.getPartner5().getIndex() == i)
-					&& (bp.getPartner3().getIndex() == j)) {
-				result = bp;
-			}
+		indexAuxBPs();
+		ModeleStyleBP bp = _auxBPsByPair.get(pairKey(i, j));
+		if (bp != null) {
+			result = bp;
 		}
 		return result;
 	}
 
 	public ArrayList<ModeleStyleBP> getAuxBPs(int i)
 	{
-		ArrayList<ModeleStyleBP> result = new ArrayList<ModeleStyleBP>(); 
-		for (ModeleStyleBP bp : _structureAux) 
-		{
-			if ((bp.getPartner5().getIndex() == i) || (bp.getPartner3().getIndex() == i)) {
-				result.add(bp);
-			}
+		indexAuxBPs();
+		ArrayList<ModeleStyleBP> bps = _auxBPsByBase.get(i);
+		if (bps == null) {
+			return new ArrayList<ModeleStyleBP>();
 		}
-		return result;
+		return new ArrayList<ModeleStyleBP>(bps);
 	}
 	
 	public void setBaseInnerColor(Color c) {
 		for (int i = 0; i < _listeBases.size(); i++) {
 			ModeleBase mb = _listeBases.get(i);
-			mb.getStyleBase().set_base_inner_color(c);
+			mb.setBaseInnerColor(c);
 		}
 	}
 
 	public void setBaseNumbersColor(Color c) {
 		for (int i = 0; i < _listeBases.size(); i++) {
 			ModeleBase mb = _listeBases.get(i);
-			mb.getStyleBase().set_base_number_color(c);
+			mb.setBaseNumberColor(c);
 		}
 	}
 
 	public void setBaseNameColor(Color c) {
 		for (int i = 0; i < _listeBases.size(); i++) {
 			ModeleBase mb = _listeBases.get(i);
-			mb.getStyleBase().set_base_name_color(c);
+			mb.setBaseNameColor(c);
 		}
 	}
 
 	public void setBaseOutlineColor(Color c) {
 		for (int i = 0; i < _listeBases.size(); i++) {
 			ModeleBase mb = _listeBases.get(i);
-			mb.getStyleBase().set_base_outline_color(c);
+			mb.setBaseOutlineColor(c);
 		}
 	}
 
@@ -3489,6 +4218,94 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	{
 		_flatExteriorLoop = on;
 	}
+
+	public int getLayoutThreads()
+	{
+		return Math.max(1, _layoutThreads);
+	}
+
+	/**
+	 * Sets the number of threads laying out large structures in the radiate
+	 * mode. Independent helices of more than a few thousand bases are then
+	 * laid out concurrently, with the same result as a sequential layout.
+	 * 
+	 * @param numThreads
+	 *            - The number of threads, 1 for a sequential layout
+	 */
+	public void setLayoutThreads(int numThreads)
+	{
+		_layoutThreads = Math.max(1, numThreads);
+	}
+
+	public long getVARNAViewSeed()
+	{
+		return _varnaViewSeed;
+	}
+
+	/**
+	 * Sets the seed of the random moves resolving overlaps between helices
+	 * in the VARNA view. Drawing the same structure with the same seed gives
+	 * the same layout.
+	 */
+	public void setVARNAViewSeed(long seed)
+	{
+		_varnaViewSeed = seed;
+	}
+
+	public int getVARNAViewMaxSteps()
+	{
+		return _varnaViewMaxSteps;
+	}
+
+	/**
+	 * Sets the maximal number of random moves resolving overlaps between
+	 * helices in the VARNA view, 1000 by default.
+	 */
+	public void setVARNAViewMaxSteps(int steps)
+	{
+		_varnaViewMaxSteps = steps;
+	}
+
+	public long getVARNAViewMaxTime()
+	{
+		return _varnaViewMaxTime;
+	}
+
+	/**
+	 * Sets the maximal time spent resolving overlaps between helices in the
+	 * VARNA view.
+	 * 
+	 * @param millis
+	 *            - The time budget in milliseconds, or 0 for no limit
+	 */
+	public void setVARNAViewMaxTime(long millis)
+	{
+		_varnaViewMaxTime = millis;
+	}
+
+	public boolean getIncrementalLayout()
+	{
+		return _incrementalLayout;
+	}
+
+	/**
+	 * Enables the incremental update of radiate and NAView drawings. Once
+	 * enabled, drawing the RNA after a change of its structure only lays out
+	 * again the loops whose bases or base-pairs changed, and moves the other
+	 * ones rigidly, so that their manual adjustments are preserved. Drawing
+	 * an unchanged structure lays the whole RNA out again.
+	 * 
+	 * @param on
+	 *            - <code>true</code> to enable incremental layout, taking
+	 *            effect from the next radiate or NAView drawing
+	 */
+	public void setIncrementalLayout(boolean on)
+	{
+		_incrementalLayout = on;
+		if (!on) {
+			rememberLayout(_layoutMode, _layoutFlat);
+		}
+	}
 	
 	public String getName()
 	{
@@ -3767,11 +4584,11 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	{
 		double min = Double.MAX_VALUE;
 		double max = Double.MIN_VALUE;
-		for (int i=0;i<Math.min(_listeBases.size(),_listeBases.size());i++)
+		for (int i=0;i<_listeBases.size();i++)
 		{
-			ModeleBase mb = _listeBases.get(i);
-			max = Math.max(max,mb.getValue());
-			min = Math.min(min,mb.getValue());
+			double value = getBaseValue(i);
+			max = Math.max(max,value);
+			min = Math.min(min,value);
 		}
 		cm.rescale(min, max);		
 	}
@@ -3823,8 +4640,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		{
 			for (int i=0;i<Math.min(values.length,_listeBases.size());i++)
 			{
-				ModeleBase mb = _listeBases.get(i);
-				mb.setValue(values[i]);
+				setBaseValue(i, values[i]);
 			}
 			if (rescaleColorMap){
 				adaptColorMapToValues(cm);
@@ -3837,7 +4653,7 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		Double[] values = new Double[_listeBases.size()];
 		for (int i=0;i<_listeBases.size();i++)
 		{
-			values[i] = _listeBases.get(i).getValue();
+			values[i] = getBaseValue(i);
 		}
 		return values;
 	}
@@ -3848,13 +4664,98 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 		Double min = Double.MAX_VALUE;
 		for (int i=0;i<_listeBases.size();i++)
 		{
-			Double value = _listeBases.get(i).getValue();
+			Double value = getBaseValue(i);
 			max = Math.max(max, value);
 			min = Math.min(min, value);
 		}
 		cm.rescale(min, max);
 	}
 	
+	/**
+	 * Returns the value of a base, mapped to a color when drawing the color
+	 * map.
+	 */
+	public double getBaseValue(int index) {
+		if ((_baseValues == null) || (index >= _baseValues.length)) {
+			return 0.0;
+		}
+		return _baseValues[index];
+	}
+
+	public void setBaseValue(int index, double value) {
+		if ((_baseValues == null) || (index >= _baseValues.length)) {
+			if (value == 0.0) {
+				return;
+			}
+			_baseValues = (_baseValues == null) ? new double[_listeBases.size()]
+					: Arrays.copyOf(_baseValues, _listeBases.size());
+		}
+		_baseValues[index] = value;
+	}
+
+	static double getSerializedBaseValue(ModeleBase mb) {
+		IdentityHashMap<ModeleBase, Double> values = _serializedBaseValues.get();
+		if (values != null) {
+			Double value = values.get(mb);
+			if (value != null) {
+				return value;
+			}
+		}
+		return 0.0;
+	}
+
+	static void putDeserializedBaseValue(ModeleBase mb, double value) {
+		IdentityHashMap<ModeleBase, Double> values = _serializedBaseValues.get();
+		if ((values != null) && (value != 0.0)) {
+			values.put(mb, value);
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		IdentityHashMap<ModeleBase, Double> values = new IdentityHashMap<ModeleBase, Double>();
+		if (_baseValues != null) {
+			for (int i = 0; i < Math.min(_baseValues.length, _listeBases.size()); i++) {
+				if (_baseValues[i] != 0.0) {
+					values.put(_listeBases.get(i), _baseValues[i]);
+				}
+			}
+		}
+		IdentityHashMap<ModeleBase, Double> previous = _serializedBaseValues.get();
+		_serializedBaseValues.set(values);
+		try {
+			out.defaultWriteObject();
+		} finally {
+			_serializedBaseValues.set(previous);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		IdentityHashMap<ModeleBase, Double> values = new IdentityHashMap<ModeleBase, Double>();
+		IdentityHashMap<ModeleBase, Double> previous = _serializedBaseValues.get();
+		_serializedBaseValues.set(values);
+		try {
+			in.defaultReadObject();
+		} finally {
+			_serializedBaseValues.set(previous);
+		}
+		_structureAux = new AuxBPList(_structureAux);
+		if (!_varnaViewSaved) {
+			_varnaViewSeed = VARNASecDraw.DEFAULT_SEED;
+			_varnaViewMaxSteps = VARNASecDraw.DEFAULT_MAX_STEPS;
+			_varnaViewMaxTime = 0;
+			_varnaViewSaved = true;
+		}
+		if (!values.isEmpty()) {
+			for (int i = 0; i < _listeBases.size(); i++) {
+				Double value = values.get(_listeBases.get(i));
+				if (value != null) {
+					setBaseValue(i, value);
+				}
+			}
+		}
+	}
+
 	public void setColorMapValue(int index, double value, ModeleColorMap cm)
 	{
 		Double[] values = new Double[1];
@@ -3908,6 +4809,10 @@ public class RNA extends InterfaceVARNAObservable implements Serializable{
 	
     public RNA clone ()
     {
+        if (RNASnapshot.canRecord(this))
+        {
+            return RNASnapshot.of(this).toRNA();
+        }
         try
         {
             ByteArrayOutputStream out = new ByteArrayOutputStream ();
@@ -0,0 +1,270 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import fr.orsay.lri.varna.interfaces.InterfaceBatchLoadListener;
+
+/**
+ * Loads many secondary structure files on a bounded pool of worker threads.
+ * Each file is parsed by RNA.loadSecStr(String), and a failure to load a file
+ * is reported along with its result instead of aborting the batch. Results
+ * are delivered on the calling thread, either in the order of the files or as
+ * soon as they are available. At most a few files per worker are parsed ahead
+ * of the delivered ones, so that large batches are loaded in bounded memory
+ * when results are not retained.
+ */
+public class RNABatchLoader {
+
+	/**
+	 * Number of files parsed ahead of the delivered ones, per worker
+	 */
+	private static final int FILES_AHEAD_PER_THREAD = 4;
+
+	private int _numThreads;
+
+	/**
+	 * Outcome of the loading of a file of the batch.
+	 */
+	public static class Result {
+		private int _index;
+		private File _file;
+		private RNA _rna;
+		private Exception _error;
+
+		private Result(int index, File file, RNA rna, Exception error) {
+			_index = index;
+			_file = file;
+			_rna = rna;
+			_error = error;
+		}
+
+		/**
+		 * Returns the position of the file within the batch.
+		 */
+		public int getIndex() {
+			return _index;
+		}
+
+		public File getFile() {
+			return _file;
+		}
+
+		/**
+		 * Returns the loaded RNA, or <code>null</code> if loading failed.
+		 */
+		public RNA getRNA() {
+			return _rna;
+		}
+
+		/**
+		 * Returns the exception raised while loading the file, or
+		 * <code>null</code> if it was loaded successfully.
+		 */
+		public Exception getError() {
+			return _error;
+		}
+
+		public boolean isLoaded() {
+			return (_error == null);
+		}
+	}
+
+	/**
+	 * Creates a loader using one worker per available processor.
+	 */
+	public RNABatchLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public RNABatchLoader(int numThreads) {
+		_numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Lists the regular files of a directory whose names match a pattern, by
+	 * increasing name.
+	 *
+	 * @param dir
+	 *            - The directory
+	 * @param pattern
+	 *            - A file name pattern, where <code>*</code> matches any
+	 *            sequence of characters and <code>?</code> any single
+	 *            character, or <code>null</code> to match any file
+	 */
+	public static ArrayList<File> listFiles(File dir, String pattern) {
+		ArrayList<File> result = new ArrayList<File>();
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return result;
+		}
+		Arrays.sort(files);
+		Pattern p = null;
+		if (pattern != null) {
+			p = Pattern.compile(globToRegex(pattern));
+		}
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].isFile()
+					&& ((p == null) || p.matcher(files[i].getName()).matches())) {
+				result.add(files[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Lists the files designated by a path, which is either a directory, or
+	 * whose last component is a file name pattern such as
+	 * <code>data/*.ct</code>.
+	 */
+	public static ArrayList<File> listFiles(String path) {
+		File f = new File(path);
+		if (f.isDirectory()) {
+			return listFiles(f, null);
+		}
+		if ((f.getName().indexOf('*') == -1) && (f.getName().indexOf('?') == -1)) {
+			ArrayList<File> result = new ArrayList<File>();
+			if (f.isFile()) {
+				result.add(f);
+			}
+			return result;
+		}
+		File dir = f.getParentFile();
+		if (dir == null) {
+			dir = new File(".");
+		}
+		return listFiles(dir, f.getName());
+	}
+
+	private static String globToRegex(String glob) {
+		StringBuilder result = new StringBuilder();
+		int start = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if ((c == '*') || (c == '?')) {
+				if (i > start) {
+					result.append(Pattern.quote(glob.substring(start, i)));
+				}
+				result.append((c == '*') ? ".*" : ".");
+				start = i + 1;
+			}
+		}
+		if (start < glob.length()) {
+			result.append(Pattern.quote(glob.substring(start)));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Loads a list of files, and returns their results in the same order.
+	 */
+	public ArrayList<Result> loadAll(List<File> files)
+			throws InterruptedException {
+		final ArrayList<Result> result = new ArrayList<Result>(files.size());
+		load(files, new InterfaceBatchLoadListener() {
+			public void onLoad(Result r) {
+				result.add(r);
+			}
+		}, true);
+		return result;
+	}
+
+	/**
+	 * Loads a list of files, passing their results to a listener on the
+	 * calling thread. This method returns once all the files are processed.
+	 *
+	 * @param files
+	 *            - The files to load
+	 * @param listener
+	 *            - The listener receiving the results
+	 * @param ordered
+	 *            - <code>true</code> to receive the results in the order of
+	 *            the files, <code>false</code> to receive them as soon as
+	 *            they are available
+	 */
+	public void load(List<File> files, InterfaceBatchLoadListener listener,
+			boolean ordered) throws InterruptedException {
+		int n = files.size();
+		int ahead = FILES_AHEAD_PER_THREAD * _numThreads;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(
+				_numThreads, Math.max(1, n)));
+		CompletionService<Result> done = new ExecutorCompletionService<Result>(
+				pool);
+		Hashtable<Integer, Result> pending = new Hashtable<Integer, Result>();
+		try {
+			int submitted = 0;
+			int delivered = 0;
+			while (delivered < n) {
+				while ((submitted < n) && (submitted - delivered < ahead)) {
+					done.submit(new LoadTask(submitted, files.get(submitted)));
+					submitted++;
+				}
+				Result r;
+				try {
+					r = done.take().get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+				if (!ordered) {
+					listener.onLoad(r);
+					delivered++;
+				} else {
+					pending.put(r.getIndex(), r);
+					while (pending.containsKey(delivered)) {
+						listener.onLoad(pending.remove(delivered));
+						delivered++;
+					}
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static class LoadTask implements Callable<Result> {
+		private int _index;
+		private File _file;
+
+		public LoadTask(int index, File file) {
+			_index = index;
+			_file = file;
+		}
+
+		public Result call() {
+			try {
+				RNA r = new RNA();
+				r.loadSecStr(_file.getPath());
+				return new Result(_index, _file, r, null);
+			} catch (Exception e) {
+				return new Result(_index, _file, null, e);
+			}
+		}
+	}
+}
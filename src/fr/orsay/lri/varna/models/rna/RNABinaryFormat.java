@@ -0,0 +1,412 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import fr.orsay.lri.varna.exceptions.ExceptionFileFormatOrSyntax;
+
+/**
+ * Compact binary encoding of a secondary structure, meant for collections of
+ * structures which are reloaded often. A file consists of:
+ * <ul>
+ * <li>The magic number <code>VRNB</code>, a version byte and a flags byte</li>
+ * <li>The title and the number of bases, as varints</li>
+ * <li>The sequence, packed on 2 bits per base if it only contains A, C, G and
+ * U, or 1 byte per base otherwise</li>
+ * <li>The planar structure: for each base which is not the 3' end of a
+ * base-pair, the varint distance to its 3' partner (0 if unpaired), followed
+ * by one style byte (edges and stericity) per base-pair</li>
+ * <li>Optionally, the base numbers as varint differences to the expected
+ * ones, the auxiliary base-pairs, and the coordinates and centers of the
+ * bases as doubles</li>
+ * </ul>
+ * Varints are little-endian base 128, signed values being zig-zag encoded.
+ */
+public class RNABinaryFormat {
+
+	private static final byte[] MAGIC = { 'V', 'R', 'N', 'B' };
+	private static final int VERSION = 1;
+
+	private static final int FLAG_PACKED_SEQUENCE = 1;
+	private static final int FLAG_BASE_NUMBERS = 2;
+	private static final int FLAG_AUX_BPS = 4;
+	private static final int FLAG_COORDS = 8;
+
+	private static final String PACKED_ALPHABET = "ACGU";
+
+	private byte[] _buf;
+	private int _pos;
+
+	private RNABinaryFormat(int capacity) {
+		_buf = new byte[Math.max(capacity, 64)];
+		_pos = 0;
+	}
+
+	private RNABinaryFormat(byte[] content) {
+		_buf = content;
+		_pos = 0;
+	}
+
+	/**
+	 * Encodes an RNA in binary format.
+	 *
+	 * @param rna
+	 *            - The RNA, which must not be in comparison mode
+	 * @param title
+	 *            - The title stored along with the structure
+	 * @param out
+	 *            - The stream receiving the encoded RNA
+	 */
+	public static void write(RNA rna, String title, OutputStream out)
+			throws IOException {
+		ArrayList<ModeleBase> bases = rna.get_listeBases();
+		int n = bases.size();
+		ArrayList<ModeleStyleBP> aux = rna.getStructureAux();
+		char[] seq = new char[n];
+		boolean packed = true;
+		boolean numbered = false;
+		for (int i = 0; i < n; i++) {
+			ModeleBase mb = bases.get(i);
+			seq[i] = ((ModeleBaseNucleotide) mb).get_c().charValue();
+			packed &= (PACKED_ALPHABET.indexOf(seq[i]) != -1);
+			numbered |= (mb.getBaseNumber() != i + 1);
+		}
+		int flags = 0;
+		if (packed) {
+			flags |= FLAG_PACKED_SEQUENCE;
+		}
+		if (numbered) {
+			flags |= FLAG_BASE_NUMBERS;
+		}
+		if (!aux.isEmpty()) {
+			flags |= FLAG_AUX_BPS;
+		}
+		if (rna.getDrawn()) {
+			flags |= FLAG_COORDS;
+		}
+
+		RNABinaryFormat enc = new RNABinaryFormat(4 * n);
+		enc.writeBytes(MAGIC, MAGIC.length);
+		enc.writeByte(VERSION);
+		enc.writeByte(flags);
+		byte[] t = title.getBytes("UTF-8");
+		enc.writeVarint(t.length);
+		enc.writeBytes(t, t.length);
+		enc.writeVarint(n);
+
+		if (packed) {
+			for (int i = 0; i < n; i += 4) {
+				int b = 0;
+				for (int k = 0; (k < 4) && (i + k < n); k++) {
+					b |= PACKED_ALPHABET.indexOf(seq[i + k]) << (2 * k);
+				}
+				enc.writeByte(b);
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				enc.writeByte((seq[i] < 256) ? seq[i] : 'X');
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			int j = bases.get(i).getElementStructure();
+			if (j > i) {
+				enc.writeVarint(j - i);
+			} else if (j == -1) {
+				enc.writeVarint(0);
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			ModeleBase mb = bases.get(i);
+			if (mb.getElementStructure() > i) {
+				enc.writeByte(encodeStyle(mb.getStyleBP()));
+			}
+		}
+
+		if (numbered) {
+			for (int i = 0; i < n; i++) {
+				enc.writeSignedVarint(bases.get(i).getBaseNumber() - (i + 1));
+			}
+		}
+
+		if (!aux.isEmpty()) {
+			enc.writeVarint(aux.size());
+			int prev = 0;
+			for (int k = 0; k < aux.size(); k++) {
+				ModeleStyleBP msbp = aux.get(k);
+				int i = msbp.getPartner5().getIndex();
+				int j = msbp.getPartner3().getIndex();
+				enc.writeSignedVarint(i - prev);
+				enc.writeSignedVarint(j - i);
+				enc.writeByte(encodeStyle(msbp));
+				prev = i;
+			}
+		}
+
+		if (rna.getDrawn()) {
+			for (int i = 0; i < n; i++) {
+				ModeleBase mb = bases.get(i);
+				enc.writeDouble(mb.getCoords().x);
+				enc.writeDouble(mb.getCoords().y);
+				enc.writeDouble(mb.getCenter().x);
+				enc.writeDouble(mb.getCenter().y);
+			}
+		}
+		out.write(enc._buf, 0, enc._pos);
+		out.flush();
+	}
+
+	/**
+	 * Decodes an RNA from a binary stream, replacing the content of an
+	 * existing one. The stream is read in a single pass, then decoded from
+	 * memory.
+	 *
+	 * @param rna
+	 *            - The RNA whose sequence, structure and name are replaced
+	 * @param in
+	 *            - The stream, positioned at the beginning of the content
+	 */
+	public static void read(RNA rna, InputStream in) throws IOException,
+			ExceptionFileFormatOrSyntax {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] chunk = new byte[65536];
+		int len;
+		while ((len = in.read(chunk)) > 0) {
+			content.write(chunk, 0, len);
+		}
+		RNABinaryFormat dec = new RNABinaryFormat(content.toByteArray());
+		try {
+			dec.decode(rna);
+		} catch (IndexOutOfBoundsException e) {
+			throw new ExceptionFileFormatOrSyntax(
+					"Truncated or invalid binary structure", "");
+		}
+	}
+
+	/**
+	 * Tests whether a stream starts with the magic number of the binary format.
+	 * The stream must support marks, and is reset after the test.
+	 */
+	public static boolean hasMagicNumber(InputStream in) throws IOException {
+		in.mark(MAGIC.length);
+		try {
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (in.read() != MAGIC[i]) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	private void decode(RNA rna) throws IOException,
+			ExceptionFileFormatOrSyntax {
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (readByte() != MAGIC[i]) {
+				throw new ExceptionFileFormatOrSyntax(
+						"Not a binary structure", "");
+			}
+		}
+		int version = readByte();
+		if (version != VERSION) {
+			throw new ExceptionFileFormatOrSyntax(
+					"Unsupported binary structure version " + version, "");
+		}
+		int flags = readByte();
+		int titleLength = readVarint();
+		String title = new String(_buf, _pos, titleLength, "UTF-8");
+		_pos += titleLength;
+		int n = readVarint();
+		if ((n < 0) || (n > _buf.length * 4)) {
+			throw new ExceptionFileFormatOrSyntax(
+					"Invalid sequence length " + n, "");
+		}
+
+		char[] seq = new char[n];
+		if ((flags & FLAG_PACKED_SEQUENCE) != 0) {
+			for (int i = 0; i < n; i += 4) {
+				int b = readByte();
+				for (int k = 0; (k < 4) && (i + k < n); k++) {
+					seq[i + k] = PACKED_ALPHABET.charAt((b >> (2 * k)) & 3);
+				}
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				seq[i] = (char) readByte();
+			}
+		}
+
+		int[] str = new int[n];
+		for (int i = 0; i < n; i++) {
+			str[i] = -1;
+		}
+		for (int i = 0; i < n; i++) {
+			if (str[i] == -1) {
+				int d = readVarint();
+				if (d != 0) {
+					int j = i + d;
+					if ((d < 0) || (j >= n) || (str[j] != -1)) {
+						throw new ExceptionFileFormatOrSyntax(
+								"Invalid base-pair (" + i + "," + j + ")", "");
+					}
+					str[i] = j;
+					str[j] = i;
+				}
+			}
+		}
+		rna.setRNA(seq, str);
+		rna.setName(title);
+		ArrayList<ModeleBase> bases = rna.get_listeBases();
+		for (int i = 0; i < n; i++) {
+			if (str[i] > i) {
+				decodeStyle(readByte(), bases.get(i).getStyleBP());
+			}
+		}
+
+		if ((flags & FLAG_BASE_NUMBERS) != 0) {
+			for (int i = 0; i < n; i++) {
+				bases.get(i).setBaseNumber(i + 1 + readSignedVarint());
+			}
+		}
+
+		if ((flags & FLAG_AUX_BPS) != 0) {
+			int numAux = readVarint();
+			int i = 0;
+			for (int k = 0; k < numAux; k++) {
+				i += readSignedVarint();
+				int j = i + readSignedVarint();
+				ModeleStyleBP msbp = new ModeleStyleBP();
+				decodeStyle(readByte(), msbp);
+				rna.addBPAux(i, j, msbp);
+			}
+		}
+
+		if ((flags & FLAG_COORDS) != 0) {
+			for (int i = 0; i < n; i++) {
+				ModeleBase mb = bases.get(i);
+				double x = readDouble();
+				double y = readDouble();
+				mb.setCoords(new Point2D.Double(x, y));
+				x = readDouble();
+				y = readDouble();
+				mb.setCenter(new Point2D.Double(x, y));
+			}
+			rna.setDrawn(true);
+		}
+	}
+
+	private static int encodeStyle(ModeleStyleBP msbp) {
+		return msbp.getEdgePartner5().ordinal()
+				| (msbp.getEdgePartner3().ordinal() << 2)
+				| (msbp.getStericity().ordinal() << 4);
+	}
+
+	private static void decodeStyle(int b, ModeleStyleBP msbp)
+			throws ExceptionFileFormatOrSyntax {
+		ModeleStyleBP.Edge[] edges = ModeleStyleBP.Edge.values();
+		ModeleStyleBP.Stericity[] sters = ModeleStyleBP.Stericity.values();
+		int e5 = b & 3;
+		int e3 = (b >> 2) & 3;
+		int s = (b >> 4) & 3;
+		if ((e5 >= edges.length) || (e3 >= edges.length)
+				|| (s >= sters.length)) {
+			throw new ExceptionFileFormatOrSyntax(
+					"Invalid base-pair style " + b, "");
+		}
+		msbp.setEdge5(edges[e5]);
+		msbp.setEdge3(edges[e3]);
+		msbp.setStericity(sters[s]);
+	}
+
+	private void ensureCapacity(int size) {
+		if (_pos + size > _buf.length) {
+			byte[] tmp = new byte[Math.max(2 * _buf.length, _pos + size)];
+			System.arraycopy(_buf, 0, tmp, 0, _pos);
+			_buf = tmp;
+		}
+	}
+
+	private void writeByte(int b) {
+		ensureCapacity(1);
+		_buf[_pos++] = (byte) b;
+	}
+
+	private void writeBytes(byte[] b, int len) {
+		ensureCapacity(len);
+		System.arraycopy(b, 0, _buf, _pos, len);
+		_pos += len;
+	}
+
+	private void writeVarint(int v) {
+		ensureCapacity(5);
+		while ((v & ~0x7F) != 0) {
+			_buf[_pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		_buf[_pos++] = (byte) v;
+	}
+
+	private void writeSignedVarint(int v) {
+		writeVarint((v << 1) ^ (v >> 31));
+	}
+
+	private void writeDouble(double d) {
+		long v = Double.doubleToLongBits(d);
+		ensureCapacity(8);
+		for (int k = 0; k < 8; k++) {
+			_buf[_pos++] = (byte) (v >>> (8 * k));
+		}
+	}
+
+	private int readByte() {
+		return _buf[_pos++] & 0xFF;
+	}
+
+	private int readVarint() throws ExceptionFileFormatOrSyntax {
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new ExceptionFileFormatOrSyntax("Malformed varint", "");
+	}
+
+	private int readSignedVarint() throws ExceptionFileFormatOrSyntax {
+		int v = readVarint();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private double readDouble() {
+		long v = 0;
+		for (int k = 0; k < 8; k++) {
+			v |= ((long) readByte()) << (8 * k);
+		}
+		return Double.longBitsToDouble(v);
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.util.Arrays;
+
+import fr.orsay.lri.varna.exceptions.ExceptionNAViewAlgorithm;
+
+/**
+ * Updates the drawing of an RNA after its structure was edited. Each
+ * base-pair closes a loop, and the exterior loop is the root of the tree of
+ * loops. A loop whose bases are paired as before keeps its previous shape,
+ * and is moved rigidly along with the base-pair closing it, so that manual
+ * adjustments are preserved. A loop which changed is laid out again, from a
+ * fresh layout of the subtree it closes, computed once for all the changed
+ * loops of that subtree.
+ */
+class RNAIncrementalLayout {
+
+	private RNA _rna;
+	private int _mode;
+	private RNAStructureDiff _diff;
+	private int[] _newStr;
+
+	/**
+	 * Previous coordinates and centers of the bases
+	 */
+	private double[] _oldX;
+	private double[] _oldY;
+	private double[] _oldCenterX;
+	private double[] _oldCenterY;
+
+	/**
+	 * Fresh layout of the subtrees closed by a changed loop, filled lazily
+	 */
+	private double[] _freshX;
+	private double[] _freshY;
+	private double[] _freshCenterX;
+	private double[] _freshCenterY;
+
+	/**
+	 * Resulting coordinates and centers of the bases
+	 */
+	private double[] _x;
+	private double[] _y;
+	private double[] _centerX;
+	private double[] _centerY;
+
+	/**
+	 * Rotation and translation applied to the bases of the current loop
+	 */
+	private double _cos;
+	private double _sin;
+	private double _fromX;
+	private double _fromY;
+	private double _toX;
+	private double _toY;
+
+	/**
+	 * Prepares the update of a drawing.
+	 * 
+	 * @param diff
+	 *            - The differences between the structure that the previous
+	 *            coordinates were laid out for, and the current structure
+	 * @param newStr
+	 *            - The current structure, of the same length
+	 */
+	RNAIncrementalLayout(RNA rna, int mode, RNAStructureDiff diff,
+			int[] newStr, double[] oldX, double[] oldY, double[] oldCenterX,
+			double[] oldCenterY) {
+		int n = newStr.length;
+		_rna = rna;
+		_mode = mode;
+		_diff = diff;
+		_newStr = newStr;
+		_oldX = oldX;
+		_oldY = oldY;
+		_oldCenterX = oldCenterX;
+		_oldCenterY = oldCenterY;
+		_freshX = new double[n];
+		_freshY = new double[n];
+		_freshCenterX = new double[n];
+		_freshCenterY = new double[n];
+		_x = new double[n];
+		_y = new double[n];
+		_centerX = new double[n];
+		_centerY = new double[n];
+	}
+
+	/**
+	 * Computes the new coordinates of the bases.
+	 */
+	void layout() throws ExceptionNAViewAlgorithm {
+		int n = _newStr.length;
+		int[] stackBase = new int[16];
+		boolean[] stackFresh = new boolean[16];
+		int top = 0;
+
+		// The exterior loop is either kept as is, or laid out along with the
+		// whole structure
+		boolean fresh = !isLoopUnchanged(-1, n);
+		if (fresh) {
+			_rna.layoutAll(_mode, _freshX, _freshY, _freshCenterX,
+					_freshCenterY);
+		}
+		int k = 0;
+		while (k < n) {
+			copyBase(k, fresh);
+			int l = _newStr[k];
+			if (l > k) {
+				copyBase(l, fresh);
+				if (top == stackBase.length) {
+					stackBase = Arrays.copyOf(stackBase, 2 * top);
+					stackFresh = Arrays.copyOf(stackFresh, 2 * top);
+				}
+				stackBase[top] = k;
+				stackFresh[top] = fresh;
+				top++;
+				k = l;
+			}
+			k++;
+		}
+
+		// Loops closed by base-pairs, whose bases are already placed
+		while (top > 0) {
+			top--;
+			int i = stackBase[top];
+			int j = _newStr[i];
+			fresh = stackFresh[top];
+			if (_diff.getNumChangedBases(i, j) == 0) {
+				// Unchanged subtree
+				setTransform(i, j, _oldX, _oldY);
+				for (k = i + 1; k < j; k++) {
+					transformBase(k, _oldX, _oldY, _oldCenterX, _oldCenterY);
+				}
+				continue;
+			}
+			boolean unchanged = isLoopUnchanged(i, j);
+			if (!unchanged && !fresh) {
+				_rna.layoutRegion(_mode, _newStr, i, j, _freshX, _freshY,
+						_freshCenterX, _freshCenterY);
+				fresh = true;
+			}
+			double[] fromX = unchanged ? _oldX : _freshX;
+			double[] fromY = unchanged ? _oldY : _freshY;
+			double[] fromCenterX = unchanged ? _oldCenterX : _freshCenterX;
+			double[] fromCenterY = unchanged ? _oldCenterY : _freshCenterY;
+			setTransform(i, j, fromX, fromY);
+			k = i + 1;
+			while (k < j) {
+				transformBase(k, fromX, fromY, fromCenterX, fromCenterY);
+				int l = _newStr[k];
+				if (l > k) {
+					transformBase(l, fromX, fromY, fromCenterX, fromCenterY);
+					if (top == stackBase.length) {
+						stackBase = Arrays.copyOf(stackBase, 2 * top);
+						stackFresh = Arrays.copyOf(stackFresh, 2 * top);
+					}
+					stackBase[top] = k;
+					stackFresh[top] = fresh;
+					top++;
+					k = l;
+				}
+				k++;
+			}
+		}
+	}
+
+	double getX(int k) {
+		return _x[k];
+	}
+
+	double getY(int k) {
+		return _y[k];
+	}
+
+	double getCenterX(int k) {
+		return _centerX[k];
+	}
+
+	double getCenterY(int k) {
+		return _centerY[k];
+	}
+
+	/**
+	 * Tests whether the loop closed by the base-pair (i,j), or the exterior
+	 * loop if i is -1 and j the number of bases, has the same bases, paired
+	 * to the same partners, in both structures.
+	 */
+	private boolean isLoopUnchanged(int i, int j) {
+		if ((i >= 0) && _diff.isChanged(i)) {
+			return false;
+		}
+		int k = i + 1;
+		while (k < j) {
+			if (_diff.isChanged(k)) {
+				return false;
+			}
+			int l = _newStr[k];
+			if (l > k) {
+				k = l;
+			}
+			k++;
+		}
+		return true;
+	}
+
+	private void copyBase(int k, boolean fresh) {
+		if (fresh) {
+			_x[k] = _freshX[k];
+			_y[k] = _freshY[k];
+			_centerX[k] = _freshCenterX[k];
+			_centerY[k] = _freshCenterY[k];
+		} else {
+			_x[k] = _oldX[k];
+			_y[k] = _oldY[k];
+			_centerX[k] = _oldCenterX[k];
+			_centerY[k] = _oldCenterY[k];
+		}
+	}
+
+	/**
+	 * Sets the rigid transformation bringing the base-pair (i,j), as placed
+	 * in a source layout, onto its new position.
+	 */
+	private void setTransform(int i, int j, double[] fromX, double[] fromY) {
+		double angle = Math.atan2(_y[j] - _y[i], _x[j] - _x[i])
+				- Math.atan2(fromY[j] - fromY[i], fromX[j] - fromX[i]);
+		_cos = Math.cos(angle);
+		_sin = Math.sin(angle);
+		_fromX = (fromX[i] + fromX[j]) / 2.0;
+		_fromY = (fromY[i] + fromY[j]) / 2.0;
+		_toX = (_x[i] + _x[j]) / 2.0;
+		_toY = (_y[i] + _y[j]) / 2.0;
+	}
+
+	private void transformBase(int k, double[] fromX, double[] fromY,
+			double[] fromCenterX, double[] fromCenterY) {
+		double dx = fromX[k] - _fromX;
+		double dy = fromY[k] - _fromY;
+		_x[k] = _toX + _cos * dx - _sin * dy;
+		_y[k] = _toY + _sin * dx + _cos * dy;
+		dx = fromCenterX[k] - _fromX;
+		dy = fromCenterY[k] - _fromY;
+		_centerX[k] = _toX + _cos * dx - _sin * dy;
+		_centerY[k] = _toY + _sin * dx + _cos * dy;
+	}
+}
@@ -17,21 +17,22 @@
  */
 package fr.orsay.lri.varna.models.rna;
 
-import java.awt.Point;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.Reader;
 import java.util.Stack;
 import java.util.Vector;
 
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-public class RNAMLParser extends DefaultHandler {
+/**
+ * Pull-based (StAX) RNAML parser. Only the first molecule of a document is
+ * loaded, and parsing stops as soon as its closing tag is reached. Base-pairs
+ * and helices are stored in primitive arrays while they are encountered, the
+ * corresponding BPTemp objects being only built on demand.
+ */
+public class RNAMLParser {
 	public class HelixTemp {
 		public int pos5, pos3, length;
 		public String name;
@@ -111,84 +112,116 @@ public class RNAMLParser extends DefaultHandler {
 		}
 	}
 
-	private String _sequence = "";
-	private Vector<Integer> _sequenceIDs = new Vector<Integer>();
-	private Vector<BPTemp> _structure = new Vector<BPTemp>();
-	private Vector<HelixTemp> _helices = new Vector<HelixTemp>();
+	/**
+	 * Factory of each thread, XMLInputFactory instances being expensive to
+	 * create but not guaranteed to be thread-safe (RNABatchLoader parses
+	 * files from several threads).
+	 */
+	private static final ThreadLocal<XMLInputFactory> _factory = new ThreadLocal<XMLInputFactory>() {
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory f = XMLInputFactory.newInstance();
+			f.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+			f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+			// Neither the RNAML DTD nor external entities are ever fetched
+			f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+					Boolean.FALSE);
+			f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			return f;
+		}
+	};
 
-	@SuppressWarnings("unused")
-	private boolean _inSequenceIDs, _inLength, _inSequence, _inHelix,
-			_inStrAnnotation, _inBP, _inBP5, _inBP3, _inEdge5, _inEdge3,
-			_inPosition, _inBondOrientation;
+	private String _sequence = "";
+	private int[] _sequenceIDs = new int[0];
+
+	// Base-pairs of the first molecule, in the order of the document
+	private int _numBPs = 0;
+	private int[] _bp5 = new int[16];
+	private int[] _bp3 = new int[16];
+	private String[] _bpEdge5 = new String[16];
+	private String[] _bpEdge3 = new String[16];
+	private String[] _bpOrientation = new String[16];
+	private boolean[] _bpIsPlanar = new boolean[0];
+
+	private int _numHelices = 0;
+	private int[] _helix5 = new int[16];
+	private int[] _helix3 = new int[16];
+	private int[] _helixLength = new int[16];
+	private String[] _helixID = new String[16];
+
+	private int[] _planarStructure = new int[0];
+
+	private boolean _inMolecule, _inHelix, _inBP, _inBP5, _inBP3;
 	private StringBuffer _buffer;
-	private String _firstModel = "";
-	private String _currentModel = "";
 	private int _id5, _id3, _length;
-	String _edge5, _edge3, _orientation, _helixID;
-
-	private Vector<BPTemp> _structurePlanar = new Vector<BPTemp>();
-	private Vector<BPTemp> _structureAux = new Vector<BPTemp>();
+	private String _edge5, _edge3, _orientation, _currentHelixID;
 
 	public RNAMLParser() {
-		super();
-		_inSequenceIDs = false;
-		_inSequence = false;
-		_inStrAnnotation = false;
+		_inMolecule = false;
+		_inHelix = false;
 		_inBP = false;
 		_inBP5 = false;
 		_inBP3 = false;
-		_inPosition = false;
-		_inEdge5 = false;
-		_inEdge3 = false;
-		_inBondOrientation = false;
-		_inHelix = false;
 	}
 
-	public InputSource createSourceFromURL(String path)
-	{
-		URL url = null;
+	/**
+	 * Parses the first molecule of an RNAML document.
+	 *
+	 * @param r
+	 *            - A reader for the RNAML document
+	 */
+	public void parse(Reader r) throws XMLStreamException {
+		XMLStreamReader xr = _factory.get().createXMLStreamReader(r);
 		try {
-			url = new URL(path);
-			URLConnection connexion = url.openConnection();
-			connexion.setUseCaches(false);
-			InputStream r = connexion.getInputStream();
-			InputStreamReader inr = new InputStreamReader(r);
-			return new InputSource(inr);
-		}
-		catch(Exception e)
-		{
-			e.printStackTrace();
+			boolean over = false;
+			while (!over && xr.hasNext()) {
+				switch (xr.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					startElement(xr.getLocalName(), xr);
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if (_buffer != null) {
+						_buffer.append(xr.getTextCharacters(), xr.getTextStart(),
+								xr.getTextLength());
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					over = endElement(xr.getLocalName());
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			xr.close();
 		}
-		return new InputSource(new StringReader(""));
-	}
-	
-	public InputSource resolveEntity(String publicId, String systemId) {
-		System.out.println("[crade]");
-		if (systemId.endsWith("rnaml.dtd"))
-			return createSourceFromURL("http://varna.lri.fr/bin/rnaml.dtd");
-		else
-			return new InputSource(new StringReader(""));
+		postProcess();
 	}
 
-	public void startElement(String uri, String localName, String qName,
-			Attributes attributes) throws SAXException {
+	private void startElement(String qName, XMLStreamReader xr) {
+		if (qName.equals("molecule")) {
+			_inMolecule = true;
+		}
+		if (!_inMolecule) {
+			return;
+		}
 		if (qName.equals("numbering-table")) {
-			_inSequenceIDs = true;
 			_buffer = new StringBuffer();
 		} else if (qName.equals("helix")) {
 			_inHelix = true;
 			_buffer = new StringBuffer();
-			_helixID = attributes.getValue("id");
+			_currentHelixID = xr.getAttributeValue(null, "id");
 		} else if (qName.equals("seq-data")) {
-			_inSequence = true;
 			_buffer = new StringBuffer();
 		} else if (qName.equals("length")) {
-			_inLength = true;
 			_buffer = new StringBuffer();
-		} else if (qName.equals("str-annotation")) {
-			_inStrAnnotation = true;
 		} else if (qName.equals("base-pair")) {
 			_inBP = true;
+			_edge5 = "";
+			_edge3 = "";
+			_orientation = "";
 		} else if (qName.equals("base-id-5p")) {
 			if (_inBP || _inHelix) {
 				_inBP5 = true;
@@ -197,94 +230,57 @@ public class RNAMLParser extends DefaultHandler {
 			if (_inBP || _inHelix) {
 				_inBP3 = true;
 			}
-		} else if (qName.equals("edge-5p")) {
-			_inEdge5 = true;
-			_buffer = new StringBuffer();
-		} else if (qName.equals("edge-3p")) {
-			_inEdge3 = true;
+		} else if (qName.equals("edge-5p") || qName.equals("edge-3p")
+				|| qName.equals("position")
+				|| qName.equals("bond-orientation")) {
 			_buffer = new StringBuffer();
-		} else if (qName.equals("position")) {
-			_inPosition = true;
-			_buffer = new StringBuffer();
-		} else if (qName.equals("bond-orientation")) {
-			_inBondOrientation = true;
-			_buffer = new StringBuffer();
-		} else if (qName.equals("molecule")) {
-			String id = (attributes.getValue("id"));
-			if (_firstModel.length()==0) {
-				_firstModel = id;
-			}
-			_currentModel = id;
 		} else {
 			// We don't care too much about the rest ...
 		}
 	}
 
-	public void endElement(String uri, String localName, String qName)
-			throws SAXException {
-		if (qName.equals("numbering-table")) {
-			_inSequenceIDs = false;
-			String content = _buffer.toString();
-			content = content.trim();
-			String[] tokens = content.split("\\s+");
-			Vector<Integer> results = new Vector<Integer>();
-			for (int i = 0; i < tokens.length; i++) {
-				try {
-					results.add(new Integer(Integer.parseInt(tokens[i])));
-				} catch (NumberFormatException e) {
-					e.printStackTrace();
-				}
-			}
-			if (_currentModel == _firstModel) {
-				_sequenceIDs = results;
-			}
+	/**
+	 * @return <code>true</code> if the first molecule is over, so that the
+	 *         rest of the document can be skipped
+	 */
+	private boolean endElement(String qName) {
+		if (!_inMolecule) {
+			return false;
+		}
+		if (qName.equals("molecule")) {
+			_inMolecule = false;
+			return true;
+		} else if (qName.equals("numbering-table")) {
+			_sequenceIDs = parseIntegers(_buffer);
 			_buffer = null;
 		} else if (qName.equals("seq-data")) {
-			_inSequence = false;
-			String content = _buffer.toString();
-			content = content.trim();
-			String[] tokens = content.split("\\s+");
-			StringBuffer results = new StringBuffer();
-			for (int i = 0; i < tokens.length; i++) {
-				results.append(tokens[i]);
-			}
-
-			if (_currentModel == _firstModel) {
-				_sequence = results.toString();
+			StringBuffer results = new StringBuffer(_buffer.length());
+			for (int i = 0; i < _buffer.length(); i++) {
+				char c = _buffer.charAt(i);
+				if (!Character.isWhitespace(c)) {
+					results.append(c);
+				}
 			}
+			_sequence = results.toString();
 			_buffer = null;
 		} else if (qName.equals("bond-orientation")) {
-			_inBondOrientation = false;
-			String content = _buffer.toString();
-			content = content.trim();
-			_orientation = content;
+			_orientation = _buffer.toString().trim();
 			_buffer = null;
-		} else if (qName.equals("str-annotation")) {
-			_inStrAnnotation = false;
 		} else if (qName.equals("base-pair")) {
 			_inBP = false;
-			if (_currentModel == _firstModel) {
-				BPTemp bp = new BPTemp(_id5, _id3, _edge5, _edge3,_orientation);
-				this._structure.add(bp);
-			}
+			addBP(_id5, _id3, _edge5, _edge3, _orientation);
 		} else if (qName.equals("helix")) {
 			_inHelix = false;
-			HelixTemp h = new HelixTemp(_id5, _id3, _length, _helixID);
-			_helices.add(h);
+			addHelix(_id5, _id3, _length, _currentHelixID);
 		} else if (qName.equals("base-id-5p")) {
 			_inBP5 = false;
 		} else if (qName.equals("base-id-3p")) {
 			_inBP3 = false;
 		} else if (qName.equals("length")) {
-			_inLength = false;
-			String content = _buffer.toString();
-			content = content.trim();
-			_length = Integer.parseInt(content);
+			_length = Integer.parseInt(_buffer.toString().trim());
 			_buffer = null;
 		} else if (qName.equals("position")) {
-			String content = _buffer.toString();
-			content = content.trim();
-			int pos = Integer.parseInt(content);
+			int pos = Integer.parseInt(_buffer.toString().trim());
 			if (_inBP5) {
 				_id5 = pos;
 			}
@@ -293,73 +289,132 @@ public class RNAMLParser extends DefaultHandler {
 			}
 			_buffer = null;
 		} else if (qName.equals("edge-5p")) {
-			_inEdge5 = false;
-			String content = _buffer.toString();
-			content = content.trim();
-			_edge5 = content;
+			_edge5 = _buffer.toString().trim();
 			_buffer = null;
 		} else if (qName.equals("edge-3p")) {
-			_inEdge3 = false;
-			String content = _buffer.toString();
-			content = content.trim();
-			_edge3 = content;
+			_edge3 = _buffer.toString().trim();
 			_buffer = null;
 		} else {
 			// We don't care too much about the rest ...
 		}
+		return false;
+	}
+
+	private static int[] parseIntegers(StringBuffer content) {
+		int[] result = new int[16];
+		int num = 0;
+		int i = 0;
+		int n = content.length();
+		while (i < n) {
+			while ((i < n) && Character.isWhitespace(content.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while ((i < n) && !Character.isWhitespace(content.charAt(i))) {
+				i++;
+			}
+			if (i > start) {
+				try {
+					int val = Integer.parseInt(content.substring(start, i));
+					if (num == result.length) {
+						result = LineTokenizer.grow(result);
+					}
+					result[num++] = val;
+				} catch (NumberFormatException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		int[] tmp = new int[num];
+		System.arraycopy(result, 0, tmp, 0, num);
+		return tmp;
 	}
 
-	public void characters(char[] ch, int start, int length)
-			throws SAXException {
-		String lecture = new String(ch, start, length);
-		if (_buffer != null)
-			_buffer.append(lecture);
+	private void addBP(int pos5, int pos3, String edge5, String edge3,
+			String orientation) {
+		if (_numBPs == _bp5.length) {
+			int size = 2 * _numBPs;
+			_bp5 = LineTokenizer.grow(_bp5);
+			_bp3 = LineTokenizer.grow(_bp3);
+			_bpEdge5 = growStrings(_bpEdge5, size);
+			_bpEdge3 = growStrings(_bpEdge3, size);
+			_bpOrientation = growStrings(_bpOrientation, size);
+		}
+		_bp5[_numBPs] = pos5;
+		_bp3[_numBPs] = pos3;
+		_bpEdge5[_numBPs] = edge5;
+		_bpEdge3[_numBPs] = edge3;
+		_bpOrientation[_numBPs] = orientation;
+		_numBPs++;
 	}
 
-	public void startDocument() throws SAXException {
+	private void addHelix(int pos5, int pos3, int length, String id) {
+		if (_numHelices == _helix5.length) {
+			_helix5 = LineTokenizer.grow(_helix5);
+			_helix3 = LineTokenizer.grow(_helix3);
+			_helixLength = LineTokenizer.grow(_helixLength);
+			_helixID = growStrings(_helixID, 2 * _numHelices);
+		}
+		_helix5[_numHelices] = pos5;
+		_helix3[_numHelices] = pos3;
+		_helixLength[_numHelices] = length;
+		_helixID[_numHelices] = id;
+		_numHelices++;
 	}
 
-	public void endDocument() throws SAXException {
-		postProcess();
+	private static String[] growStrings(String[] a, int size) {
+		String[] tmp = new String[size];
+		System.arraycopy(a, 0, tmp, 0, a.length);
+		return tmp;
 	}
 
+	/**
+	 * Only keeps the base-pairs having a known (cis/trans) orientation
+	 */
 	private void filterBasePairs() {
-		Vector<BPTemp> result = new Vector<BPTemp>();
-		for (int i = 0; i < _structure.size(); i++) {
-			BPTemp bp = _structure.get(i);
-			if (bp.orientation.equals("c") || bp.orientation.equals("t")) {
-				result.add(bp);
+		int num = 0;
+		for (int i = 0; i < _numBPs; i++) {
+			String o = _bpOrientation[i];
+			if (o.equals("c") || o.equals("t")) {
+				_bp5[num] = _bp5[i];
+				_bp3[num] = _bp3[i];
+				_bpEdge5[num] = _bpEdge5[i];
+				_bpEdge3[num] = _bpEdge3[i];
+				_bpOrientation[num] = o;
+				num++;
 			}
 		}
-		_structure = result;
+		_numBPs = num;
 	}
 
 	public String getSequence() {
 		return _sequence;
 	}
 
+	/**
+	 * Checks, in a single left-to-right scan, whether some base-pairs of a
+	 * structure are crossing (or ill-formed).
+	 * @param str A sequence of base-pairing positions
+	 * @return <code>true</code> if the structure is not well-parenthesized
+	 */
 	public static boolean isSelfCrossing(int[] str) {
-		Stack<Point> intervals = new Stack<Point>();
-		intervals.add(new Point(0, str.length - 1));
-		while (!intervals.empty()) {
-			Point p = intervals.pop();
-			if (p.x <= p.y) {
-				if (str[p.x] == -1) {
-					intervals.push(new Point(p.x + 1, p.y));
-				} else {
-					int i = p.x;
-					int j = p.y;
-					int k = str[i];
-					if ((k <= i) || (k > j)) {
-						return true;
-					} else {
-						intervals.push(new Point(i + 1, k - 1));
-						intervals.push(new Point(k + 1, j));
-					}
-				}
+		int[] stack = new int[str.length];
+		int top = 0;
+		for (int i = 0; i < str.length; i++) {
+			int k = str[i];
+			if (k == -1) {
+				continue;
+			}
+			if ((k == i) || (k < -1) || (k >= str.length)) {
+				return true;
+			}
+			if (k > i) {
+				stack[top++] = i;
+			} else if ((top == 0) || (stack[--top] != k)) {
+				return true;
 			}
 		}
-		return false;
+		return (top != 0);
 	}
 
 	@SuppressWarnings("unused")
@@ -381,99 +436,203 @@ public class RNAMLParser extends DefaultHandler {
 	 * @param str A sequence of base-pairing positions
 	 * @return A sequence of non-crossing base-pairing positions
 	 */
-	
 	public static int[] planarize(int[] str) {
 		if (!isSelfCrossing(str)) {
 			return str;
 		}
-		
-		int length = str.length;
+		return planarizeSparse(str);
+	}
 
+	/**
+	 * Computes a maximal planar subset in O(n) space. A base-pair crossing no
+	 * other one belongs to any maximal planar subset, so it is kept right away.
+	 * Base-pairs are tested for crossings using range min/max queries over the
+	 * partners, in O(n.log(n)) time overall.
+	 * The remaining (crossing) base-pairs are then handled by a sparse dynamic
+	 * programming, processing them by increasing 3' position. The best planar
+	 * subset nested inside a base-pair (i,k) only depends on base-pairs
+	 * already processed, and is obtained by a weighted interval scheduling
+	 * over the base-pairs inside (i,k). This takes O(c.log(c)) time per
+	 * base-pair, c being the number of crossing base-pairs.
+	 * @param str A sequence of base-pairing positions
+	 * @return A sequence of non-crossing base-pairing positions
+	 */
+	private static int[] planarizeSparse(int[] str) {
+		int length = str.length;
 		int[] result = new int[length];
-		for (int i = 0; i < result.length; i++) {
+		for (int i = 0; i < length; i++) {
 			result[i] = -1;
 		}
 
-		short[][] tab = new short[length][length];
-		short[][] backtrack = new short[length][length];
-		int theta = 3;
+		// Segment trees for the min/max partner over ranges of positions
+		int[] minTree = new int[2 * length];
+		int[] maxTree = new int[2 * length];
+		for (int i = 0; i < length; i++) {
+			int x = str[i];
+			boolean paired = (x >= 0) && (x < length) && (x != i) && (str[x] == i);
+			minTree[length + i] = paired ? x : Integer.MAX_VALUE;
+			maxTree[length + i] = paired ? x : -1;
+		}
+		for (int i = length - 1; i > 0; i--) {
+			minTree[i] = Math.min(minTree[2 * i], minTree[2 * i + 1]);
+			maxTree[i] = Math.max(maxTree[2 * i], maxTree[2 * i + 1]);
+		}
 
-		for (int i = 0; i < result.length; i++) {
-			for (int j = i; j < Math.min(i + theta, result.length); j++) {
-				tab[i][j] = 0;
-				backtrack[i][j] = -1;
-			}
+		// 3' ends of the crossing base-pairs, by increasing position
+		int[] crossing = new int[length];
+		for (int i = 0; i < length; i++) {
+			crossing[i] = -1;
 		}
-		for (int n = theta; n < length; n++) {
-			for (int i = 0; i < length - n; i++) {
-				int j = i + n;
-				tab[i][j] = tab[i + 1][j];
-				backtrack[i][j] = -1;
-				int k = str[i];
-				if ((k != -1) && (k <= j) && (i < k)) {
-					int tmp = 1;
-					if (i + 1 <= k - 1) {
-						tmp += tab[i + 1][k - 1];
-					}
-					if (k + 1 <= j) {
-						tmp += tab[k + 1][j];
+		int numEnds = 0;
+		int[] ends = new int[length];
+		for (int p = 0; p < length; p++) {
+			int x = maxTree[length + p];
+			if ((x >= 0) && (x < p)) {
+				int l = x + 1 + length;
+				int r = p + length;
+				int min = Integer.MAX_VALUE;
+				int max = -1;
+				// Partners of the positions in ]x,p[
+				while (l < r) {
+					if ((l & 1) == 1) {
+						min = Math.min(min, minTree[l]);
+						max = Math.max(max, maxTree[l]);
+						l++;
 					}
-					if (tmp > tab[i][j]) {
-						tab[i][j] = (short) tmp;
-						backtrack[i][j] = (short) k;
+					if ((r & 1) == 1) {
+						r--;
+						min = Math.min(min, minTree[r]);
+						max = Math.max(max, maxTree[r]);
 					}
+					l >>= 1;
+					r >>= 1;
+				}
+				if ((min < x) || (max > p)) {
+					crossing[x] = p;
+					crossing[p] = x;
+					ends[numEnds++] = p;
+				} else {
+					result[x] = p;
+					result[p] = x;
 				}
 			}
 		}
-		Stack<Point> intervals = new Stack<Point>();
-		intervals.add(new Point(0, length - 1));
+		minTree = null;
+		maxTree = null;
+
+		// inside[e]: Size of the best planar subset nested in the e-th base-pair
+		int[] inside = new int[numEnds];
+		int[] best = new int[numEnds];
+		boolean[] taken = new boolean[numEnds];
+		for (int e = 0; e < numEnds; e++) {
+			int x = crossing[ends[e]];
+			inside[e] = scheduleIntervals(crossing, ends, inside, x,
+					firstEndAfter(ends, e, x), e, best, taken);
+		}
+
+		// Backtracking, each interval being given by its left bound and the
+		// range of indices of its 3' ends
+		Stack<int[]> intervals = new Stack<int[]>();
+		intervals.push(new int[] { -1, 0, numEnds });
 		while (!intervals.empty()) {
-			Point p = intervals.pop();
-			if (p.x <= p.y) {
-				if (backtrack[p.x][p.y] == -1) {
-					result[p.x] = -1;
-					intervals.push(new Point(p.x + 1, p.y));
+			int[] interval = intervals.pop();
+			int from = interval[1];
+			scheduleIntervals(crossing, ends, inside, interval[0], from,
+					interval[2], best, taken);
+			int e = interval[2] - 1;
+			while (e >= from) {
+				if (taken[e]) {
+					int p = ends[e];
+					int x = crossing[p];
+					result[x] = p;
+					result[p] = x;
+					int after = firstEndAfter(ends, e, x);
+					intervals.push(new int[] { x, after, e });
+					e = after - 1;
 				} else {
-					int i = p.x;
-					int j = p.y;
-					int k = backtrack[p.x][p.y];
-					result[i] = k;
-					result[k] = i;
-					intervals.push(new Point(i + 1, k - 1));
-					intervals.push(new Point(k + 1, j));
+					e--;
 				}
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Returns the lowest index, lower than bound, of a 3' end located after
+	 * position x.
+	 */
+	private static int firstEndAfter(int[] ends, int bound, int x) {
+		int lo = 0;
+		int hi = bound;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ends[mid] > x) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Weighted interval scheduling over the base-pairs whose 3' ends have
+	 * indices in [from,to[ and whose 5' ends are located after position left.
+	 * Each base-pair weighs one plus the size of the best planar subset it
+	 * encloses. Fills best (best weight up to each index) and taken (whether
+	 * the base-pair is part of the best schedule up to its own index).
+	 * @return The weight of an optimal schedule
+	 */
+	private static int scheduleIntervals(int[] str, int[] ends, int[] inside,
+			int left, int from, int to, int[] best, boolean[] taken) {
+		int prev = 0;
+		for (int e = from; e < to; e++) {
+			int x = str[ends[e]];
+			best[e] = prev;
+			taken[e] = false;
+			if (x > left) {
+				int b = firstEndAfter(ends, e, x) - 1;
+				int cand = 1 + inside[e] + ((b >= from) ? best[b] : 0);
+				if (cand > prev) {
+					best[e] = cand;
+					taken[e] = true;
+				}
+			}
+			prev = best[e];
+		}
+		return prev;
+	}
+
 	public int[] getBasicPlanarStructure() {
+		return _planarStructure.clone();
+	}
+
+	private int[] computeBasicPlanarStructure() {
 		int[] str = new int[_sequence.length()];
 		for (int i = 0; i < str.length; i++) {
 			str[i] = -1;
 		}
-		// System.out.print("Seq:"+_sequence+"\nHel:"+_helices);
 
         // First for the canonical bps
-		for (int i = 0; i < _structure.size(); i++) {
-			BPTemp bp = _structure.get(i);
-			int a = bp.pos5 - 1;
-			int b = bp.pos3 - 1;
+		for (int i = 0; i < _numBPs; i++) {
+			int a = _bp5[i] - 1;
+			int b = _bp3[i] - 1;
+			String e5 = _bpEdge5[i];
+			String e3 = _bpEdge3[i];
 			if ((str[a]==-1)&&(str[b]==-1)
-					&& (bp.orientation.equals("c"))
-					&&(    (bp.edge5.equals("+") && bp.edge3.equals("+"))
-					    || (bp.edge5.equals("-") && bp.edge3.equals("-")))) {
+					&& (_bpOrientation[i].equals("c"))
+					&&(    (e5.equals("+") && e3.equals("+"))
+					    || (e5.equals("-") && e3.equals("-")))) {
 				str[a] = b;
 				str[b] = a;
 			}
 		}
 		
 		// ... then helices...
-		 for (int i=0;i<_helices.size();i++) { 
-			 HelixTemp h = _helices.get(i);
-			 for (int j=0;j<h.length;j++) { 
-				 int a = h.pos5-1+j; 
-				 int b = h.pos3-1-j; 
+		 for (int i=0;i<_numHelices;i++) { 
+			 for (int j=0;j<_helixLength[i];j++) { 
+				 int a = _helix5[i]-1+j; 
+				 int b = _helix3[i]-1-j; 
 				 if ((str[a]==-1)&&(str[b]==-1))
 				 {
 				 str[a] = b; 
@@ -483,81 +642,67 @@ public class RNAMLParser extends DefaultHandler {
 		}
 		
 		// ... and finally non-canonical bps
-		for (int i = 0; i < _structure.size(); i++) {
-			Vector<Integer> basenumbers=getBaseNumbers();
-			BPTemp bp = _structure.get(i);
-			int a = bp.pos5 - 1;
-			int b = bp.pos3 - 1;
+		for (int i = 0; i < _numBPs; i++) {
+			int a = _bp5[i] - 1;
+			int b = _bp3[i] - 1;
 			
-			int realPosA= basenumbers.get(a);
-			int realPosB= basenumbers.get(b);
-			//System.out.print("a:"+a+" real:"+realPosA+"\n");
+			int realPosA= _sequenceIDs[a];
+			int realPosB= _sequenceIDs[b];
 			if ((str[a]==-1)&&(str[b]==-1)&&(realPosB-realPosA>4)) {
 				str[a] = b;
 				str[b] = a;
 			}
 		}
-		/*for(int j=0;j<str.length;j++){
-			System.out.print(str[j]+"  ");
-		}*/
-		//System.out.print("\n");
 		return planarize(str);
 	}
 
-	@SuppressWarnings("unused")
-	private BPTemp[] getBPArray() {
-		BPTemp[] result = new BPTemp[_sequence.length()];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = null;
-		}
-
-		Vector<BPTemp> res = _structure;
-		for (int i = 0; i < res.size(); i++) {
-			BPTemp bp = res.get(i);
-			int bpfrom = bp.pos5 - 1;
-			int bpto = bp.pos3 - 1;
-			if ((result[bpfrom] == null) && (result[bpto] == null)) {
-				result[bpfrom] = bp;
-				result[bpto] = bp;
-			}
-		}
-		return result;
-	}
-
 	private void postProcess() {
 		// First, check if base numbers were specified
-		if (_sequenceIDs.size()==0)
+		if (_sequenceIDs.length == 0)
 		{
-			Vector<Integer> results = new Vector<Integer>();
-			for (int i = 0; i < _sequence.length(); i++) {
-				results.add(new Integer(i+1));
+			_sequenceIDs = new int[_sequence.length()];
+			for (int i = 0; i < _sequenceIDs.length; i++) {
+				_sequenceIDs[i] = i + 1;
 			}
-			_sequenceIDs = results;
 		}
 		filterBasePairs();
-		int[] planar = getBasicPlanarStructure();
-		for (int i = 0; i < _structure.size(); i++) {
-			BPTemp bp = _structure.get(i);
-			int k = bp.pos5 - 1;
-			int l = bp.pos3 - 1;
-			if ((k == i) && (l == planar[i])) {
-				_structurePlanar.add(bp);
-			} else {
-				_structureAux.add(bp);
+		_planarStructure = computeBasicPlanarStructure();
+		_bpIsPlanar = new boolean[_numBPs];
+		for (int i = 0; i < _numBPs; i++) {
+			int k = _bp5[i] - 1;
+			int l = _bp3[i] - 1;
+			_bpIsPlanar[i] = (_planarStructure[k] == l);
+		}
+	}
+
+	private Vector<BPTemp> getBPs(boolean planar) {
+		Vector<BPTemp> result = new Vector<BPTemp>();
+		for (int i = 0; i < _numBPs; i++) {
+			if (_bpIsPlanar[i] == planar) {
+				result.add(new BPTemp(_bp5[i], _bp3[i], _bpEdge5[i],
+						_bpEdge3[i], _bpOrientation[i]));
 			}
 		}
+		return result;
 	}
 
 	public Vector<BPTemp> getPlanarBPs() {
-		return _structurePlanar;
+		return getBPs(true);
 	}
 
 	public Vector<BPTemp> getAuxBPs() {
-		return _structureAux;
+		return getBPs(false);
 	}
 
-	public Vector<Integer> getBaseNumbers() {
+	public int[] getBaseNumbersArray() {
 		return _sequenceIDs;
 	}
 
-}
\ No newline at end of file
+	public Vector<Integer> getBaseNumbers() {
+		Vector<Integer> result = new Vector<Integer>(_sequenceIDs.length);
+		for (int i = 0; i < _sequenceIDs.length; i++) {
+			result.add(_sequenceIDs[i]);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,476 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * An immutable copy of the whole state of an RNA, used to record successive
+ * versions of a model and to copy it.
+ * <p>
+ * The bases are copied in blocks of fixed size, holding their nucleotides,
+ * numbers, partners, styles, base-pair styles, coordinates and values. A
+ * snapshot taken after a previous one shares every block left unchanged
+ * since then, so that a series of snapshots only costs memory for what
+ * changes between versions, for instance the coordinates of a moved helix.
+ * Base styles are interned, and are shared by all snapshots.
+ * <p>
+ * The rest of the RNA (annotations, additional base-pairs, drawing
+ * parameters...) is serialized on its own, bases being referred to by their
+ * index, and is shared with the previous snapshot whenever it is unchanged.
+ */
+public class RNASnapshot {
+
+	private static final int BLOCK_SIZE = 256;
+
+	/**
+	 * Membership recorded for the bases which are plain nucleotides
+	 */
+	private static final int NUCLEOTIDE = Integer.MIN_VALUE;
+
+	/**
+	 * Style recorded for the unpaired bases left to the default style
+	 */
+	private static final ModeleStyleBP DEFAULT_BP_STYLE = new ModeleStyleBP();
+
+	/**
+	 * The state of consecutive bases. Blocks are never modified once built.
+	 */
+	private static class Block {
+		private char[] _labels;
+		private int[] _indices;
+		private int[] _numbers;
+		private int[] _partners;
+		private ModeleStyleBase[] _styles;
+		private Boolean[] _colored;
+		private double[] _x;
+		private double[] _y;
+		private double[] _centerX;
+		private double[] _centerY;
+		private double[] _values;
+
+		/**
+		 * Style of the base-pair of each base without its partners, unless
+		 * the base shares the style of its partner
+		 */
+		private ModeleStyleBP[] _bpStyles;
+		private boolean[] _bpShared;
+		private int[] _bpPartners5;
+		private int[] _bpPartners3;
+
+		/**
+		 * Second nucleotide and membership of comparison bases, or null if
+		 * the block only holds nucleotides
+		 */
+		private char[] _labels2;
+		private int[] _memberships;
+
+		private Block(BaseIndex bases, int from, int to, RNA rna) {
+			int n = to - from;
+			_labels = new char[n];
+			_indices = new int[n];
+			_numbers = new int[n];
+			_partners = new int[n];
+			_styles = new ModeleStyleBase[n];
+			_colored = new Boolean[n];
+			_x = new double[n];
+			_y = new double[n];
+			_centerX = new double[n];
+			_centerY = new double[n];
+			_values = new double[n];
+			_bpStyles = new ModeleStyleBP[n];
+			_bpShared = new boolean[n];
+			_bpPartners5 = new int[n];
+			_bpPartners3 = new int[n];
+			for (int k = 0; k < n; k++) {
+				ModeleBase mb = bases.get(from + k);
+				if (mb instanceof ModeleBasesComparison) {
+					if (_labels2 == null) {
+						_labels2 = new char[n];
+						_memberships = new int[n];
+						Arrays.fill(_memberships, NUCLEOTIDE);
+					}
+					ModeleBasesComparison mbc = (ModeleBasesComparison) mb;
+					_labels[k] = mbc.get_base1();
+					_labels2[k] = mbc.get_base2();
+					_memberships[k] = mbc.get_appartenance();
+				} else {
+					_labels[k] = ((ModeleBaseNucleotide) mb).get_c();
+				}
+				_indices[k] = mb.getIndex();
+				_numbers[k] = mb.getBaseNumber();
+				_partners[k] = mb.getElementStructure();
+				_styles[k] = mb._styleBase;
+				_colored[k] = mb._colorie;
+				_x[k] = mb.getX();
+				_y[k] = mb.getY();
+				_centerX[k] = mb.getCenterX();
+				_centerY[k] = mb.getCenterY();
+				_values[k] = rna.getBaseValue(from + k);
+				ModeleStyleBP bp = mb.getStyleBP();
+				_bpPartners5[k] = -1;
+				_bpPartners3[k] = -1;
+				if (bases.isSharedWithPartner(from + k)) {
+					_bpShared[k] = true;
+				} else if (bp != null) {
+					if ((bp.getPartner5OrNull() == null)
+							&& (bp.getPartner3OrNull() == null)
+							&& bp.hasSameStyle(DEFAULT_BP_STYLE)) {
+						_bpStyles[k] = DEFAULT_BP_STYLE;
+					} else {
+						_bpStyles[k] = bp.copyStyle();
+						_bpPartners5[k] = bases.indexOf(bp.getPartner5OrNull());
+						_bpPartners3[k] = bases.indexOf(bp.getPartner3OrNull());
+					}
+				}
+			}
+		}
+
+		/**
+		 * Tests whether this block still holds the state of some bases.
+		 */
+		private boolean matches(BaseIndex bases, int from, int to, RNA rna) {
+			if (to - from != _labels.length) {
+				return false;
+			}
+			for (int k = 0; k < _labels.length; k++) {
+				ModeleBase mb = bases.get(from + k);
+				if (mb instanceof ModeleBasesComparison) {
+					ModeleBasesComparison mbc = (ModeleBasesComparison) mb;
+					if ((_labels2 == null) || (_memberships[k] == NUCLEOTIDE)
+							|| (_labels[k] != mbc.get_base1())
+							|| (_labels2[k] != mbc.get_base2())
+							|| (_memberships[k] != mbc.get_appartenance())) {
+						return false;
+					}
+				} else if (((_labels2 != null) && (_memberships[k] != NUCLEOTIDE))
+						|| (_labels[k] != ((ModeleBaseNucleotide) mb).get_c())) {
+					return false;
+				}
+				if ((_indices[k] != mb.getIndex())
+						|| (_numbers[k] != mb.getBaseNumber())
+						|| (_partners[k] != mb.getElementStructure())
+						|| (_styles[k] != mb._styleBase)
+						|| !equal(_colored[k], mb._colorie)
+						|| (_x[k] != mb.getX()) || (_y[k] != mb.getY())
+						|| (_centerX[k] != mb.getCenterX())
+						|| (_centerY[k] != mb.getCenterY())
+						|| (_values[k] != rna.getBaseValue(from + k))
+						|| !matchesBPStyle(bases, from + k, k)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean matchesBPStyle(BaseIndex bases, int i, int k) {
+			ModeleStyleBP bp = bases.get(i).getStyleBP();
+			if (bases.isSharedWithPartner(i) || _bpShared[k]) {
+				return bases.isSharedWithPartner(i) && _bpShared[k];
+			}
+			if ((bp == null) || (_bpStyles[k] == null)) {
+				return (bp == null) && (_bpStyles[k] == null);
+			}
+			return bp.hasSameStyle(_bpStyles[k])
+					&& (_bpPartners5[k] == bases.indexOf(bp.getPartner5OrNull()))
+					&& (_bpPartners3[k] == bases.indexOf(bp.getPartner3OrNull()));
+		}
+
+		/**
+		 * Creates the bases recorded in this block, and appends them to a
+		 * list. Their partners are set by linkBases, once all the bases are
+		 * created.
+		 */
+		private void addBases(ArrayList<ModeleBase> bases) {
+			for (int k = 0; k < _labels.length; k++) {
+				ModeleBase mb;
+				if ((_labels2 != null) && (_memberships[k] != NUCLEOTIDE)) {
+					ModeleBasesComparison mbc = new ModeleBasesComparison(
+							_labels[k], _labels2[k], _indices[k]);
+					mbc.set_appartenance(_memberships[k]);
+					mb = mbc;
+				} else {
+					mb = new ModeleBaseNucleotide(_labels[k], _indices[k]);
+				}
+				mb.setBaseNumber(_numbers[k]);
+				mb.setStyleBase(_styles[k]);
+				mb.setColorie(_colored[k]);
+				mb.setCoords(_x[k], _y[k]);
+				mb.setCenter(_centerX[k], _centerY[k]);
+				bases.add(mb);
+			}
+		}
+
+		/**
+		 * Sets the partners, base-pair styles and values of the bases
+		 * recorded in this block.
+		 */
+		private void linkBases(ArrayList<ModeleBase> bases, int from, RNA rna) {
+			for (int k = 0; k < _labels.length; k++) {
+				ModeleBase mb = bases.get(from + k);
+				ModeleStyleBP bp = _bpStyles[k];
+				if (_bpShared[k]) {
+					bp = bases.get(_partners[k]).getStyleBP();
+				} else if (bp != null) {
+					bp = bp.copyStyle();
+					if (_bpPartners5[k] >= 0) {
+						bp.setPartner5(bases.get(_bpPartners5[k]));
+					}
+					if (_bpPartners3[k] >= 0) {
+						bp.setPartner3(bases.get(_bpPartners3[k]));
+					}
+				}
+				mb.setElementStructure(_partners[k], bp);
+				if (_values[k] != 0.0) {
+					rna.setBaseValue(from + k, _values[k]);
+				}
+			}
+		}
+	}
+
+	private static boolean equal(Boolean a, Boolean b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	/**
+	 * The bases of an RNA, with their indices. Bases are expected to know
+	 * their index, and are otherwise looked up in a table built on first
+	 * need.
+	 */
+	private static class BaseIndex {
+		private ArrayList<ModeleBase> _bases;
+		private IdentityHashMap<ModeleBase, Integer> _indices = null;
+
+		private BaseIndex(ArrayList<ModeleBase> bases) {
+			_bases = bases;
+		}
+
+		private ModeleBase get(int i) {
+			return _bases.get(i);
+		}
+
+		/**
+		 * Returns the index of a base, or -1 if it does not belong to the RNA.
+		 */
+		private int indexOf(ModeleBase mb) {
+			if (mb == null) {
+				return -1;
+			}
+			int i = mb.getIndex();
+			if ((i >= 0) && (i < _bases.size()) && (_bases.get(i) == mb)) {
+				return i;
+			}
+			if (_indices == null) {
+				_indices = new IdentityHashMap<ModeleBase, Integer>();
+				for (int k = 0; k < _bases.size(); k++) {
+					_indices.put(_bases.get(k), k);
+				}
+			}
+			Integer result = _indices.get(mb);
+			return (result == null) ? -1 : result;
+		}
+
+		/**
+		 * Tests whether a base shares the base-pair style of its partner,
+		 * which comes first.
+		 */
+		private boolean isSharedWithPartner(int i) {
+			ModeleBase mb = _bases.get(i);
+			int j = mb.getElementStructure();
+			return (j >= 0) && (j < i) && (mb.getStyleBP() != null)
+					&& (_bases.get(j).getStyleBP() == mb.getStyleBP());
+		}
+	}
+
+	/**
+	 * Reference to a base, or to the list of bases, in the serialized rest
+	 * of the RNA.
+	 */
+	private static class BaseRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private static final int ALL = -1;
+		private int _index;
+
+		private BaseRef(int index) {
+			_index = index;
+		}
+	}
+
+	private static class RestOutputStream extends ObjectOutputStream {
+		private BaseIndex _bases;
+
+		private RestOutputStream(OutputStream out, BaseIndex bases)
+				throws IOException {
+			super(out);
+			_bases = bases;
+			enableReplaceObject(true);
+		}
+
+		protected Object replaceObject(Object obj) {
+			if (obj == _bases._bases) {
+				return new BaseRef(BaseRef.ALL);
+			}
+			if (obj instanceof ModeleBase) {
+				int i = _bases.indexOf((ModeleBase) obj);
+				if (i >= 0) {
+					return new BaseRef(i);
+				}
+			}
+			return obj;
+		}
+	}
+
+	private static class RestInputStream extends ObjectInputStream {
+		private ArrayList<ModeleBase> _bases;
+
+		private RestInputStream(InputStream in, ArrayList<ModeleBase> bases)
+				throws IOException {
+			super(in);
+			_bases = bases;
+			enableResolveObject(true);
+		}
+
+		protected Object resolveObject(Object obj) {
+			if (obj instanceof BaseRef) {
+				int i = ((BaseRef) obj)._index;
+				return (i == BaseRef.ALL) ? _bases : _bases.get(i);
+			}
+			return obj;
+		}
+	}
+
+	private String _name;
+	private int _size;
+	private Block[] _blocks;
+
+	/**
+	 * Everything but the bases, serialized
+	 */
+	private byte[] _rest;
+
+	private RNASnapshot() {
+	}
+
+	/**
+	 * Tests whether snapshots can be taken of an RNA, that is whether its
+	 * bases are all nucleotides or comparison bases.
+	 */
+	public static boolean canRecord(RNA rna) {
+		ArrayList<ModeleBase> bases = rna.get_listeBases();
+		for (int i = 0; i < bases.size(); i++) {
+			ModeleBase mb = bases.get(i);
+			if (!(mb instanceof ModeleBaseNucleotide)
+					&& !(mb instanceof ModeleBasesComparison)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Takes a snapshot of an RNA.
+	 */
+	public static RNASnapshot of(RNA rna) {
+		return of(rna, null);
+	}
+
+	/**
+	 * Takes a snapshot of an RNA, sharing the parts of a previous snapshot
+	 * which are left unchanged.
+	 *
+	 * @param rna
+	 *            - The RNA, which must be recordable (see canRecord)
+	 * @param previous
+	 *            - A previous snapshot, or <code>null</code>
+	 */
+	public static RNASnapshot of(RNA rna, RNASnapshot previous) {
+		if (!canRecord(rna)) {
+			throw new IllegalArgumentException(
+					"Only RNAs made of nucleotides or comparison bases can be recorded in snapshots");
+		}
+		RNASnapshot result = new RNASnapshot();
+		BaseIndex bases = new BaseIndex(rna.get_listeBases());
+		result._name = rna.getName();
+		result._size = bases._bases.size();
+		result._blocks = new Block[(result._size + BLOCK_SIZE - 1)
+				/ BLOCK_SIZE];
+		for (int b = 0; b < result._blocks.length; b++) {
+			int from = b * BLOCK_SIZE;
+			int to = Math.min(from + BLOCK_SIZE, result._size);
+			if ((previous != null) && (b < previous._blocks.length)
+					&& previous._blocks[b].matches(bases, from, to, rna)) {
+				result._blocks[b] = previous._blocks[b];
+			} else {
+				result._blocks[b] = new Block(bases, from, to, rna);
+			}
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ObjectOutputStream oout = new RestOutputStream(out, bases);
+			oout.writeObject(rna);
+			oout.close();
+			result._rest = out.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException("cannot record RNA: " + e.toString());
+		}
+		if ((previous != null) && Arrays.equals(result._rest, previous._rest)) {
+			result._rest = previous._rest;
+		}
+		return result;
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	public int getSize() {
+		return _size;
+	}
+
+	/**
+	 * Returns a new RNA holding the state recorded in this snapshot.
+	 */
+	public RNA toRNA() {
+		ArrayList<ModeleBase> bases = new ArrayList<ModeleBase>(_size);
+		for (int b = 0; b < _blocks.length; b++) {
+			_blocks[b].addBases(bases);
+		}
+		RNA result;
+		try {
+			ObjectInputStream in = new RestInputStream(
+					new ByteArrayInputStream(_rest), bases);
+			result = (RNA) in.readObject();
+		} catch (Exception e) {
+			throw new RuntimeException("cannot restore RNA: " + e.toString());
+		}
+		for (int b = 0; b < _blocks.length; b++) {
+			_blocks[b].linkBases(bases, b * BLOCK_SIZE, result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.util.Arrays;
+
+/**
+ * Differences between two secondary structures over the same positions,
+ * computed in linear time from their partner arrays. Base-pairs are
+ * designated by their 5' base, and are either conserved, removed (only found
+ * in the first structure) or added (only found in the second one). A helix
+ * is a maximal stack of base-pairs (i,j), (i+1,j-1)..., designated by the 5'
+ * base of its outermost base-pair, and is affected when one of its base-pairs
+ * is removed or added.
+ */
+public class RNAStructureDiff {
+
+	private int[] _first;
+	private int[] _second;
+	private int[] _conserved;
+	private int[] _removed;
+	private int[] _added;
+	private int[] _numChanged;
+	private int[] _removedHelices;
+	private int[] _addedHelices;
+
+	private RNAStructureDiff(int[] first, int[] second) {
+		_first = first;
+		_second = second;
+	}
+
+	/**
+	 * Compares two secondary structures. Positions beyond the end of the
+	 * shortest structure are considered as unpaired in it. The arrays are
+	 * kept by the result, and must not be modified afterwards.
+	 * 
+	 * @param first
+	 *            - The partner of each base in the first structure, or -1
+	 * @param second
+	 *            - The partner of each base in the second structure, or -1
+	 */
+	public static RNAStructureDiff compute(int[] first, int[] second) {
+		RNAStructureDiff result = new RNAStructureDiff(first, second);
+		result.comparePairs();
+		result._removedHelices = affectedHelices(first, result._removed);
+		result._addedHelices = affectedHelices(second, result._added);
+		return result;
+	}
+
+	/**
+	 * Compares the main secondary structures of two RNAs, additional
+	 * base-pairs being ignored.
+	 */
+	public static RNAStructureDiff compute(RNA first, RNA second) {
+		return compute(first.getNonCrossingStruct(), second
+				.getNonCrossingStruct());
+	}
+
+	private void comparePairs() {
+		int n = Math.max(_first.length, _second.length);
+		int numConserved = 0;
+		int numRemoved = 0;
+		int numAdded = 0;
+		for (int i = 0; i < n; i++) {
+			int p1 = getPartnerInFirst(i);
+			int p2 = getPartnerInSecond(i);
+			if (p1 > i) {
+				if (p1 == p2) {
+					numConserved++;
+				} else {
+					numRemoved++;
+				}
+			}
+			if ((p2 > i) && (p2 != p1)) {
+				numAdded++;
+			}
+		}
+		_conserved = new int[numConserved];
+		_removed = new int[numRemoved];
+		_added = new int[numAdded];
+		_numChanged = new int[n + 1];
+		numConserved = 0;
+		numRemoved = 0;
+		numAdded = 0;
+		for (int i = 0; i < n; i++) {
+			int p1 = getPartnerInFirst(i);
+			int p2 = getPartnerInSecond(i);
+			if (p1 > i) {
+				if (p1 == p2) {
+					_conserved[numConserved++] = i;
+				} else {
+					_removed[numRemoved++] = i;
+				}
+			}
+			if ((p2 > i) && (p2 != p1)) {
+				_added[numAdded++] = i;
+			}
+			_numChanged[i + 1] = _numChanged[i] + ((p1 != p2) ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Lists the helices of a structure containing some of its base-pairs.
+	 * 
+	 * @param str
+	 *            - The structure
+	 * @param pairs
+	 *            - 5' bases of base-pairs of the structure, by increasing
+	 *            index
+	 * @return The 5' bases of the outermost base-pairs of the helices, by
+	 *         increasing index
+	 */
+	private static int[] affectedHelices(int[] str, int[] pairs) {
+		int[] result = new int[pairs.length];
+		int numHelices = 0;
+		int start = -1;
+		int k = 0;
+		for (int i = 0; (i < str.length) && (k < pairs.length); i++) {
+			if (str[i] > i) {
+				if (!isStacked(str, i)) {
+					start = i;
+				}
+				if (pairs[k] == i) {
+					if ((numHelices == 0) || (result[numHelices - 1] != start)) {
+						result[numHelices++] = start;
+					}
+					k++;
+				}
+			}
+		}
+		return Arrays.copyOf(result, numHelices);
+	}
+
+	/**
+	 * Tests whether a base is the 5' base of a base-pair stacked onto the
+	 * base-pair of the previous base.
+	 */
+	private static boolean isStacked(int[] str, int i) {
+		return (i > 0) && (i < str.length) && (str[i] > i)
+				&& (str[i - 1] == str[i] + 1);
+	}
+
+	private static int getHelixLength(int[] str, int start) {
+		int result = 0;
+		if ((start >= 0) && (start < str.length) && (str[start] > start)) {
+			result = 1;
+			while (isStacked(str, start + result)) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	public int getPartnerInFirst(int i) {
+		return (i < _first.length) ? _first[i] : -1;
+	}
+
+	public int getPartnerInSecond(int i) {
+		return (i < _second.length) ? _second[i] : -1;
+	}
+
+	/**
+	 * Tests whether a base has different partners in both structures.
+	 */
+	public boolean isChanged(int i) {
+		return getPartnerInFirst(i) != getPartnerInSecond(i);
+	}
+
+	/**
+	 * Returns the number of bases from i to j, both included, having
+	 * different partners in both structures. Runs in constant time.
+	 */
+	public int getNumChangedBases(int i, int j) {
+		return _numChanged[j + 1] - _numChanged[i];
+	}
+
+	/**
+	 * Tests whether both structures have the same base-pairs.
+	 */
+	public boolean isIdentical() {
+		return (_removed.length == 0) && (_added.length == 0);
+	}
+
+	/**
+	 * Returns the 5' bases of the base-pairs found in both structures, by
+	 * increasing index.
+	 */
+	public int[] getConservedPairs() {
+		return _conserved.clone();
+	}
+
+	/**
+	 * Returns the 5' bases of the base-pairs only found in the first
+	 * structure, by increasing index.
+	 */
+	public int[] getRemovedPairs() {
+		return _removed.clone();
+	}
+
+	/**
+	 * Returns the 5' bases of the base-pairs only found in the second
+	 * structure, by increasing index.
+	 */
+	public int[] getAddedPairs() {
+		return _added.clone();
+	}
+
+	public int getNumConservedPairs() {
+		return _conserved.length;
+	}
+
+	public int getNumRemovedPairs() {
+		return _removed.length;
+	}
+
+	public int getNumAddedPairs() {
+		return _added.length;
+	}
+
+	/**
+	 * Returns the helices of the first structure containing a removed
+	 * base-pair, by increasing index of their 5' base.
+	 */
+	public int[] getRemovedHelices() {
+		return _removedHelices.clone();
+	}
+
+	/**
+	 * Returns the helices of the second structure containing an added
+	 * base-pair, by increasing index of their 5' base.
+	 */
+	public int[] getAddedHelices() {
+		return _addedHelices.clone();
+	}
+
+	/**
+	 * Returns the number of base-pairs of the helix of the first structure
+	 * starting at a given base, or 0 if the base is not the 5' base of a
+	 * base-pair.
+	 */
+	public int getHelixLengthInFirst(int start) {
+		return getHelixLength(_first, start);
+	}
+
+	/**
+	 * Returns the number of base-pairs of the helix of the second structure
+	 * starting at a given base, or 0 if the base is not the 5' base of a
+	 * base-pair.
+	 */
+	public int getHelixLengthInSecond(int start) {
+		return getHelixLength(_second, start);
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.util.Arrays;
+
+/**
+ * Index of the loops and helices of a planar secondary structure, built in
+ * linear time. Loops are numbered from 0, the exterior loop, and each
+ * base-pair closes a loop of its own. The members of a loop are listed in the
+ * order in which they are met when walking around it: unpaired bases, both
+ * bases of the base-pairs branching from the loop, and finally the 3' and 5'
+ * bases of its closing base-pair.
+ */
+class RNAStructureIndex {
+
+	private int[] _partner;
+
+	/**
+	 * Loop containing each unpaired base, or from which the base-pair of each
+	 * paired base branches
+	 */
+	private int[] _loop;
+
+	/**
+	 * Loop closed by the base-pair of each paired base, or -1
+	 */
+	private int[] _closedLoop;
+
+	/**
+	 * 5' base of the outermost base-pair of the stack containing the
+	 * base-pair of each paired base, or -1
+	 */
+	private int[] _helixStart;
+
+	/**
+	 * Position of each base within the members of _loop
+	 */
+	private int[] _positionInLoop;
+
+	/**
+	 * 5' base of the closing base-pair of each loop, or -1
+	 */
+	private int[] _loopOpening;
+	private int[] _loopOffsets;
+	private int[] _loopMembers;
+	private int[] _numHelices;
+
+	private RNAStructureIndex(int[] str) {
+		_partner = str;
+	}
+
+	/**
+	 * Builds the index of a structure.
+	 * 
+	 * @param str
+	 *            - The partner of each base, or -1
+	 * @return The index, or <code>null</code> if the structure is not planar
+	 */
+	static RNAStructureIndex build(int[] str) {
+		RNAStructureIndex result = new RNAStructureIndex(str);
+		if (!result.indexLoops()) {
+			return null;
+		}
+		result.indexMembers();
+		return result;
+	}
+
+	private boolean indexLoops() {
+		int n = _partner.length;
+		int numLoops = 1;
+		for (int k = 0; k < n; k++) {
+			if (_partner[k] > k) {
+				numLoops++;
+			}
+		}
+		_loop = new int[n];
+		_closedLoop = new int[n];
+		_helixStart = new int[n];
+		_loopOpening = new int[numLoops];
+		_loopOffsets = new int[numLoops + 1];
+		_numHelices = new int[numLoops];
+		Arrays.fill(_closedLoop, -1);
+		Arrays.fill(_helixStart, -1);
+		_loopOpening[0] = -1;
+		int[] stack = new int[numLoops];
+		int top = 0;
+		int nextLoop = 1;
+		for (int k = 0; k < n; k++) {
+			int p = _partner[k];
+			if (p == -1) {
+				_loop[k] = stack[top];
+				_loopOffsets[stack[top]]++;
+			} else if (p > k) {
+				if ((p >= n) || (_partner[p] != k)) {
+					return false;
+				}
+				_loop[k] = stack[top];
+				_loopOffsets[stack[top]] += 2;
+				_numHelices[stack[top]]++;
+				int l = nextLoop++;
+				_closedLoop[k] = l;
+				_closedLoop[p] = l;
+				_loopOpening[l] = k;
+				_loopOffsets[l] += 2;
+				_numHelices[l]++;
+				if ((k > 0) && (p + 1 < n) && (_partner[k - 1] == p + 1)) {
+					_helixStart[k] = _helixStart[k - 1];
+				} else {
+					_helixStart[k] = k;
+				}
+				_helixStart[p] = _helixStart[k];
+				stack[++top] = l;
+			} else {
+				if ((p < -1) || (top == 0) || (_loopOpening[stack[top]] != p)) {
+					return false;
+				}
+				top--;
+				_loop[k] = stack[top];
+			}
+		}
+		if (top != 0) {
+			return false;
+		}
+		// Turning loop sizes into offsets
+		int offset = 0;
+		for (int l = 0; l <= numLoops; l++) {
+			int size = _loopOffsets[l];
+			_loopOffsets[l] = offset;
+			offset += size;
+		}
+		return true;
+	}
+
+	private void indexMembers() {
+		int n = _partner.length;
+		_positionInLoop = new int[n];
+		_loopMembers = new int[_loopOffsets[_loopOffsets.length - 1]];
+		int[] next = Arrays.copyOf(_loopOffsets, _loopOffsets.length - 1);
+		for (int k = 0; k < n; k++) {
+			int p = _partner[k];
+			if (p == -1) {
+				addMember(k, _loop[k], next);
+			} else if (p > k) {
+				addMember(k, _loop[k], next);
+				addMember(p, _loop[k], next);
+			} else {
+				int l = _closedLoop[k];
+				_loopMembers[next[l]++] = k;
+				_loopMembers[next[l]++] = p;
+			}
+		}
+	}
+
+	private void addMember(int i, int l, int[] next) {
+		_positionInLoop[i] = next[l] - _loopOffsets[l];
+		_loopMembers[next[l]++] = i;
+	}
+
+	/**
+	 * Returns the loop containing an unpaired base, or from which the
+	 * base-pair of a paired base branches.
+	 */
+	int getLoop(int i) {
+		return _loop[i];
+	}
+
+	/**
+	 * Returns the loop closed by the base-pair of a base, or -1 if the base
+	 * is unpaired.
+	 */
+	int getClosedLoop(int i) {
+		return _closedLoop[i];
+	}
+
+	/**
+	 * Returns the loop enclosing a loop, or -1 for the exterior loop.
+	 */
+	int getParentLoop(int l) {
+		return (l == 0) ? -1 : _loop[_loopOpening[l]];
+	}
+
+	/**
+	 * Returns the 5' base of the base-pair closing a loop, or -1 for the
+	 * exterior loop.
+	 */
+	int getLoopOpening(int l) {
+		return _loopOpening[l];
+	}
+
+	/**
+	 * Returns the 3' base of the base-pair closing a loop, or -1 for the
+	 * exterior loop.
+	 */
+	int getLoopClosing(int l) {
+		return (l == 0) ? -1 : _partner[_loopOpening[l]];
+	}
+
+	int getNumLoops() {
+		return _loopOpening.length;
+	}
+
+	int getLoopSize(int l) {
+		return _loopOffsets[l + 1] - _loopOffsets[l];
+	}
+
+	int getLoopMember(int l, int k) {
+		return _loopMembers[_loopOffsets[l] + k];
+	}
+
+	/**
+	 * Returns the position of a base within the members of the loop returned
+	 * by getLoop.
+	 */
+	int getPositionInLoop(int i) {
+		return _positionInLoop[i];
+	}
+
+	/**
+	 * Returns the number of base-pairs found on a loop, including its closing
+	 * base-pair.
+	 */
+	int getNumHelices(int l) {
+		return _numHelices[l];
+	}
+
+	/**
+	 * Returns the 5' base of the outermost base-pair stacked with that of a
+	 * paired base, or -1 if the base is unpaired.
+	 */
+	int getHelixStart(int i) {
+		return _helixStart[i];
+	}
+}
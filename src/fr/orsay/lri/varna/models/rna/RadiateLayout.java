@@ -0,0 +1,454 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The radiate layout, drawing each loop on a circle and each helix as a
+ * straight stem. Regions are laid out from an explicit stack rather than by
+ * recursion, so that the depth of a structure is not bounded by the size of
+ * the call stack, and buffers are reused from one loop to the next, so that
+ * laying out n bases takes O(n) time and memory.
+ * <p>
+ * The region enclosed by each helix of a loop only depends on the position
+ * and direction of that helix, so that large regions may be laid out on
+ * several threads, writing to disjoint parts of the same arrays. The result
+ * is the same as that of a sequential layout.
+ */
+class RadiateLayout {
+
+	/**
+	 * Number of bases of the regions worth laying out in a task of their own
+	 */
+	private static final int MIN_TASK_SIZE = 4096;
+
+	private int[] _partner;
+	private int _offset;
+	private int _last;
+	private double _loopDistance;
+	private double _basePairDistance;
+	private double _multiLoopDistance;
+
+	/**
+	 * Coordinates of the bases, and of the centers of their loops, from
+	 * index _offset
+	 */
+	private double[] _x;
+	private double[] _y;
+	private double[] _centerX;
+	private double[] _centerY;
+
+	/**
+	 * Identifier of the center of each base, shared by the members of a loop,
+	 * whose center is the same point. It is twice the first base of the loop
+	 * plus one for the members of a loop, and twice the base itself for the
+	 * bases of a stem.
+	 */
+	private int[] _centerId;
+
+	/**
+	 * Angle of each base from the center of its loop. A base is a member of
+	 * a single loop, so that loops never write to the same entries.
+	 */
+	private double[] _angles;
+
+	/**
+	 * Radii of the loops, by number of base-pairs and of unpaired bases
+	 */
+	private Hashtable<Long, Double> _radii = new Hashtable<Long, Double>();
+
+	private int _numThreads = 1;
+
+	/**
+	 * Pool running the tasks of a parallel layout, number of tasks not
+	 * completed yet, and first failure of a task. Guarded by this layout.
+	 */
+	private ExecutorService _pool = null;
+	private int _pendingTasks = 0;
+	private Throwable _failure = null;
+
+	/**
+	 * Prepares the layout of the bases from first to last.
+	 * 
+	 * @param partner
+	 *            - The partner of each base of the RNA, or -1
+	 */
+	RadiateLayout(int[] partner, int first, int last, double loopDistance,
+			double basePairDistance, double multiLoopDistance) {
+		int n = Math.max(last - first + 1, 0);
+		_partner = partner;
+		_offset = first;
+		_last = last;
+		_loopDistance = loopDistance;
+		_basePairDistance = basePairDistance;
+		_multiLoopDistance = multiLoopDistance;
+		_x = new double[n];
+		_y = new double[n];
+		_centerX = new double[n];
+		_centerY = new double[n];
+		_centerId = new int[n];
+		_angles = new double[n];
+	}
+
+	/**
+	 * Sets the number of threads laying out large regions, 1 for a
+	 * sequential layout.
+	 */
+	void setNumThreads(int numThreads) {
+		_numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Lays out the bases from i to j, the region starting at a given point
+	 * and heading in a given direction. If i and j are paired, the region is
+	 * drawn as a stem, and as a loop otherwise.
+	 */
+	void layout(int i, int j, double x, double y, double dirAngle) {
+		if ((_numThreads > 1) && (j - i + 1 >= MIN_TASK_SIZE)) {
+			ExecutorService pool = Executors.newFixedThreadPool(_numThreads);
+			try {
+				synchronized (this) {
+					_pool = pool;
+					_failure = null;
+				}
+				submit(i, j, x, y, dirAngle);
+				awaitTasks();
+			} finally {
+				synchronized (this) {
+					_pool = null;
+				}
+				pool.shutdownNow();
+			}
+		} else {
+			new Worker().layout(i, j, x, y, dirAngle);
+		}
+	}
+
+	/**
+	 * Lays out a region in a task of its own.
+	 */
+	private synchronized void submit(final int i, final int j,
+			final double x, final double y, final double dirAngle) {
+		_pendingTasks++;
+		try {
+			_pool.execute(new Runnable() {
+				public void run() {
+					try {
+						new Worker().layout(i, j, x, y, dirAngle);
+					} catch (Throwable e) {
+						taskFailed(e);
+					} finally {
+						taskDone();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			taskFailed(e);
+			taskDone();
+		}
+	}
+
+	private synchronized boolean isParallel() {
+		return (_pool != null);
+	}
+
+	private synchronized void taskFailed(Throwable e) {
+		if (_failure == null) {
+			_failure = e;
+		}
+		notifyAll();
+	}
+
+	private synchronized void taskDone() {
+		_pendingTasks--;
+		if (_pendingTasks == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until all the tasks are completed, or one of them failed. The
+	 * layout is not interrupted, but the interrupted status of the thread is
+	 * preserved.
+	 */
+	private synchronized void awaitTasks() {
+		boolean interrupted = false;
+		while ((_pendingTasks > 0) && (_failure == null)) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (_failure instanceof RuntimeException) {
+			throw (RuntimeException) _failure;
+		} else if (_failure instanceof Error) {
+			throw (Error) _failure;
+		} else if (_failure != null) {
+			throw new RuntimeException(_failure);
+		}
+	}
+
+	double getX(int k) {
+		return _x[k - _offset];
+	}
+
+	double getY(int k) {
+		return _y[k - _offset];
+	}
+
+	double getCenterX(int k) {
+		return _centerX[k - _offset];
+	}
+
+	double getCenterY(int k) {
+		return _centerY[k - _offset];
+	}
+
+	int getCenterId(int k) {
+		return _centerId[k - _offset];
+	}
+
+	private double getRadius(int n1, int n2) {
+		Long key = (((long) n1) << 32) | n2;
+		Double result = _radii.get(key);
+		if (result == null) {
+			result = determineRadius(n1, n2);
+			_radii.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Lays out regions, one at a time, from its own stack.
+	 */
+	private class Worker {
+
+		/**
+		 * Bases of the loop being laid out, and 5' bases of its helices
+		 */
+		private int[] _members = new int[16];
+		private int[] _helices = new int[16];
+
+		/**
+		 * Regions left to lay out: first and last bases, position and
+		 * direction
+		 */
+		private int[] _stackFirst = new int[16];
+		private int[] _stackLast = new int[16];
+		private double[] _stackX = new double[16];
+		private double[] _stackY = new double[16];
+		private double[] _stackAngle = new double[16];
+		private int _stackSize = 0;
+
+		void layout(int i, int j, double x, double y, double dirAngle) {
+			push(i, j, x, y, dirAngle);
+			while (_stackSize > 0) {
+				_stackSize--;
+				int first = _stackFirst[_stackSize];
+				int last = _stackLast[_stackSize];
+				double px = _stackX[_stackSize];
+				double py = _stackY[_stackSize];
+				double angle = _stackAngle[_stackSize];
+				while ((first <= last) && (_partner[first] == last)) {
+					drawBasePair(first, last, px, py, angle);
+					first++;
+					last--;
+					px += _loopDistance * Math.cos(angle);
+					py += _loopDistance * Math.sin(angle);
+				}
+				if (first <= last) {
+					drawLoop(first, last, px, py, angle);
+				}
+			}
+		}
+
+		private void push(int i, int j, double x, double y, double dirAngle) {
+			if (_stackSize == _stackFirst.length) {
+				int capacity = 2 * _stackSize;
+				_stackFirst = Arrays.copyOf(_stackFirst, capacity);
+				_stackLast = Arrays.copyOf(_stackLast, capacity);
+				_stackX = Arrays.copyOf(_stackX, capacity);
+				_stackY = Arrays.copyOf(_stackY, capacity);
+				_stackAngle = Arrays.copyOf(_stackAngle, capacity);
+			}
+			_stackFirst[_stackSize] = i;
+			_stackLast[_stackSize] = j;
+			_stackX[_stackSize] = x;
+			_stackY[_stackSize] = y;
+			_stackAngle[_stackSize] = dirAngle;
+			_stackSize++;
+		}
+
+		private void drawBasePair(int i, int j, double x, double y,
+				double dirAngle) {
+			double normalAngle = Math.PI / 2.0;
+			int a = i - _offset;
+			int b = j - _offset;
+			_centerX[a] = x;
+			_centerY[a] = y;
+			_centerX[b] = x;
+			_centerY[b] = y;
+			_centerId[a] = 2 * i;
+			_centerId[b] = 2 * j;
+			_x[a] = (x + _basePairDistance * Math.cos(dirAngle - normalAngle) / 2.0);
+			_y[a] = (y + _basePairDistance * Math.sin(dirAngle - normalAngle) / 2.0);
+			_x[b] = (x + _basePairDistance * Math.cos(dirAngle + normalAngle) / 2.0);
+			_y[b] = (y + _basePairDistance * Math.sin(dirAngle + normalAngle) / 2.0);
+		}
+
+		private void drawLoop(int i, int j, double x, double y, double dirAngle) {
+			int numMembers = 0;
+			int numLoopHelices = 0;
+			int k = i;
+			while (k <= j) {
+				int l = _partner[k];
+				if (numMembers + 2 > _members.length) {
+					_members = Arrays.copyOf(_members, 2 * _members.length);
+				}
+				if ((l > k) && (l <= _last)) {
+					if (numLoopHelices == _helices.length) {
+						_helices = Arrays.copyOf(_helices, 2 * _helices.length);
+					}
+					_members[numMembers++] = k;
+					_members[numMembers++] = l;
+					_helices[numLoopHelices++] = k;
+					k = l + 1;
+				} else {
+					_members[numMembers++] = k;
+					k++;
+				}
+			}
+			int mlSize = numMembers + 2;
+			int numHelices = numLoopHelices + 1;
+			double multiLoopRadius;
+			double angleIncrementML;
+			double angleIncrementBP;
+			if (mlSize > 3) {
+				multiLoopRadius = getRadius(numHelices, mlSize - numHelices);
+				angleIncrementML = -2.0
+						* Math.asin(((float) _multiLoopDistance)
+								/ (2.0 * multiLoopRadius));
+				angleIncrementBP = -2.0
+						* Math.asin(((float) _basePairDistance)
+								/ (2.0 * multiLoopRadius));
+			} else {
+				multiLoopRadius = 35.0;
+				angleIncrementBP = -2.0
+						* Math.asin(((float) _basePairDistance)
+								/ (2.0 * multiLoopRadius));
+				angleIncrementML = (-2.0 * Math.PI - angleIncrementBP) / 2.0;
+			}
+
+			double centerDist = Math.sqrt(Math.max(Math.pow(multiLoopRadius, 2)
+					- Math.pow(_basePairDistance / 2.0, 2), 0.0))
+					- _loopDistance;
+			double mlCenterX = (x + (centerDist * Math.cos(dirAngle)));
+			double mlCenterY = (y + (centerDist * Math.sin(dirAngle)));
+
+			// Base directing angle for (multi|hairpin) loop, from the center's
+			// perspective
+			double baseAngle = dirAngle
+			// U-turn
+					+ Math.PI
+					// Account for already drawn supporting base-pair
+					+ 0.5 * angleIncrementBP
+					// Base cannot be paired twice, so next base is at
+					// "unpaired base distance"
+					+ 1.0 * angleIncrementML;
+			for (k = numMembers - 1; k >= 0; k--) {
+				int l = _members[k];
+				int a = l - _offset;
+				_centerX[a] = mlCenterX;
+				_centerY[a] = mlCenterY;
+				_centerId[a] = 2 * i + 1;
+				_angles[a] = baseAngle;
+				_x[a] = mlCenterX + multiLoopRadius * Math.cos(baseAngle);
+				_y[a] = mlCenterY + multiLoopRadius * Math.sin(baseAngle);
+				if ((_partner[l] < l) && (_partner[l] != -1)) {
+					baseAngle += angleIncrementBP;
+				} else {
+					baseAngle += angleIncrementML;
+				}
+			}
+			// Helices are pushed backwards, so that they are laid out in the
+			// order of the sequence. Large ones are handed to other threads
+			// in a parallel layout.
+			boolean parallel = isParallel();
+			for (k = numLoopHelices - 1; k >= 0; k--) {
+				int h = _helices[k];
+				int a = h - _offset;
+				int b = _partner[h] - _offset;
+				double newAngle = (_angles[a] + _angles[b]) / 2.0;
+				double newX = (_loopDistance * Math.cos(newAngle)) + (_x[a] + _x[b]) / 2.0;
+				double newY = (_loopDistance * Math.sin(newAngle)) + (_y[a] + _y[b]) / 2.0;
+				if (parallel && (_partner[h] - h - 1 >= MIN_TASK_SIZE)) {
+					submit(h + 1, _partner[h] - 1, newX, newY, newAngle);
+				} else {
+					push(h + 1, _partner[h] - 1, newX, newY, newAngle);
+				}
+			}
+		}
+	}
+
+	private double objFun(int n1, int n2, double r) {
+		return (((double) n1) * 2.0
+				* Math.asin(_basePairDistance / (2.0 * r))
+				+ ((double) n2) * 2.0
+				* Math.asin(_multiLoopDistance / (2.0 * r)) - (2.0 * Math.PI));
+	}
+
+	private double determineRadius(int n1, int n2) {
+		double xmin = _basePairDistance / 2.0;
+		double xmax = 3.0 * _basePairDistance + 1;
+		double x = (xmin + xmax) / 2.0;
+		double y = 10000.0;
+		double ymin = -1000.0;
+		double ymax = 1000.0;
+		int numIt = 0;
+		double precision = 0.00001;
+		while ((Math.abs(y) > precision) && (numIt < 10000)) {
+			x = (xmin + xmax) / 2.0;
+			y = objFun(n1, n2, x);
+			ymin = objFun(n1, n2, xmax);
+			ymax = objFun(n1, n2, xmin);
+			if (ymin > 0.0) {
+				xmax = xmax + (xmax - xmin);
+			} else if ((y <= 0.0) && (ymax > 0.0)) {
+				xmax = x;
+			} else if ((y >= 0.0) && (ymin < 0.0)) {
+				xmin = x;
+			} else if (ymax < 0.0) {
+				xmin = Math.max(xmin - (x - xmin), Math.max(
+						_basePairDistance / 2.0, _multiLoopDistance / 2.0));
+				xmax = x;
+			}
+			numIt++;
+		}
+		return x;
+	}
+
+}
@@ -11,6 +11,8 @@ import java.awt.geom.Rectangle2D;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Random;
 import java.util.Stack;
@@ -21,6 +23,45 @@ import fr.orsay.lri.varna.VARNAPanel;
 public class VARNASecDraw {
 	public static VARNAPanel _vp = null;
 
+	/**
+	 * Default seed of the random moves, so that drawings are reproducible
+	 */
+	public static final long DEFAULT_SEED = 0;
+
+	public static final int DEFAULT_MAX_STEPS = 1000;
+
+	private Random _rnd = new Random(DEFAULT_SEED);
+	private int _maxSteps = DEFAULT_MAX_STEPS;
+	private long _maxTime = 0;
+
+	/**
+	 * Sets the seed of the random moves resolving overlaps between helices.
+	 */
+	public void setSeed(long seed)
+	{
+		_rnd.setSeed(seed);
+	}
+
+	/**
+	 * Sets the maximal number of random moves resolving overlaps between
+	 * helices.
+	 */
+	public void setMaxSteps(int steps)
+	{
+		_maxSteps = steps;
+	}
+
+	/**
+	 * Sets the maximal time spent resolving overlaps between helices.
+	 * 
+	 * @param millis
+	 *            - The time budget in milliseconds, or 0 for no limit
+	 */
+	public void setMaxTime(long millis)
+	{
+		_maxTime = millis;
+	}
+
 	
 	public abstract class Portion
 	{
@@ -535,6 +576,7 @@ public class VARNASecDraw {
 		PairedPortion _p;
 		RNA _r;
 		HelixEmbedding _parent;
+		int _index;
 		
 		public HelixEmbedding(Point2D.Double support, PairedPortion p, RNA r, HelixEmbedding parent)
 		{
@@ -629,7 +671,6 @@ public class VARNASecDraw {
 
 						Point2D.Double np = new Point2D.Double(args[0],args[1]); 
 						p.add(np);
-						System.out.println(Arrays.toString(args));
 					}
 					pi.next();
 				}
@@ -650,7 +691,6 @@ public class VARNASecDraw {
 					vx/=d;
 					vy/=d;
 					interval = d/((double)_p._len-1);
-					System.out.println("DELTA: "+interval+" "+_r.LOOP_DISTANCE);
 				}
 				for (int n=0;n<_p._len;n++)
 				{
@@ -737,6 +777,242 @@ public class VARNASecDraw {
 		}
 	}
 	
+	/**
+	 * Pairs of overlapping helices. The bounding boxes of the helices are
+	 * indexed in a uniform grid, so that only helices sharing a cell are
+	 * intersected, and a move only updates the pairs involving the helices
+	 * it displaced.
+	 */
+	private class HelixOverlaps
+	{
+		private ArrayList<HelixEmbedding> _helices;
+		private Area[] _areas;
+		private Rectangle2D[] _bounds;
+		private ArrayList<HashSet<Integer>> _overlaps;
+		private int _numOverlaps = 0;
+		private HashMap<Long,ArrayList<Integer>> _cells = new HashMap<Long,ArrayList<Integer>>();
+		private double _cellSize;
+
+		// Helices displaced by the last move, and the pairs it changed
+		private ArrayList<Integer> _moved = new ArrayList<Integer>();
+		private ArrayList<Integer> _removed = new ArrayList<Integer>();
+		private ArrayList<Integer> _added = new ArrayList<Integer>();
+		private int[] _movedMark;
+		private int[] _candidateMark;
+		private int _mark = 0;
+
+		public HelixOverlaps(ArrayList<HelixEmbedding> helices)
+		{
+			int n = helices.size();
+			_helices = helices;
+			_areas = new Area[n];
+			_bounds = new Rectangle2D[n];
+			_overlaps = new ArrayList<HashSet<Integer>>(n);
+			_movedMark = new int[n];
+			_candidateMark = new int[n];
+			double size = 0.0;
+			for (int i=0;i<n;i++)
+			{
+				helices.get(i)._index = i;
+				_overlaps.add(new HashSet<Integer>());
+				updateShape(i);
+				size += Math.max(_bounds[i].getWidth(),_bounds[i].getHeight());
+			}
+			_cellSize = Math.max(1.0,size/Math.max(1,n));
+			for (int i=0;i<n;i++)
+			{
+				index(i,true);
+			}
+			for (int i=0;i<n;i++)
+			{
+				_mark++;
+				for (int j : getCandidates(i))
+				{
+					if ((j>i) && intersects(i,j))
+					{ addOverlap(i,j); }
+				}
+			}
+		}
+
+		public int getNumOverlaps()
+		{
+			return _numOverlaps;
+		}
+
+		/**
+		 * Updates the overlaps after a helix was rotated, along with the
+		 * helices it supports. Pairs of displaced helices moved rigidly
+		 * together, and are left as they were.
+		 */
+		public void move(HelixEmbedding h)
+		{
+			_moved.clear();
+			_removed.clear();
+			_added.clear();
+			_mark++;
+			Stack<HelixEmbedding> s = new Stack<HelixEmbedding>();
+			s.push(h);
+			while (!s.isEmpty())
+			{
+				HelixEmbedding c = s.pop();
+				_moved.add(c._index);
+				_movedMark[c._index] = _mark;
+				s.addAll(c._children);
+			}
+			int moveMark = _mark;
+			for (int i : _moved)
+			{
+				index(i,false);
+				for (int j : _overlaps.get(i).toArray(new Integer[0]))
+				{
+					if (_movedMark[j]!=moveMark)
+					{
+						removeOverlap(i,j);
+						_removed.add(i);
+						_removed.add(j);
+					}
+				}
+				updateShape(i);
+				index(i,true);
+			}
+			for (int i : _moved)
+			{
+				_mark++;
+				for (int j : getCandidates(i))
+				{
+					if ((_movedMark[j]!=moveMark) && intersects(i,j))
+					{
+						addOverlap(i,j);
+						_added.add(i);
+						_added.add(j);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Restores the overlaps after the last move was cancelled.
+		 */
+		public void undo()
+		{
+			for (int i : _moved)
+			{
+				index(i,false);
+				updateShape(i);
+				index(i,true);
+			}
+			for (int k=0;k<_added.size();k+=2)
+			{ removeOverlap(_added.get(k),_added.get(k+1)); }
+			for (int k=0;k<_removed.size();k+=2)
+			{ addOverlap(_removed.get(k),_removed.get(k+1)); }
+			_moved.clear();
+		}
+
+		private void updateShape(int i)
+		{
+			_areas[i] = new Area(_helices.get(i).getShape());
+			_bounds[i] = _areas[i].getBounds2D();
+		}
+
+		private boolean intersects(int i, int j)
+		{
+			if (!_bounds[i].intersects(_bounds[j]))
+			{ return false; }
+			Area a = new Area(_areas[i]);
+			a.intersect(_areas[j]);
+			return !a.isEmpty();
+		}
+
+		private void addOverlap(int i, int j)
+		{
+			_overlaps.get(i).add(j);
+			_overlaps.get(j).add(i);
+			_numOverlaps++;
+		}
+
+		private void removeOverlap(int i, int j)
+		{
+			_overlaps.get(i).remove(j);
+			_overlaps.get(j).remove(i);
+			_numOverlaps--;
+		}
+
+		/**
+		 * Lists the helices sharing a cell with a given one, each once for
+		 * the current mark.
+		 */
+		private ArrayList<Integer> getCandidates(int i)
+		{
+			ArrayList<Integer> result = new ArrayList<Integer>();
+			_candidateMark[i] = _mark;
+			Rectangle2D b = _bounds[i];
+			int x0 = (int) Math.floor(b.getMinX()/_cellSize);
+			int x1 = (int) Math.floor(b.getMaxX()/_cellSize);
+			int y0 = (int) Math.floor(b.getMinY()/_cellSize);
+			int y1 = (int) Math.floor(b.getMaxY()/_cellSize);
+			for (int x=x0;x<=x1;x++)
+			{
+				for (int y=y0;y<=y1;y++)
+				{
+					ArrayList<Integer> cell = _cells.get(cellKey(x,y));
+					if (cell != null)
+					{
+						for (int j : cell)
+						{
+							if (_candidateMark[j]!=_mark)
+							{
+								_candidateMark[j] = _mark;
+								result.add(j);
+							}
+						}
+					}
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Adds a helix to, or removes it from, the cells covered by its
+		 * bounding box.
+		 */
+		private void index(int i, boolean add)
+		{
+			Rectangle2D b = _bounds[i];
+			int x0 = (int) Math.floor(b.getMinX()/_cellSize);
+			int x1 = (int) Math.floor(b.getMaxX()/_cellSize);
+			int y0 = (int) Math.floor(b.getMinY()/_cellSize);
+			int y1 = (int) Math.floor(b.getMaxY()/_cellSize);
+			for (int x=x0;x<=x1;x++)
+			{
+				for (int y=y0;y<=y1;y++)
+				{
+					Long key = cellKey(x,y);
+					ArrayList<Integer> cell = _cells.get(key);
+					if (add)
+					{
+						if (cell == null)
+						{
+							cell = new ArrayList<Integer>();
+							_cells.put(key,cell);
+						}
+						cell.add(i);
+					}
+					else if (cell != null)
+					{
+						cell.remove(Integer.valueOf(i));
+						if (cell.isEmpty())
+						{ _cells.remove(key); }
+					}
+				}
+			}
+		}
+
+		private Long cellKey(int x, int y)
+		{
+			return (((long) x) << 32) | (y & 0xffffffffL);
+		}
+	}
+
 	public double determineRadius(int numHelices, int numUnpaired, RNA r)
 	{
 		double circ = numHelices*r.BASE_PAIR_DISTANCE+(numHelices+numUnpaired)*r.LOOP_DISTANCE;
@@ -818,22 +1094,23 @@ public class VARNASecDraw {
 	}
 	
 	
-	public static Random _rnd = new Random();
-	
 	private static int MAX_NUM_DIR = 8;
 
 	public RNATree drawRNA(double dirAngle, RNA r) {
 		RNATree t = new RNATree();
 		buildTree(0, r.get_listeBases().size() - 1, t,  r );
-		System.out.println(t);
 		ArrayList<HelixEmbedding> all = new ArrayList<HelixEmbedding>();
 		HelixEmbedding root = null;
 		try {
 			root = new HelixEmbedding(new Point2D.Double(0.0,0.0),new PairedPortion(0,0,0,t),r,null); 
 			predrawTree(0,0,t,0.0,r,root,all);
-			int steps=1000;
-			double prevbadness = 1000000000;
-			while((steps>0)&&(prevbadness>0))
+			HelixOverlaps overlaps = new HelixOverlaps(all);
+			int badness = overlaps.getNumOverlaps();
+			long deadline = Long.MAX_VALUE;
+			if (_maxTime>0)
+			{ deadline = System.currentTimeMillis()+_maxTime; }
+			int steps=_maxSteps;
+			while((steps>0)&&(badness>0)&&(System.currentTimeMillis()<deadline))
 			{
 
 				// Generating new structure
@@ -850,33 +1127,20 @@ public class VARNASecDraw {
 					}				
 
 				//Evaluating solution
-				double badness = 0.0;
-				for (int i=0;i<all.size();i++)
-				{ 
-					Shape s1 = all.get(i).getShape();
-					for (int j=i+1;j<all.size();j++)
-					{ 
-						Shape s2 = all.get(j).getShape();
-						Area a = new Area(s1);
-						a.intersect(new Area(s2));
-						if (!a.isEmpty())
-						{
-							badness ++;
-						}
-					}
-				}
-
-				if (badness-prevbadness>0)
-				{
-					chosen.cancelMove(delta);
-				}
-				else
+				if (delta!=0)
 				{
-					prevbadness = badness;
+					overlaps.move(chosen);
+					if (overlaps.getNumOverlaps()>badness)
+					{
+						chosen.cancelMove(delta);
+						overlaps.undo();
+					}
+					else
+					{
+						badness = overlaps.getNumOverlaps();
+					}
 				}
 
-				System.out.println(badness);
-
 				steps--;
 			}
 			if (root!=null)
@@ -379,8 +379,8 @@ public class RNATemplate {
 					result[i] = -1;
 				}
 	
-				short[][] tab = new short[length][length];
-				short[][] backtrack = new short[length][length];
+				int[][] tab = new int[length][length];
+				int[][] backtrack = new int[length][length];
 	
 				// On the diagonal we have intervals containing only
 				// one endpoint. Therefore there can be no helix
@@ -406,8 +406,8 @@ public class RNATemplate {
 								tmp += tab[k + 1][j];
 							}
 							if (tmp > tab[i][j]) {
-								tab[i][j] = (short) tmp;
-								backtrack[i][j] = (short) k;
+								tab[i][j] = tmp;
+								backtrack[i][j] = k;
 							}
 						}
 					}
@@ -196,7 +196,7 @@ public class TreeAlign<ValueType1, ValueType2> {
 		 * and Decision2 is a child index, hence the types.
 		 */
 		private byte[][][][] DF1Decisions1;
-		private short[][][][] DF1Decisions2;
+		private int[][][][] DF1Decisions2;
 		
 		/**
 		 * This arrays have the same shape as respectively DF2.
@@ -204,7 +204,7 @@ public class TreeAlign<ValueType1, ValueType2> {
 		 * we can compute the alignment.
 		 */
 		private byte[][][][] DF2Decisions1;
-		private short[][][][] DF2Decisions2;
+		private int[][][][] DF2Decisions2;
 		
 		/**
 		 * Distances between subtrees.
@@ -218,7 +218,7 @@ public class TreeAlign<ValueType1, ValueType2> {
 		 * case gave the minimum, so that we can later compute the alignment.
 		 */
 		private byte[][] DTDecisions1;
-		private short[][] DTDecisions2;
+		private int[][] DTDecisions2;
 		
 		/**
 		 * Distances between labels.
@@ -279,13 +279,13 @@ public class TreeAlign<ValueType1, ValueType2> {
 			 * so that we can later compute the alignment.
 			 */
 			byte[][] DFLDecisions1;
-			short[][] DFLDecisions2;
+			int[][] DFLDecisions2;
 			
 			DFL = new float[m_i-s+2][n_j-t+2];
 			DFL[0][0] = 0; // D(empty forest, empty forest) = 0
 			
 			DFLDecisions1 = new byte[m_i-s+2][n_j-t+2];
-			DFLDecisions2 = new short[m_i-s+2][n_j-t+2];
+			DFLDecisions2 = new int[m_i-s+2][n_j-t+2];
 			
 			// Compute indexes of i_s and j_t because we will need them
 			int i_s = m_i != 0 ? treeData1.children[i][s] : -1;
@@ -380,7 +380,7 @@ public class TreeAlign<ValueType1, ValueType2> {
 					
 					DFL[p-s+1][q-t+1] = min;
 					DFLDecisions1[p-s+1][q-t+1] = (byte) decision1;
-					DFLDecisions2[p-s+1][q-t+1] = (short) decision2;
+					DFLDecisions2[p-s+1][q-t+1] = decision2;
 				}
 			}
 			
@@ -404,7 +404,7 @@ public class TreeAlign<ValueType1, ValueType2> {
 			// Allocate necessary arrays
 			DT = new float[treeData1.size][treeData2.size];
 			DTDecisions1 = new byte[treeData1.size][treeData2.size];
-			DTDecisions2 = new short[treeData1.size][treeData2.size];
+			DTDecisions2 = new int[treeData1.size][treeData2.size];
 			DL = new float[treeData1.size+1][treeData2.size+1];
 			DET1 = new float[treeData1.size];
 			DET2 = new float[treeData2.size];
@@ -412,10 +412,10 @@ public class TreeAlign<ValueType1, ValueType2> {
 			DEF2 = new float[treeData2.size];
 			DF1 = new float[treeData1.size][treeData2.size][][];
 			DF1Decisions1 = new byte[treeData1.size][treeData2.size][][];
-			DF1Decisions2 = new short[treeData1.size][treeData2.size][][];
+			DF1Decisions2 = new int[treeData1.size][treeData2.size][][];
 			DF2 = new float[treeData2.size][treeData1.size][][];
 			DF2Decisions1 = new byte[treeData2.size][treeData1.size][][];
-			DF2Decisions2 = new short[treeData2.size][treeData1.size][][];
+			DF2Decisions2 = new int[treeData2.size][treeData1.size][][];
 			
 			DL[treeData1.size][treeData2.size] = (float) labelDist.f(null, null);
 
@@ -475,7 +475,7 @@ public class TreeAlign<ValueType1, ValueType2> {
 						if (minCandidate < DT[i][j]) {
 							DT[i][j] = minCandidate;
 							DTDecisions1[i][j] = 1;
-							DTDecisions2[i][j] = (short) best_r;
+							DTDecisions2[i][j] = best_r;
 						}
 					}
 					// Lemma 2 - Case: Root is (i, blank)
@@ -493,7 +493,7 @@ public class TreeAlign<ValueType1, ValueType2> {
 						if (minCandidate < DT[i][j]) {
 							DT[i][j] = minCandidate;
 							DTDecisions1[i][j] = 2;
-							DTDecisions2[i][j] = (short) best_r;
+							DTDecisions2[i][j] = best_r;
 						}
 					}
 					// Lemma 2 - Case: Root is (i,j)
@@ -55,7 +55,7 @@ public class VueBaseValues extends JPanel implements TableModelListener {
 		{
 			ModeleBase mb = _vp.getRNA().get_listeBases().get(i);
 			data.add(mb);
-			_backup.add(mb.getValue());
+			_backup.add(_vp.getRNA().getBaseValue(i));
 		}
 		_tm = new ValueTableModel();
 		table = new JTable(_tm);
@@ -71,8 +71,7 @@ public class VueBaseValues extends JPanel implements TableModelListener {
 	{
 		for (int i = 0; i < _vp.getRNA().get_listeBases().size(); i++) 
 		{
-			ModeleBase mb = _vp.getRNA().get_listeBases().get(i);
-			mb.setValue(_backup.get(i));
+			_vp.getRNA().setBaseValue(i, _backup.get(i));
 		}
   	  _vp.getRNA().rescaleColorMap(_vp.getColorMap());
 	}
@@ -95,11 +94,11 @@ public class VueBaseValues extends JPanel implements TableModelListener {
 	    	} 
 	    	else if (col==2)
 	    	{
-	    		return new Double(mb.getValue());
+	    		return new Double(_vp.getRNA().getBaseValue(row));
 	    	} 
 	    	else if (col==3)
 	    	{
-	    		return _vp.getColorMap().getColorForValue(mb.getValue());
+	    		return _vp.getColorMap().getColorForValue(_vp.getRNA().getBaseValue(row));
 	    	}
 	    	return "N/A";
 	    }
@@ -112,7 +111,7 @@ public class VueBaseValues extends JPanel implements TableModelListener {
 	    public void setValueAt(Object value, int row, int col) {
 	    	if (getColumnName(col).equals("Value"))
 	    	{
-	    	  data.get(row).setValue(((Double)value));
+	    	  _vp.getRNA().setBaseValue(row, ((Double)value));
 	    	  _vp.getRNA().rescaleColorMap(_vp.getColorMap());
 	    	  _vp.repaint();
 	          fireTableCellUpdated(row, col);
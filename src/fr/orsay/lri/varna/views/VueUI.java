@@ -178,7 +178,12 @@ public class VueUI {
 					{
 						RNA r = new RNA();
 						r.loadSecStr(path);
-						_vp.drawRNAInterpolated(r);
+						if (r.getDrawn()) {
+							// Keeps the layout stored in the file
+							_vp.showRNAInterpolated(r);
+						} else {
+							_vp.drawRNAInterpolated(r);
+						}
 						_vp.repaint();
 					}
 					else
@@ -312,6 +317,8 @@ public class VueUI {
 			"Connect (MFold) File", "ct", "CT");
 	FileNameExtensionFilter _dbnFilter = new FileNameExtensionFilter(
 			"Dot-bracket notation (Vienna) File", "dbn", "DBN", "faa", "FAA");
+	FileNameExtensionFilter _binaryFilter = new FileNameExtensionFilter(
+			"VARNA Binary Structure File", "vrnb", "VRNB");
 
 	FileNameExtensionFilter _jpgFilter = new FileNameExtensionFilter(
 			"JPEG Picture", "jpeg", "jpg", "JPG", "JPEG");
@@ -422,6 +429,7 @@ public class VueUI {
 		v.add(_bpseqFilter);
 		v.add(_dbnFilter);
 		v.add(_ctFilter);
+		v.add(_binaryFilter);
 		v.add(_varnaFilter);
 		String dest = UIChooseOutputFile(v);
 		if (dest != null) {
@@ -433,6 +441,8 @@ public class VueUI {
 				_vp.getRNA().saveAsCT(dest, _vp.getTitle());
 			} else if (extLower.endsWith("dbn") || extLower.endsWith("faa")) {
 				_vp.getRNA().saveAsDBN(dest, _vp.getTitle());
+			} else if (extLower.endsWith("vrnb")) {
+				_vp.getRNA().saveAsBinary(dest, _vp.getTitle());
 			} else if (extLower.endsWith("varna")) {
 				_vp.saveSession(dest);
 			}
@@ -0,0 +1,224 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Checks that RNAs longer than 32,767 nucleotides are loaded, drawn and saved
+ * without overflowing any index. The synthetic structures are made of a long
+ * outer helix enclosing a multiloop of small pseudoknotted units
+ * <code>((([[.)))..]]</code>, whose maximal planar subset is known.
+ * <p>
+ * Run by <code>ant check</code> on 50,000 nt. Other lengths can be given as
+ * arguments, for instance 200000 1000000. Exits with status 1 on failure.
+ */
+public class LongRNACheck {
+
+	private static final String UNIT = "((([[.)))..]]";
+
+	private static final int OUTER_HELIX = 1000;
+
+	private static int _failures = 0;
+
+	private static void check(boolean ok, String what) {
+		if (!ok) {
+			System.err.println("LongRNA: " + what);
+			_failures++;
+		}
+	}
+
+	private static String structure(int length) {
+		int units = (length - 2 * OUTER_HELIX) / UNIT.length();
+		StringBuilder result = new StringBuilder(length);
+		for (int i = 0; i < OUTER_HELIX; i++) {
+			result.append('(');
+		}
+		for (int u = 0; u < units; u++) {
+			result.append(UNIT);
+		}
+		while (result.length() < length - OUTER_HELIX) {
+			result.append('.');
+		}
+		for (int i = 0; i < OUTER_HELIX; i++) {
+			result.append(')');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Partners of the bases in a dot-bracket structure, only reading one kind
+	 * of brackets
+	 */
+	private static int[] partners(String str, char open, char close) {
+		int[] result = new int[str.length()];
+		int[] stack = new int[str.length()];
+		int top = 0;
+		for (int i = 0; i < str.length(); i++) {
+			result[i] = -1;
+			if (str.charAt(i) == open) {
+				stack[top++] = i;
+			} else if (str.charAt(i) == close) {
+				int j = stack[--top];
+				result[i] = j;
+				result[j] = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Base-pairs of a partner array, each one coded as i*length+j, i<j
+	 */
+	private static HashSet<Long> pairs(int[] str) {
+		HashSet<Long> result = new HashSet<Long>();
+		for (int i = 0; i < str.length; i++) {
+			if (str[i] > i) {
+				result.add(((long) i) * str.length + str[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Additional base-pairs of an RNA, coded as by pairs(int[])
+	 */
+	private static HashSet<Long> auxPairs(RNA r) {
+		long n = r.get_listeBases().size();
+		HashSet<Long> result = new HashSet<Long>();
+		ArrayList<ModeleStyleBP> aux = r.getStructureAux();
+		for (int k = 0; k < aux.size(); k++) {
+			int i = aux.get(k).getPartner5().getIndex();
+			int j = aux.get(k).getPartner3().getIndex();
+			result.add(Math.min(i, j) * n + Math.max(i, j));
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that a drawing is made of finite coordinates, and that every
+	 * base-pair and every backbone link has a sensible length.
+	 */
+	private static void checkDrawing(RNA r, int[] planar, String mode) {
+		int n = r.get_listeBases().size();
+		double minPair = Double.MAX_VALUE, maxPair = 0.0;
+		double minLink = Double.MAX_VALUE, maxLink = 0.0;
+		boolean finite = true;
+		for (int i = 0; i < n; i++) {
+			ModeleBase mb = r.get_listeBases().get(i);
+			if (Double.isNaN(mb.getX()) || Double.isInfinite(mb.getX())
+					|| Double.isNaN(mb.getY()) || Double.isInfinite(mb.getY())) {
+				finite = false;
+			}
+			if (planar[i] > i) {
+				double d = distance(mb, r.get_listeBases().get(planar[i]));
+				minPair = Math.min(minPair, d);
+				maxPair = Math.max(maxPair, d);
+			}
+			if (i + 1 < n) {
+				double d = distance(mb, r.get_listeBases().get(i + 1));
+				minLink = Math.min(minLink, d);
+				maxLink = Math.max(maxLink, d);
+			}
+		}
+		check(finite, mode + " drew bases at non-finite coordinates");
+		check(maxPair - minPair < 1e-6, mode + " drew base-pairs from "
+				+ minPair + " to " + maxPair + " long");
+		check(minLink > 1.0, mode + " drew consecutive bases " + minLink
+				+ " apart");
+	}
+
+	private static double distance(ModeleBase a, ModeleBase b) {
+		return Math.hypot(a.getX() - b.getX(), a.getY() - b.getY());
+	}
+
+	private static void run(int length) throws Exception {
+		String str = structure(length);
+		int[] planar = partners(str, '(', ')');
+		int[] knots = partners(str, '[', ']');
+		HashSet<Long> knotPairs = pairs(knots);
+		int[] all = planar.clone();
+		for (int i = 0; i < length; i++) {
+			if (knots[i] >= 0) {
+				all[i] = knots[i];
+			}
+		}
+		StringBuilder seq = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			seq.append("ACGU".charAt(i % 4));
+		}
+
+		long start = System.currentTimeMillis();
+		check(Arrays.equals(RNAMLParser.planarize(all), planar), length
+				+ " nt: planarize did not keep the nested helices");
+		RNA r = new RNA();
+		r.loadSecStr(new StringReader(">long\n" + seq + "\n" + str + "\n"),
+				RNA.FILE_TYPE_DBN);
+		check(r.get_listeBases().size() == length, length
+				+ " nt: DBN loaded " + r.get_listeBases().size() + " bases");
+		check(Arrays.equals(r.getNonCrossingStruct(), planar), length
+				+ " nt: DBN loaded a wrong planar structure");
+		check(auxPairs(r).equals(knotPairs), length
+				+ " nt: DBN loaded wrong additional base-pairs");
+
+		r.drawRNA(RNA.DRAW_MODE_RADIATE);
+		checkDrawing(r, planar, length + " nt, radiate,");
+		r.drawRNA(RNA.DRAW_MODE_NAVIEW);
+		checkDrawing(r, planar, length + " nt, NAView,");
+
+		File f = File.createTempFile("varna", ".vrnb");
+		try {
+			r.saveAsBinary(f.getPath(), "long");
+			RNA s = new RNA();
+			s.loadSecStr(f.getPath());
+			check(s.getSeq().equals(r.getSeq()), length
+					+ " nt: binary file changed the sequence");
+			check(Arrays.equals(s.getNonCrossingStruct(), planar), length
+					+ " nt: binary file changed the planar structure");
+			check(auxPairs(s).equals(knotPairs), length
+					+ " nt: binary file changed the additional base-pairs");
+			boolean same = true;
+			for (int i = 0; i < length; i++) {
+				ModeleBase a = r.get_listeBases().get(i);
+				ModeleBase b = s.get_listeBases().get(i);
+				same &= (a.getX() == b.getX()) && (a.getY() == b.getY());
+			}
+			check(same, length + " nt: binary file changed the coordinates");
+		} finally {
+			f.delete();
+		}
+		System.out.println("LongRNA: " + length + " nt checked in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			run(50000);
+		}
+		for (int i = 0; i < args.length; i++) {
+			run(Integer.parseInt(args[i]));
+		}
+		if (_failures > 0) {
+			System.exit(1);
+		}
+	}
+}
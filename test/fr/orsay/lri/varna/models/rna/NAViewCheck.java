@@ -0,0 +1,355 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+/**
+ * Checks that NAView still draws a few fixed structures the way it did before
+ * it was ported to primitive arrays. The expected coordinates and centers
+ * were produced by the former engine.
+ * <p>
+ * Run by <code>ant check</code>. Exits with status 1 if any base is misplaced.
+ */
+public class NAViewCheck {
+
+	private static final double TOLERANCE = 1e-3;
+
+	private static final String[] STRUCTURES = {
+			"((((....))))",
+			"..((((...))..))....",
+			"((((((...((((....)))).(((...)))..((((....)))).))))))",
+			"((..((((...))))..(((((.....)))))..))....(((...)))",
+			"...(((.((((....)).))...)))...((((((((...)))..)))))..(((....)))...",
+			"((((.((((((.....))))))....((((.....))))...(((((.....)))))...))))" };
+
+	/**
+	 * Abscissa, ordinate and center of each base, for each structure
+	 */
+	private static final double[][] EXPECTED = {
+			{
+				216.2500, 245.1786, 250.0000, 245.1786,
+				216.2500, 204.6786, 250.0000, 204.6786,
+				216.2500, 164.1786, 250.0000, 164.1786,
+				216.2500, 123.6786, 250.0000, 123.6786,
+				193.0355, 73.9080, 250.0000, 75.0584,
+				222.5408, 27.5888, 250.0000, 75.0584,
+				277.4592, 27.5888, 250.0000, 75.0584,
+				306.9645, 73.9080, 250.0000, 75.0584,
+				283.7500, 123.6786, 250.0000, 123.6786,
+				283.7500, 164.1786, 250.0000, 164.1786,
+				283.7500, 204.6786, 250.0000, 204.6786,
+				283.7500, 245.1786, 250.0000, 245.1786 },
+			{
+				225.3496, 416.4851, 295.6523, 371.1520,
+				215.0069, 366.8810, 295.6523, 371.1520,
+				237.7831, 321.6175, 269.8812, 311.1881,
+				225.2679, 283.0997, 257.3660, 272.6703,
+				194.6235, 222.9567, 221.9278, 203.1190,
+				170.8182, 190.1915, 198.1225, 170.3538,
+				126.2898, 152.8248, 174.3438, 137.6252,
+				145.5351, 97.9734, 174.3438, 137.6252,
+				203.6490, 96.6200, 174.3438, 137.6252,
+				225.4269, 150.5160, 198.1225, 170.3538,
+				249.2322, 183.2812, 221.9278, 203.1190,
+				283.6671, 202.4586, 256.5675, 231.3415,
+				297.1502, 234.0119, 256.5675, 231.3415,
+				289.4642, 262.2410, 257.3660, 272.6703,
+				301.9794, 300.7588, 269.8812, 311.1881,
+				347.0109, 323.9902, 295.6523, 371.1520,
+				367.8001, 370.2001, 295.6523, 371.1520,
+				355.3130, 419.3083, 295.6523, 371.1520,
+				314.9759, 449.9752, 295.6523, 371.1520 },
+			{
+				216.2500, 558.2692, 250.0000, 558.2692,
+				216.2500, 517.7692, 250.0000, 517.7692,
+				216.2500, 477.2692, 250.0000, 477.2692,
+				216.2500, 436.7692, 250.0000, 436.7692,
+				216.2500, 396.2692, 250.0000, 396.2692,
+				216.2500, 355.7692, 250.0000, 355.7692,
+				186.0509, 340.7563, 245.7284, 247.8865,
+				161.7526, 317.3690, 245.7284, 247.8865,
+				145.5971, 287.7654, 245.7284, 247.8865,
+				139.0752, 254.6770, 147.9713, 222.1206,
+				100.0075, 244.0018, 108.9035, 211.4453,
+				60.9397, 233.3265, 69.8358, 200.7700,
+				21.8720, 222.6512, 30.7681, 190.0948,
+				-32.2576, 231.9258, -16.1327, 177.2791,
+				-69.1614, 191.2548, -16.1327, 177.2791,
+				-54.6857, 138.2786, -16.1327, 177.2791,
+				-2.2273, 122.0259, -16.1327, 177.2791,
+				39.6641, 157.5383, 30.7681, 190.0948,
+				78.7319, 168.2136, 69.8358, 200.7700,
+				117.7996, 178.8889, 108.9035, 211.4453,
+				156.8673, 189.5641, 147.9713, 222.1206,
+				185.2757, 159.7950, 245.7284, 247.8865,
+				222.5751, 142.4172, 256.2658, 144.4166,
+				224.9744, 101.9883, 258.6651, 103.9877,
+				227.3736, 61.5595, 261.0643, 63.5588,
+				216.6791, 4.4221, 263.4609, 23.1751,
+				266.3644, -25.7511, 263.4609, 23.1751,
+				312.1323, 10.0867, 263.4609, 23.1751,
+				294.7551, 65.5582, 261.0643, 63.5588,
+				292.3558, 105.9871, 258.6651, 103.9877,
+				289.9566, 146.4159, 256.2658, 144.4166,
+				317.7361, 162.0341, 245.7284, 247.8865,
+				339.9345, 184.9003, 245.7284, 247.8865,
+				354.7226, 213.1305, 355.7227, 246.8657,
+				395.2048, 211.9304, 396.2050, 245.6656,
+				435.6870, 210.7302, 436.6872, 244.4654,
+				476.1693, 209.5301, 477.1694, 243.2653,
+				525.2301, 184.8509, 525.7682, 241.8245,
+				572.4032, 212.9707, 525.7682, 241.8245,
+				574.0306, 267.8649, 525.7682, 241.8245,
+				528.6062, 298.7298, 525.7682, 241.8245,
+				478.1695, 277.0004, 477.1694, 243.2653,
+				437.6873, 278.2006, 436.6872, 244.4654,
+				397.2051, 279.4007, 396.2050, 245.6656,
+				356.7229, 280.6009, 355.7227, 246.8657,
+				329.6601, 327.3334, 245.7284, 247.8865,
+				283.7500, 355.7692, 250.0000, 355.7692,
+				283.7500, 396.2692, 250.0000, 396.2692,
+				283.7500, 436.7692, 250.0000, 436.7692,
+				283.7500, 477.2692, 250.0000, 477.2692,
+				283.7500, 517.7692, 250.0000, 517.7692,
+				283.7500, 558.2692, 250.0000, 558.2692 },
+			{
+				318.3435, 360.4772, 341.4470, 335.8745,
+				288.8203, 332.7530, 311.9238, 308.1503,
+				249.9637, 341.4061, 245.0112, 249.7782,
+				211.1140, 332.7222, 245.0112, 249.7782,
+				179.6398, 308.3483, 169.2105, 276.2501,
+				141.1220, 320.8634, 130.6927, 288.7653,
+				102.6042, 333.3786, 92.1749, 301.2805,
+				64.0865, 345.8938, 53.6571, 313.7957,
+				14.7885, 376.6959, 15.1823, 326.2969,
+				-31.4311, 341.4425, 15.1823, 326.2969,
+				-14.7601, 285.7547, 15.1823, 326.2969,
+				43.2278, 281.6975, 53.6571, 313.7957,
+				81.7456, 269.1823, 92.1749, 301.2805,
+				120.2634, 256.6671, 130.6927, 288.7653,
+				158.7812, 244.1519, 169.2105, 276.2501,
+				167.3087, 211.0484, 245.0112, 249.7782,
+				187.4018, 183.3927, 245.0112, 249.7782,
+				216.2500, 165.0529, 250.0000, 165.0529,
+				216.2500, 124.5529, 250.0000, 124.5529,
+				216.2500, 84.0529, 250.0000, 84.0529,
+				216.2500, 43.5529, 250.0000, 43.5529,
+				216.2500, 3.0529, 250.0000, 3.0529,
+				187.2710, -41.2063, 250.0000, -53.4984,
+				201.9158, -92.0413, 250.0000, -53.4984,
+				250.0000, -114.0996, 250.0000, -53.4984,
+				298.0842, -92.0413, 250.0000, -53.4984,
+				312.7290, -41.2063, 250.0000, -53.4984,
+				283.7500, 3.0529, 250.0000, 3.0529,
+				283.7500, 43.5529, 250.0000, 43.5529,
+				283.7500, 84.0529, 250.0000, 84.0529,
+				283.7500, 124.5529, 250.0000, 124.5529,
+				283.7500, 165.0529, 250.0000, 165.0529,
+				321.6569, 193.2517, 245.0112, 249.7782,
+				340.4202, 236.6112, 245.0112, 249.7782,
+				335.0272, 283.5476, 311.9238, 308.1503,
+				364.5505, 311.2718, 341.4470, 335.8745,
+				395.6155, 310.1097, 403.4776, 357.7085,
+				423.3681, 322.3150, 403.4776, 357.7085,
+				442.5097, 344.8263, 403.4776, 357.7085,
+				449.7085, 372.6920, 403.4776, 357.7085,
+				444.1670, 400.1504, 416.8626, 419.9882,
+				467.9723, 432.9156, 440.6679, 452.7534,
+				491.7776, 465.6808, 464.4733, 485.5186,
+				536.3060, 503.0476, 488.2520, 518.2472,
+				517.0607, 557.8989, 488.2520, 518.2472,
+				458.9468, 559.2523, 488.2520, 518.2472,
+				437.1689, 505.3563, 464.4733, 485.5186,
+				413.3636, 472.5911, 440.6679, 452.7534,
+				389.5583, 439.8260, 416.8626, 419.9882 },
+			{
+				94.6956, 526.0739, 218.5109, 346.3791,
+				76.4767, 461.0791, 218.5109, 346.3791,
+				101.8551, 398.5316, 218.5109, 346.3791,
+				160.2159, 364.6055, 155.4128, 331.1990,
+				120.1282, 370.3692, 115.3250, 336.9627,
+				80.0404, 376.1330, 75.2373, 342.7265,
+				33.2570, 410.9340, 20.6645, 338.0813,
+				-18.3500, 394.5625, -26.3069, 361.7639,
+				-57.7084, 404.1107, -65.6653, 371.3121,
+				-122.9084, 421.5810, -132.4169, 389.1981,
+				-161.7679, 432.9912, -171.2763, 400.6083,
+				-202.9821, 469.2873, -217.9270, 414.3062,
+				-255.7376, 454.0268, -217.9270, 414.3062,
+				-271.2099, 401.3330, -217.9270, 414.3062,
+				-235.0796, 359.9733, -217.9270, 414.3062,
+				-180.7848, 368.2254, -171.2763, 400.6083,
+				-141.9253, 356.8153, -132.4169, 389.1981,
+				-112.2294, 332.9133, -101.6787, 370.7868,
+				-73.6221, 338.5135, -65.6653, 371.3121,
+				-34.2638, 328.9652, -26.3069, 361.7639,
+				-17.8823, 303.8354, 20.6645, 338.0813,
+				9.8834, 289.6603, 20.6645, 338.0813,
+				42.1970, 291.2397, 20.6645, 338.0813,
+				70.4341, 309.3200, 75.2373, 342.7265,
+				110.5219, 303.5563, 115.3250, 336.9627,
+				150.6097, 297.7925, 155.4128, 331.1990,
+				148.9300, 239.0673, 218.5109, 346.3791,
+				176.7155, 192.6858, 218.5109, 346.3791,
+				220.9675, 170.7392, 218.5109, 346.3791,
+				265.4167, 175.7985, 291.9460, 196.6613,
+				290.4522, 143.9633, 316.9814, 164.8262,
+				315.4876, 112.1282, 342.0169, 132.9910,
+				340.5230, 80.2930, 367.0523, 101.1559,
+				365.5585, 48.4579, 392.0878, 69.3207,
+				404.7123, -6.5260, 433.1046, 11.7206,
+				426.6083, -40.5968, 455.0006, -22.3502,
+				448.5042, -74.6676, 476.8965, -56.4209,
+				467.1697, -129.7189, 498.7680, -90.4537,
+				525.2661, -131.6854, 498.7680, -90.4537,
+				547.6114, -78.0222, 498.7680, -90.4537,
+				505.2888, -38.1743, 476.8965, -56.4209,
+				483.3929, -4.1035, 455.0006, -22.3502,
+				461.4969, 29.9672, 433.1046, 11.7206,
+				460.7340, 56.4363, 426.0363, 49.6130,
+				445.0990, 79.1593, 426.0363, 49.6130,
+				418.6171, 90.1836, 392.0878, 69.3207,
+				393.5816, 122.0187, 367.0523, 101.1559,
+				368.5462, 153.8539, 342.0169, 132.9910,
+				343.5107, 185.6890, 316.9814, 164.8262,
+				318.4753, 217.5242, 291.9460, 196.6613,
+				337.1261, 255.2720, 218.5109, 346.3791,
+				333.4998, 302.7845, 218.5109, 346.3791,
+				303.2386, 346.5827, 279.9484, 371.0087,
+				332.5498, 374.5309, 309.2596, 398.9569,
+				361.8610, 402.4791, 338.5709, 426.9051,
+				413.9015, 420.0236, 373.7589, 460.4568,
+				427.0633, 473.3415, 373.7589, 460.4568,
+				389.1653, 513.0878, 373.7589, 460.4568,
+				335.2816, 502.4779, 373.7589, 460.4568,
+				315.2807, 451.3311, 338.5709, 426.9051,
+				285.9695, 423.3829, 309.2596, 398.9569,
+				256.6582, 395.4347, 279.9484, 371.0087,
+				284.5179, 456.9171, 218.5109, 346.3791,
+				268.9131, 522.5886, 218.5109, 346.3791,
+				216.3740, 564.9666, 218.5109, 346.3791 },
+			{
+				216.2500, 507.3013, 250.0000, 507.3013,
+				216.2500, 466.8013, 250.0000, 466.8013,
+				216.2500, 426.3013, 250.0000, 426.3013,
+				216.2500, 385.8013, 250.0000, 385.8013,
+				162.3765, 359.1016, 255.5976, 244.7906,
+				124.6808, 312.2587, 117.3980, 279.3038,
+				85.1349, 320.9979, 77.8522, 288.0430,
+				45.5890, 329.7372, 38.3063, 296.7823,
+				6.0432, 338.4764, -1.2395, 305.5216,
+				-33.5027, 347.2157, -40.7854, 314.2608,
+				-73.0486, 355.9550, -80.3313, 323.0001,
+				-110.0118, 393.8017, -135.5503, 335.2030,
+				-162.8093, 390.4713, -135.5503, 335.2030,
+				-194.7238, 348.2797, -135.5503, 335.2030,
+				-183.5609, 296.5685, -135.5503, 335.2030,
+				-137.0837, 271.2993, -135.5503, 335.2030,
+				-87.6140, 290.0452, -80.3313, 323.0001,
+				-48.0681, 281.3059, -40.7854, 314.2608,
+				-8.5223, 272.5667, -1.2395, 305.5216,
+				31.0236, 263.8274, 38.3063, 296.7823,
+				70.5695, 255.0881, 77.8522, 288.0430,
+				110.1153, 246.3489, 117.3980, 279.3038,
+				116.1525, 209.1844, 255.5976, 244.7906,
+				131.8802, 174.9749, 255.5976, 244.7906,
+				156.1595, 146.1972, 255.5976, 244.7906,
+				187.2329, 124.9347, 255.5976, 244.7906,
+				222.8504, 112.7267, 256.5610, 114.3573,
+				224.8071, 72.2740, 258.5177, 73.9046,
+				226.7638, 31.8213, 260.4744, 33.4519,
+				228.7205, -8.6314, 262.4311, -7.0008,
+				201.9136, -54.2390, 265.1633, -63.4861,
+				218.9974, -104.3070, 265.1633, -63.4861,
+				268.0911, -124.0165, 265.1633, -63.4861,
+				315.0535, -99.6608, 265.1633, -63.4861,
+				327.2252, -48.1777, 265.1633, -63.4861,
+				296.1417, -5.3702, 262.4311, -7.0008,
+				294.1850, 35.0825, 260.4744, 33.4519,
+				292.2283, 75.5352, 258.5177, 73.9046,
+				290.2716, 115.9879, 256.5610, 114.3573,
+				326.7975, 133.0248, 255.5976, 244.7906,
+				356.9525, 159.7657, 255.5976, 244.7906,
+				378.2349, 193.9923, 255.5976, 244.7906,
+				388.8793, 232.8651, 384.8111, 266.3690,
+				429.0840, 237.7468, 425.0159, 271.2508,
+				469.2887, 242.6286, 465.2206, 276.1325,
+				509.4934, 247.5103, 505.4253, 281.0142,
+				549.6981, 252.3921, 545.6300, 285.8960,
+				597.1276, 228.9592, 601.7690, 292.7125,
+				645.8267, 249.6247, 601.7690, 292.7125,
+				661.9283, 300.0172, 601.7690, 292.7125,
+				634.2349, 345.0919, 601.7690, 292.7125,
+				582.0053, 353.5025, 601.7690, 292.7125,
+				541.5619, 319.3999, 545.6300, 285.8960,
+				501.3572, 314.5182, 505.4253, 281.0142,
+				461.1525, 309.6364, 465.2206, 276.1325,
+				420.9477, 304.7547, 425.0159, 271.2508,
+				380.7430, 299.8730, 384.8111, 266.3690,
+				365.0853, 329.6016, 255.5976, 244.7906,
+				342.7923, 354.7408, 255.5976, 244.7906,
+				315.1493, 373.8411, 255.5976, 244.7906,
+				283.7500, 385.8013, 250.0000, 385.8013,
+				283.7500, 426.3013, 250.0000, 426.3013,
+				283.7500, 466.8013, 250.0000, 466.8013,
+				283.7500, 507.3013, 250.0000, 507.3013 } };
+
+	private static String sequence(int length) {
+		StringBuilder result = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			result.append("ACGU".charAt(i % 4));
+		}
+		return result.toString();
+	}
+
+	private static boolean near(double found, double expected) {
+		return Math.abs(found - expected) <= TOLERANCE;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int failures = 0;
+		for (int s = 0; s < STRUCTURES.length; s++) {
+			String str = STRUCTURES[s];
+			RNA r = new RNA();
+			r.setRNA(sequence(str.length()), str);
+			r.drawRNA(RNA.DRAW_MODE_NAVIEW);
+			double[] expected = EXPECTED[s];
+			for (int i = 0; i < r.get_listeBases().size(); i++) {
+				ModeleBase mb = r.get_listeBases().get(i);
+				if (!near(mb.getX(), expected[4 * i])
+						|| !near(mb.getY(), expected[4 * i + 1])
+						|| !near(mb.getCenterX(), expected[4 * i + 2])
+						|| !near(mb.getCenterY(), expected[4 * i + 3])) {
+					System.err.println("NAView: base " + i + " of " + str
+							+ " at (" + mb.getX() + "," + mb.getY()
+							+ "), center (" + mb.getCenterX() + ","
+							+ mb.getCenterY() + "), expected ("
+							+ expected[4 * i] + "," + expected[4 * i + 1]
+							+ "), center (" + expected[4 * i + 2] + ","
+							+ expected[4 * i + 3] + ")");
+					failures++;
+				}
+			}
+		}
+		if (failures > 0) {
+			System.err.println("NAView: " + failures + " misplaced bases");
+			System.exit(1);
+		}
+		System.out.println("NAView: " + STRUCTURES.length
+				+ " structures drawn as expected");
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ VARNA is a tool for the automated drawing, visualization and annotation of the secondary structure of RNA, designed as a companion software for web servers and databases.
+ Copyright (C) 2008  Kevin Darty, Alain Denise and Yann Ponty.
+ electronic mail : Yann.Ponty@lri.fr
+ paper mail : LRI, bat 490 Universit Paris-Sud 91405 Orsay Cedex France
+
+ This file is part of VARNA version 3.1.
+ VARNA version 3.1 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+ VARNA version 3.1 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with VARNA version 3.1.
+ If not, see http://www.gnu.org/licenses.
+ */
+package fr.orsay.lri.varna.models.rna;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * Times the BPSEQ and CT parsers on synthetic files of 10k, 100k and 1M nt,
+ * or of the lengths given as arguments.
+ * <p>
+ * The former parsers, which built the sequence one character at a time,
+ * boxed the partners into a Vector and split every line with a regular
+ * expression, are timed alongside up to 100k nt, beyond which their
+ * quadratic cost makes them impractical. Both load the parsed structure
+ * with setRNA, so the times compare the parsing alone.
+ * <p>
+ * Run by <code>ant benchmark</code>. Exits with status 1 if both parsers do
+ * not read the same structure.
+ */
+public class ParserBenchmark {
+
+	private static final int FORMER_MAX_LENGTH = 100000;
+
+	private static final int RUNS = 5;
+
+	private static final String UNIT = "((((((((((....))))))))))...";
+
+	private static int _failures = 0;
+
+	/**
+	 * Sequence and partners read by a former parser
+	 */
+	private static class Parsed {
+		private char[] _seq;
+		private int[] _str;
+		private int _minIndex;
+	}
+
+	private interface Parser {
+		public RNA parse(String text) throws Exception;
+	}
+
+	private static int[] structure(int length) {
+		int[] result = new int[length];
+		int[] stack = new int[length];
+		int top = 0;
+		for (int i = 0; i < length; i++) {
+			char c = UNIT.charAt(i % UNIT.length());
+			result[i] = -1;
+			if ((c == '(') && (length - i > UNIT.length())) {
+				stack[top++] = i;
+			} else if ((c == ')') && (top > 0)) {
+				int j = stack[--top];
+				result[i] = j;
+				result[j] = i;
+			}
+		}
+		return result;
+	}
+
+	private static String bpseq(int[] str) {
+		StringBuilder result = new StringBuilder(str.length * 12);
+		result.append("Filename: synthetic\n");
+		for (int i = 0; i < str.length; i++) {
+			result.append(i + 1).append(' ').append("ACGU".charAt(i % 4))
+					.append(' ').append(str[i] + 1).append('\n');
+		}
+		return result.toString();
+	}
+
+	private static String ct(int[] str) {
+		StringBuilder result = new StringBuilder(str.length * 24);
+		result.append(str.length).append("  ENERGY = -1.0  synthetic\n");
+		for (int i = 0; i < str.length; i++) {
+			result.append(i + 1).append(' ').append("ACGU".charAt(i % 4))
+					.append(' ').append(i).append(' ').append(i + 2)
+					.append(' ').append(str[i] + 1).append(' ')
+					.append(i + 1).append('\n');
+		}
+		return result.toString();
+	}
+
+	private static RNA load(Parsed p) throws Exception {
+		RNA r = new RNA();
+		r.setRNA(p._seq, p._str, p._minIndex);
+		return r;
+	}
+
+	/**
+	 * The core of the former BPSEQ parser
+	 */
+	private static Parsed formerBPSEQ(String text) throws IOException {
+		BufferedReader fr = new BufferedReader(new StringReader(text));
+		String line = fr.readLine();
+		String seqTmp = "";
+		Vector<Integer> strTmp = new Vector<Integer>();
+		int minIndex = -1;
+		while (line != null) {
+			line = line.trim();
+			String[] tokens = line.split("\\s+");
+			if (tokens.length == 3 && !tokens[0].contains("#")
+					&& !line.startsWith("Organism:")
+					&& !line.startsWith("Filename:")
+					&& !line.startsWith("Accession Number:")) {
+				char base = tokens[1].charAt(tokens[1].length() - 1);
+				int bpFrom = Integer.parseInt(tokens[0]);
+				int bpTo = Integer.parseInt(tokens[2]);
+				if (minIndex < 0)
+					minIndex = bpFrom;
+				if (bpTo != 0)
+					bpTo -= minIndex;
+				else
+					bpTo = -1;
+				seqTmp += base;
+				strTmp.add(bpTo);
+			}
+			line = fr.readLine();
+		}
+		return toParsed(seqTmp, strTmp, minIndex);
+	}
+
+	/**
+	 * The core of the former CT parser
+	 */
+	private static Parsed formerCT(String text) throws IOException {
+		BufferedReader fr = new BufferedReader(new StringReader(text));
+		String line = fr.readLine();
+		String seqTmp = "";
+		Vector<Integer> strTmp = new Vector<Integer>();
+		int minIndex = -1;
+		while (line != null) {
+			line = line.trim();
+			String[] tokens = line.split("\\s+");
+			if (tokens.length >= 6) {
+				try {
+					int bpFrom = Integer.parseInt(tokens[0]);
+					int bpTo = Integer.parseInt(tokens[4]);
+					if (minIndex == -1)
+						minIndex = bpFrom;
+					if (bpTo != 0)
+						bpTo -= minIndex;
+					else
+						bpTo = -1;
+					char base = tokens[1].charAt(tokens[1].length() - 1);
+					Integer.parseInt(tokens[2]);
+					Integer.parseInt(tokens[3]);
+					Integer.parseInt(tokens[5]);
+					seqTmp += base;
+					strTmp.add(bpTo);
+				} catch (NumberFormatException e) {
+				}
+			}
+			line = fr.readLine();
+		}
+		return toParsed(seqTmp, strTmp, minIndex);
+	}
+
+	private static Parsed toParsed(String seqTmp, Vector<Integer> strTmp,
+			int minIndex) {
+		Parsed result = new Parsed();
+		result._seq = seqTmp.toCharArray();
+		result._str = new int[strTmp.size()];
+		for (int i = 0; i < strTmp.size(); i++) {
+			result._str[i] = strTmp.elementAt(i).intValue();
+		}
+		result._minIndex = minIndex;
+		return result;
+	}
+
+	/**
+	 * Returns the best time of a few runs of a parser, in milliseconds, and
+	 * keeps the RNA it read in result[0].
+	 */
+	private static double time(Parser p, String text, RNA[] result)
+			throws Exception {
+		double best = Double.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			result[0] = p.parse(text);
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+
+	private static void compare(String format, int length, Parser current,
+			Parser former, String text) throws Exception {
+		RNA[] r = new RNA[1];
+		double t = time(current, text, r);
+		RNA currentRNA = r[0];
+		StringBuilder line = new StringBuilder();
+		line.append(format).append(' ').append(length).append(" nt: ")
+				.append(String.format("%.1f", t)).append(" ms");
+		if (length <= FORMER_MAX_LENGTH) {
+			double f = time(former, text, r);
+			line.append(", former parser ").append(String.format("%.1f", f))
+					.append(" ms (").append(String.format("%.1f", f / t))
+					.append("x)");
+			if (!currentRNA.getSeq().equals(r[0].getSeq())
+					|| !Arrays.equals(currentRNA.getNonCrossingStruct(),
+							r[0].getNonCrossingStruct())) {
+				System.err.println(format + " " + length
+						+ " nt: the parsers read different structures");
+				_failures++;
+			}
+		}
+		System.out.println(line.toString());
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] lengths = { 10000, 100000, 1000000 };
+		if (args.length > 0) {
+			lengths = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				lengths[i] = Integer.parseInt(args[i]);
+			}
+		}
+		Parser currentBPSEQ = new Parser() {
+			public RNA parse(String text) throws Exception {
+				RNA r = new RNA();
+				r.loadSecStr(new StringReader(text), RNA.FILE_TYPE_BPSEQ);
+				return r;
+			}
+		};
+		Parser formerBPSEQ = new Parser() {
+			public RNA parse(String text) throws Exception {
+				return load(formerBPSEQ(text));
+			}
+		};
+		Parser currentCT = new Parser() {
+			public RNA parse(String text) throws Exception {
+				RNA r = new RNA();
+				r.loadSecStr(new StringReader(text), RNA.FILE_TYPE_CT);
+				return r;
+			}
+		};
+		Parser formerCT = new Parser() {
+			public RNA parse(String text) throws Exception {
+				return load(formerCT(text));
+			}
+		};
+		for (int k = 0; k < lengths.length; k++) {
+			int[] str = structure(lengths[k]);
+			compare("BPSEQ", lengths[k], currentBPSEQ, formerBPSEQ, bpseq(str));
+			compare("CT", lengths[k], currentCT, formerCT, ct(str));
+		}
+		if (_failures > 0) {
+			System.exit(1);
+		}
+	}
+}